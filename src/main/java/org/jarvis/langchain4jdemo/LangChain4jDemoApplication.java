@@ -1,17 +1,25 @@
 package org.jarvis.langchain4jdemo;
 
 import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.startup.StartupPhaseReporter;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 @Slf4j
 public class LangChain4jDemoApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(LangChain4jDemoApplication.class, args);
+        StartupPhaseReporter.markMainEntered();
+        SpringApplication application = new SpringApplication(LangChain4jDemoApplication.class);
+        // Records per-bean startup steps, exposed on /actuator/startup
+        application.setApplicationStartup(new BufferingApplicationStartup(4096));
+        application.run(args);
     }
 
     @Bean
@@ -0,0 +1,147 @@
+package org.jarvis.langchain4jdemo.audit;
+
+import dev.langchain4j.data.message.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Dedicated, asynchronous audit channel for LLM prompts and responses (logger "llm.audit")
+ *
+ * Callers only make a sampling decision and offer a reference-holding event to a bounded queue; when the
+ * queue is full the event is dropped, never blocking the request. A single background thread renders,
+ * redacts (llm.audit.redact-pattern), truncates (llm.audit.max-chars) and writes the events.
+ * Counts are published as llm.audit.events{result=written|dropped|sampled-out}.
+ */
+@Component
+@Slf4j
+public class LlmAuditLog implements AutoCloseable {
+
+    private static final Logger AUDIT = LoggerFactory.getLogger("llm.audit");
+    private static final String REDACTED = "[REDACTED]";
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final int maxChars;
+    private final Pattern redactPattern;
+    private final BlockingQueue<AuditEvent> queue;
+    private final Thread writer;
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter sampledOut;
+
+    private volatile boolean running = true;
+
+    public LlmAuditLog(@Value("${llm.audit.enabled:true}") boolean enabled,
+                       @Value("${llm.audit.sample-rate:1.0}") double sampleRate,
+                       @Value("${llm.audit.max-chars:1000}") int maxChars,
+                       @Value("${llm.audit.queue-capacity:1024}") int queueCapacity,
+                       @Value("${llm.audit.redact-pattern:}") String redactPattern,
+                       MeterRegistry meterRegistry) {
+        this.enabled = enabled && sampleRate > 0;
+        this.sampleRate = Math.min(1.0, sampleRate);
+        this.maxChars = maxChars;
+        this.redactPattern = redactPattern.isBlank() ? null : Pattern.compile(redactPattern);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        this.written = Counter.builder("llm.audit.events").tag("result", "written").register(meterRegistry);
+        this.dropped = Counter.builder("llm.audit.events").tag("result", "dropped")
+                .description("Audit events discarded because the queue was full")
+                .register(meterRegistry);
+        this.sampledOut = Counter.builder("llm.audit.events").tag("result", "sampled-out").register(meterRegistry);
+        Gauge.builder("llm.audit.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+
+        this.writer = Thread.ofPlatform().daemon().name("llm-audit").start(this::writeLoop);
+        log.info("LLM audit log: enabled={}, sample rate {}, max {} chars, queue {}, redaction {}",
+                this.enabled, this.sampleRate, maxChars, queueCapacity, this.redactPattern != null ? "on" : "off");
+    }
+
+    /**
+     * Record one LLM call; never blocks
+     */
+    public void record(String endpoint, List<ChatMessage> prompt, String response, long elapsedNanos, String outcome) {
+        if (!enabled) {
+            return;
+        }
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            sampledOut.increment();
+            return;
+        }
+        if (!queue.offer(new AuditEvent(endpoint, prompt, response, elapsedNanos, outcome))) {
+            dropped.increment();
+        }
+    }
+
+    private void writeLoop() {
+        List<AuditEvent> batch = new ArrayList<>(64);
+        while (running || !queue.isEmpty()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, 63);
+                batch.forEach(this::write);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    queue.drainTo(batch);
+                    batch.forEach(this::write);
+                    return;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to write LLM audit event: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(AuditEvent event) {
+        AUDIT.info("endpoint={} outcome={} elapsedMs={} prompt=\"{}\" response=\"{}\"",
+                event.endpoint(), event.outcome(), event.elapsedNanos() / 1_000_000,
+                sanitize(renderPrompt(event.prompt())), sanitize(event.response()));
+        written.increment();
+    }
+
+    private static String renderPrompt(List<ChatMessage> prompt) {
+        StringBuilder text = new StringBuilder();
+        for (ChatMessage message : prompt) {
+            if (!text.isEmpty()) {
+                text.append(" | ");
+            }
+            text.append(message.type()).append(": ").append(message.text());
+        }
+        return text.toString();
+    }
+
+    private String sanitize(String text) {
+        if (text == null) {
+            return "";
+        }
+        if (redactPattern != null) {
+            text = redactPattern.matcher(text).replaceAll(REDACTED);
+        }
+        if (text.length() > maxChars) {
+            text = text.substring(0, maxChars) + "...(" + (text.length() - maxChars) + " more chars)";
+        }
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        writer.interrupt();
+    }
+
+    private record AuditEvent(String endpoint, List<ChatMessage> prompt, String response, long elapsedNanos,
+                              String outcome) {}
+}
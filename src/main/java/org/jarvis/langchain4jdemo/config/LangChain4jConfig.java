@@ -1,25 +1,59 @@
 package org.jarvis.langchain4jdemo.config;
 
+import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
-import dev.langchain4j.model.ollama.OllamaChatModel;
 import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.document.TokenAwareDocumentSplitter;
+import org.jarvis.langchain4jdemo.document.WordPieceTokenCounter;
+import org.jarvis.langchain4jdemo.embedding.LazyEmbeddingModel;
+import org.jarvis.langchain4jdemo.embedding.MicroBatchingEmbeddingModel;
+import org.jarvis.langchain4jdemo.generation.ChatModelProvider;
+import org.jarvis.langchain4jdemo.generation.GenerationProperties;
+import org.jarvis.langchain4jdemo.kv.InMemoryKeyValueStore;
+import org.jarvis.langchain4jdemo.kv.KeyValueStore;
+import org.jarvis.langchain4jdemo.kv.LogStructuredKeyValueStore;
+import org.jarvis.langchain4jdemo.memory.BoundedChatMemoryStore;
+import org.jarvis.langchain4jdemo.memory.LogStructuredChatMemoryStore;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBase;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.jarvis.langchain4jdemo.store.PcaProjection;
+import org.jarvis.langchain4jdemo.store.PrefixProjection;
+import org.jarvis.langchain4jdemo.store.Projection;
+import org.jarvis.langchain4jdemo.store.SegmentTextStore;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
 
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 /**
  * Configuration class for LangChain4j with Ollama integration
  */
 @Configuration
+@EnableConfigurationProperties(GenerationProperties.class)
+@Slf4j
 public class LangChain4jConfig {
 
     @Value("${ollama.base.url}")
@@ -31,23 +65,108 @@ public class LangChain4jConfig {
     @Value("${ollama.timeout}")
     private Duration timeout;
 
+    @Value("${embedding.startup-mode:background}")
+    private String embeddingStartupMode;
+
+    @Value("${embedding.runtime.threads:4}")
+    private int embeddingThreads;
+
+    @Value("${embedding.runtime.sessions:2}")
+    private int embeddingSessions;
+
+    @Value("${embedding.runtime.max-batch-size:32}")
+    private int embeddingMaxBatchSize;
+
+    @Value("${embedding.runtime.max-wait:2ms}")
+    private Duration embeddingMaxWait;
+
+    @Value("${embedding.store.type:flat}")
+    private String embeddingStoreType;
+
+    @Value("${embedding.projection.type:none}")
+    private String projectionType;
+
+    @Value("${embedding.projection.dimension:96}")
+    private int projectionDimension;
+
+    @Value("${embedding.projection.rescore-factor:8}")
+    private int projectionRescoreFactor;
+
+    @Value("${embedding.projection.fit-rows:2000}")
+    private int projectionFitRows;
+
+    @Value("${embedding.text.storage:heap}")
+    private String textStorage;
+
+    @Value("${embedding.text.block-size:16KB}")
+    private DataSize textBlockSize;
+
+    @Value("${embedding.text.dictionary-size:16KB}")
+    private DataSize textDictionarySize;
+
+    @Value("${namespaces.max-count:1000}")
+    private int maxNamespaces;
+
+    @Value("${namespaces.max-bytes:64MB}")
+    private DataSize namespaceMaxBytes;
+
+    @Value("${embedding.splitter.max-tokens:200}")
+    private int splitterMaxTokens;
+
+    @Value("${embedding.splitter.overlap-tokens:30}")
+    private int splitterOverlapTokens;
+
+    @Value("${chat.memory.store:log}")
+    private String chatMemoryStoreType;
+
+    @Value("${chat.memory.path:data/chat-memory}")
+    private Path chatMemoryPath;
+
+    @Value("${chat.memory.max-messages:10}")
+    private int chatMemoryMaxMessages;
+
+    @Value("${chat.memory.segment-size:8MB}")
+    private DataSize chatMemorySegmentSize;
+
+    @Value("${chat.memory.snapshot-every:16}")
+    private int chatMemorySnapshotEvery;
+
+    @Value("${chat.memory.max-sealed-segments:4}")
+    private int chatMemoryMaxSealedSegments;
+
+    @Value("${chat.memory.cached-sessions:1024}")
+    private int chatMemoryCachedSessions;
+
+    @Value("${tools.datastore.type:log}")
+    private String dataStoreType;
+
+    @Value("${tools.datastore.path:data/datastore.log}")
+    private Path dataStorePath;
+
+    @Value("${tools.datastore.initial-size:1MB}")
+    private DataSize dataStoreInitialSize;
+
+    @Value("${tools.datastore.compaction-ratio:0.5}")
+    private double dataStoreCompactionRatio;
+
+    @Value("${tools.datastore.compaction-min-size:64KB}")
+    private DataSize dataStoreCompactionMinSize;
+
+    @Value("${tools.datastore.sync-on-write:false}")
+    private boolean dataStoreSyncOnWrite;
+
     /**
      * Bean for regular chat model (blocking/synchronous)
+     * Uses the "default" generation profile; endpoints with their own profile get models from ChatModelProvider
      */
     @Bean
-    public ChatLanguageModel chatLanguageModel() {
-        return OllamaChatModel.builder()
-                .baseUrl(ollamaBaseUrl)
-                .modelName(chatModel)
-                .timeout(timeout)
-                .temperature(0.7)
-                .logRequests(true)
-                .logResponses(true)
-                .build();
+    public ChatLanguageModel chatLanguageModel(ChatModelProvider chatModelProvider) {
+        return chatModelProvider.forEndpoint(GenerationProperties.DEFAULT_PROFILE);
     }
 
     /**
      * Bean for streaming chat model (asynchronous/streaming responses)
+     * Prompts and responses go to the sampled llm.audit channel instead of request/response logging
      */
     @Bean
     public StreamingChatLanguageModel streamingChatLanguageModel() {
@@ -56,34 +175,156 @@ public class LangChain4jConfig {
                 .modelName(chatModel)
                 .timeout(timeout)
                 .temperature(0.7)
-                .logRequests(true)
-                .logResponses(true)
                 .build();
     }
 
+    /**
+     * Bean for the local all-minilm-l6-v2 ONNX model
+     * embedding.startup-mode: eager (load during startup), lazy (load on first use),
+     * background (load after startup while readiness is held, see EmbeddingReadinessGate)
+     * embedding.runtime.threads bounds the worker threads a single embedAll call fans out to
+     */
+    @Bean
+    public LazyEmbeddingModel onnxEmbeddingModel() {
+        LazyEmbeddingModel model = new LazyEmbeddingModel(() -> new AllMiniLmL6V2EmbeddingModel(
+                Executors.newFixedThreadPool(embeddingThreads,
+                        Thread.ofPlatform().daemon().name("embedding-inference-", 0).factory())));
+        if ("eager".equalsIgnoreCase(embeddingStartupMode)) {
+            model.warmUp();
+        }
+        log.info("Embedding model startup mode: {}", embeddingStartupMode);
+        return model;
+    }
+
     /**
      * Bean for embedding model (converts text to vectors)
-     * Using local all-minilm-l6-v2 model for faster embeddings
+     * Concurrent single-text embed calls are merged into embedAll batches; at most
+     * embedding.runtime.sessions batches run against the model at once
+     */
+    @Bean(destroyMethod = "close")
+    @Primary
+    public EmbeddingModel embeddingModel(LazyEmbeddingModel onnxEmbeddingModel, MeterRegistry meterRegistry) {
+        return new MicroBatchingEmbeddingModel(onnxEmbeddingModel, embeddingSessions,
+                embeddingMaxBatchSize, embeddingMaxWait, meterRegistry);
+    }
+
+    /**
+     * Bean for document splitter (chunks long documents before embedding)
+     * Segment size is measured in all-minilm-l6-v2 tokens rather than characters
+     */
+    @Bean
+    public DocumentSplitter documentSplitter() {
+        return new TokenAwareDocumentSplitter(WordPieceTokenCounter.miniLm(), splitterMaxTokens, splitterOverlapTokens);
+    }
+
+    /**
+     * Bean for the namespaced knowledge bases: one independent embedding store per namespace (tenant)
+     * embedding.store.type: flat (contiguous matrix, supports blocked batch search) or in-memory (LangChain4j default)
+     * embedding.projection.type (flat only): none, pca (fitted per namespace once it holds fit-rows segments) or
+     * prefix (leading dimensions); either adds a reduced-dimension first pass rescored with the full vectors
+     * embedding.text.storage (flat only): heap or compressed (deflated off-heap pages, decoded per match used),
+     * reported as store.text.bytes.per.segment and store.text.decode
+     * Each namespace is limited to namespaces.quotas.<name>, falling back to namespaces.max-bytes; in-memory stores
+     * are sized from estimates of the rows added and removed (see KnowledgeBase#approximateBytes)
      */
     @Bean
-    public EmbeddingModel embeddingModel() {
-        return new AllMiniLmL6V2EmbeddingModel();
+    public KnowledgeBases knowledgeBases(MemoryAccountant memoryAccountant, Environment environment,
+                                         MeterRegistry meterRegistry) {
+        log.info("Embedding store type: {}, projection: {}, text storage: {}", embeddingStoreType, projectionType,
+                textStorage);
+        Timer decodeTimer = Timer.builder("store.text.decode")
+                .description("Time to decode one compressed segment text")
+                .register(meterRegistry);
+        Supplier<EmbeddingStore<TextSegment>> storeFactory = "in-memory".equalsIgnoreCase(embeddingStoreType)
+                ? InMemoryEmbeddingStore::new
+                : () -> new FlatEmbeddingStore(projection(), projectionRescoreFactor, textStore(decodeTimer));
+        KnowledgeBases knowledgeBases = new KnowledgeBases(storeFactory, name -> {
+            DataSize quota = environment.getProperty("namespaces.quotas." + name, DataSize.class, namespaceMaxBytes);
+            return quota.toBytes() > 0 ? quota.toBytes() : -1;
+        }, maxNamespaces);
+        memoryAccountant.register(MemoryAccountant.EMBEDDING_STORE, knowledgeBases);
+        Gauge.builder("store.text.bytes.per.segment", knowledgeBases, LangChain4jConfig::textBytesPerSegment)
+                .description("Compressed segment text bytes per live segment, over all namespaces")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        return knowledgeBases;
+    }
+
+    private SegmentTextStore textStore(Timer decodeTimer) {
+        return "compressed".equalsIgnoreCase(textStorage)
+                ? new SegmentTextStore((int) textBlockSize.toBytes(), (int) textDictionarySize.toBytes(), decodeTimer)
+                : null;
+    }
+
+    private static double textBytesPerSegment(KnowledgeBases knowledgeBases) {
+        long segments = 0;
+        long bytes = 0;
+        for (KnowledgeBase knowledgeBase : knowledgeBases.all()) {
+            if (knowledgeBase.getStore() instanceof FlatEmbeddingStore flatStore) {
+                FlatEmbeddingStore.TextStats stats = flatStore.textStats();
+                segments += stats.segments();
+                bytes += stats.bytes();
+            }
+        }
+        return segments == 0 ? 0 : (double) bytes / segments;
+    }
+
+    private Projection projection() {
+        return switch (projectionType.toLowerCase()) {
+            case "pca" -> new PcaProjection(projectionDimension, projectionFitRows);
+            case "prefix" -> new PrefixProjection(projectionDimension);
+            default -> null;
+        };
     }
 
     /**
-     * Bean for in-memory embedding store (stores document embeddings)
+     * Bean for the DataStoreTool key-value store
+     * tools.datastore.type: log (in-memory tier persisted to an append-only mapped log) or memory (not persisted)
+     */
+    @Bean(destroyMethod = "close")
+    public KeyValueStore keyValueStore(MemoryAccountant memoryAccountant) {
+        log.info("Data store type: {}", dataStoreType);
+        KeyValueStore store = "memory".equalsIgnoreCase(dataStoreType)
+                ? new InMemoryKeyValueStore()
+                : new LogStructuredKeyValueStore(dataStorePath, dataStoreInitialSize.toBytes(),
+                        dataStoreCompactionRatio, dataStoreCompactionMinSize.toBytes(), dataStoreSyncOnWrite);
+        memoryAccountant.register(MemoryAccountant.DATA_STORE, store);
+        return store;
+    }
+
+    /**
+     * Bean for chat memory persistence
+     * chat.memory.store: log (segmented, memory-mapped append-only log that survives restarts) or memory
+     * The log store is closed through Spring's inferred destroy method
+     * memory.quota.chat-memory bounds the heap used: the log store evicts from its session cache,
+     * the memory store forgets the least recently used sessions
      */
     @Bean
-    public EmbeddingStore<TextSegment> embeddingStore() {
-        return new InMemoryEmbeddingStore<>();
+    public ChatMemoryStore chatMemoryStore(MemoryAccountant memoryAccountant) {
+        log.info("Chat memory store type: {}", chatMemoryStoreType);
+        long quota = memoryAccountant.quota(MemoryAccountant.CHAT_MEMORY);
+        if ("memory".equalsIgnoreCase(chatMemoryStoreType)) {
+            BoundedChatMemoryStore store = new BoundedChatMemoryStore(quota);
+            memoryAccountant.register(MemoryAccountant.CHAT_MEMORY, store);
+            return store;
+        }
+        LogStructuredChatMemoryStore store = new LogStructuredChatMemoryStore(chatMemoryPath,
+                chatMemorySegmentSize.toBytes(), chatMemorySnapshotEvery, chatMemoryMaxSealedSegments,
+                chatMemoryCachedSessions, quota);
+        memoryAccountant.register(MemoryAccountant.CHAT_MEMORY, store);
+        return store;
     }
 
     /**
-     * Bean for chat memory (maintains conversation context)
-     * Keeps last 10 messages in memory
+     * Bean for chat memory (maintains conversation context per session)
+     * Keeps the last chat.memory.max-messages messages of each session
      */
     @Bean
-    public MessageWindowChatMemory chatMemory() {
-        return MessageWindowChatMemory.withMaxMessages(10);
+    public ChatMemoryProvider chatMemoryProvider(ChatMemoryStore chatMemoryStore) {
+        return sessionId -> MessageWindowChatMemory.builder()
+                .id(sessionId)
+                .maxMessages(chatMemoryMaxMessages)
+                .chatMemoryStore(chatMemoryStore)
+                .build();
     }
 }
@@ -0,0 +1,56 @@
+package org.jarvis.langchain4jdemo.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.ratelimit.RateLimiter;
+import org.jarvis.langchain4jdemo.tracing.SlowRequestLog;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * REST Controller for operational inspection (not traced itself)
+ */
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+public class AdminController {
+
+    private final SlowRequestLog slowRequestLog;
+    private final MemoryAccountant memoryAccountant;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Span trees of the most recent requests above tracing.slow-request-threshold, newest first
+     */
+    @GetMapping("/slow-requests")
+    public ResponseEntity<List<SlowRequestLog.SlowRequest>> slowRequests() {
+        return ResponseEntity.ok(slowRequestLog.recent());
+    }
+
+    @DeleteMapping("/slow-requests")
+    public ResponseEntity<Void> clearSlowRequests() {
+        slowRequestLog.clear();
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Approximate heap held by each accounted store against its quota, plus the live heap after the last GC
+     */
+    @GetMapping("/memory")
+    public ResponseEntity<MemoryReport> memory() {
+        return ResponseEntity.ok(new MemoryReport(memoryAccountant.liveHeapBytes(), memoryAccountant.maxHeapBytes(),
+                memoryAccountant.usage()));
+    }
+
+    /**
+     * Request and token usage of rate-limited clients with their remaining allowance, heaviest token users first
+     */
+    @GetMapping("/rate-limits")
+    public ResponseEntity<List<RateLimiter.ClientUsage>> rateLimits(@RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(rateLimiter.usage(limit));
+    }
+
+    public record MemoryReport(long liveHeapBytes, long maxHeapBytes, List<MemoryAccountant.ComponentUsage> components) {}
+}
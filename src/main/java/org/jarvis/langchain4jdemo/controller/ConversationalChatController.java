@@ -6,6 +6,8 @@ import org.jarvis.langchain4jdemo.service.ConversationalChatService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 /**
  * REST Controller for conversational chat with memory
  */
@@ -19,22 +21,47 @@ public class ConversationalChatController {
 
     @PostMapping("/chat")
     public ResponseEntity<ChatResponse> chat(@RequestBody ChatRequest request) {
-        String response = conversationalChatService.chatWithMemory(request.message());
-        int conversationSize = conversationalChatService.getConversationSize();
-        return ResponseEntity.ok(new ChatResponse(response, conversationSize));
+        if (request.message() == null || request.message().isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        String sessionId = request.sessionId() != null ? request.sessionId() : ConversationalChatService.DEFAULT_SESSION;
+        String response = conversationalChatService.chatWithMemory(sessionId, request.message());
+        int conversationSize = conversationalChatService.getConversationSize(sessionId);
+        return ResponseEntity.ok(new ChatResponse(response, conversationSize, sessionId));
+    }
+
+    /**
+     * Conversational RAG: each turn is answered with context from the caller's knowledge base
+     */
+    @PostMapping("/rag")
+    public ResponseEntity<KnowledgeChatResponse> chatWithKnowledge(@RequestBody KnowledgeChatRequest request) {
+        if (request.message() == null || request.message().isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        String sessionId = request.sessionId() != null ? request.sessionId() : ConversationalChatService.DEFAULT_SESSION;
+        ConversationalChatService.KnowledgeChatResponse answer =
+                conversationalChatService.chatWithKnowledge(sessionId, request.message(), request.maxResults());
+        int conversationSize = conversationalChatService.getConversationSize(sessionId);
+        return ResponseEntity.ok(new KnowledgeChatResponse(answer.response(), conversationSize, sessionId,
+                answer.sources(), answer.k(), answer.fromWorkingSet()));
     }
 
     @PostMapping("/clear")
-    public ResponseEntity<String> clearMemory() {
-        conversationalChatService.clearMemory();
+    public ResponseEntity<String> clearMemory(
+            @RequestParam(defaultValue = ConversationalChatService.DEFAULT_SESSION) String sessionId) {
+        conversationalChatService.clearMemory(sessionId);
         return ResponseEntity.ok("Conversation memory cleared");
     }
 
     @GetMapping("/size")
-    public ResponseEntity<Integer> getConversationSize() {
-        return ResponseEntity.ok(conversationalChatService.getConversationSize());
+    public ResponseEntity<Integer> getConversationSize(
+            @RequestParam(defaultValue = ConversationalChatService.DEFAULT_SESSION) String sessionId) {
+        return ResponseEntity.ok(conversationalChatService.getConversationSize(sessionId));
     }
 
-    public record ChatRequest(String message) {}
-    public record ChatResponse(String response, int conversationSize) {}
+    public record ChatRequest(String message, String sessionId) {}
+    public record ChatResponse(String response, int conversationSize, String sessionId) {}
+    public record KnowledgeChatRequest(String message, String sessionId, Integer maxResults) {}
+    public record KnowledgeChatResponse(String response, int conversationSize, String sessionId, List<String> sources,
+                                        int k, boolean fromWorkingSet) {}
 }
@@ -0,0 +1,64 @@
+package org.jarvis.langchain4jdemo.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.job.Job;
+import org.jarvis.langchain4jdemo.job.JobPriority;
+import org.jarvis.langchain4jdemo.job.JobService;
+import org.jarvis.langchain4jdemo.job.JobStatus;
+import org.jarvis.langchain4jdemo.job.JobType;
+import org.jarvis.langchain4jdemo.job.TenantFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * REST Controller for asynchronous LLM jobs (submit / poll / cancel)
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+@Slf4j
+public class JobController {
+
+    private final JobService jobService;
+
+    @PostMapping
+    public ResponseEntity<JobResponse> submit(@RequestBody JobRequest request,
+                                              @RequestHeader(value = TenantFilter.TENANT_HEADER, required = false) String tenant) {
+        if (request.type() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        JobPriority priority = request.priority() != null ? request.priority() : JobPriority.BATCH;
+        Job job = jobService.submit(request.type(), request.params(), tenant, priority);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(JobResponse.from(job));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<JobResponse> poll(@PathVariable String id) {
+        return jobService.find(id)
+                .map(job -> ResponseEntity.ok(JobResponse.from(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<JobResponse> cancel(@PathVariable String id) {
+        return jobService.cancel(id)
+                .map(job -> ResponseEntity.ok(JobResponse.from(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    public record JobRequest(JobType type, JobPriority priority, Map<String, String> params) {}
+
+    public record JobResponse(String id, JobType type, String tenant, JobPriority priority, JobStatus status,
+                              Instant submittedAt, Instant startedAt, Instant finishedAt,
+                              String result, String error) {
+        static JobResponse from(Job job) {
+            return new JobResponse(job.getId(), job.getType(), job.getTenant(), job.getPriority(), job.getStatus(),
+                    job.getSubmittedAt(), job.getStartedAt(), job.getFinishedAt(), job.getResult(), job.getError());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.jarvis.langchain4jdemo.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBase;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * REST Controller for knowledge base namespaces; RAG endpoints use the namespace named by X-Tenant-Id
+ */
+@RestController
+@RequestMapping("/api/namespaces")
+@RequiredArgsConstructor
+public class NamespaceController {
+
+    private final KnowledgeBases knowledgeBases;
+
+    @GetMapping
+    public ResponseEntity<List<KnowledgeBase.Stats>> list() {
+        return ResponseEntity.ok(knowledgeBases.stats());
+    }
+
+    @GetMapping("/{name}")
+    public ResponseEntity<KnowledgeBase.Stats> get(@PathVariable String name) {
+        return knowledgeBases.find(name)
+                .map(knowledgeBase -> ResponseEntity.ok(knowledgeBase.stats()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Create a namespace, optionally with its own byte quota; an existing namespace is returned unchanged
+     */
+    @PutMapping("/{name}")
+    public ResponseEntity<KnowledgeBase.Stats> create(@PathVariable String name,
+                                                      @RequestBody(required = false) CreateNamespaceRequest request) {
+        Long maxBytes = request != null ? request.maxBytes() : null;
+        return ResponseEntity.ok(knowledgeBases.create(name, maxBytes).stats());
+    }
+
+    @DeleteMapping("/{name}")
+    public ResponseEntity<Void> drop(@PathVariable String name) {
+        return knowledgeBases.drop(name)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    public record CreateNamespaceRequest(Long maxBytes) {}
+}
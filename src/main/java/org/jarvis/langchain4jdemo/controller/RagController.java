@@ -39,6 +39,21 @@ public class RagController {
         return ResponseEntity.ok("Long document processed and added successfully");
     }
 
+    @PostMapping("/sync-document")
+    public ResponseEntity<EmbeddingService.SyncResult> syncDocument(@RequestBody SyncDocumentRequest request) {
+        if (request.documentId() == null || request.documentId().isBlank() || request.text() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(embeddingService.syncDocument(request.documentId(), request.text()));
+    }
+
+    @DeleteMapping("/documents/{documentId}")
+    public ResponseEntity<EmbeddingService.SyncResult> removeDocument(@PathVariable String documentId) {
+        return embeddingService.removeDocument(documentId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PostMapping("/search")
     public ResponseEntity<List<String>> search(@RequestBody SearchRequest request) {
         List<String> results = embeddingService.searchSimilar(
@@ -48,28 +63,34 @@ public class RagController {
         return ResponseEntity.ok(results);
     }
 
-    @PostMapping("/ask")
-    public ResponseEntity<RagResponse> ask(@RequestBody AskRequest request) {
-        String answer = ragService.answerWithContext(
-            request.question(),
+    @PostMapping("/search-batch")
+    public ResponseEntity<List<List<EmbeddingService.ScoredText>>> searchBatch(@RequestBody BatchSearchRequest request) {
+        List<List<EmbeddingService.ScoredText>> results = embeddingService.searchSimilarBatch(
+            request.queries(),
             request.maxResults() != null ? request.maxResults() : 3
         );
-        return ResponseEntity.ok(new RagResponse(answer));
+        return ResponseEntity.ok(results);
+    }
+
+    @PostMapping("/ask")
+    public ResponseEntity<RagResponse> ask(@RequestBody AskRequest request) {
+        // maxResults is an upper bound; the number of segments used is chosen per query
+        RagService.RagResponse response = ragService.answerWithContext(request.question(), request.maxResults());
+        return ResponseEntity.ok(new RagResponse(response.answer(), response.k(), response.scores()));
     }
 
     @PostMapping("/ask-with-sources")
     public ResponseEntity<RagService.RagResponse> askWithSources(@RequestBody AskRequest request) {
-        RagService.RagResponse response = ragService.answerWithSources(
-            request.question(),
-            request.maxResults() != null ? request.maxResults() : 3
-        );
+        RagService.RagResponse response = ragService.answerWithSources(request.question(), request.maxResults());
         return ResponseEntity.ok(response);
     }
 
     public record DocumentRequest(String text, String id) {}
     public record MultiDocumentRequest(List<String> texts) {}
     public record LongDocumentRequest(String text) {}
+    public record SyncDocumentRequest(String documentId, String text) {}
     public record SearchRequest(String query, Integer maxResults) {}
+    public record BatchSearchRequest(List<String> queries, Integer maxResults) {}
     public record AskRequest(String question, Integer maxResults) {}
-    public record RagResponse(String answer) {}
+    public record RagResponse(String answer, int k, List<Double> scores) {}
 }
@@ -0,0 +1,71 @@
+package org.jarvis.langchain4jdemo.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.jarvis.langchain4jdemo.replication.ReplicaFollower;
+import org.jarvis.langchain4jdemo.replication.ReplicationPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * REST Controller for knowledge base replication: a primary serves its snapshot and delta log to replicas
+ */
+@RestController
+@RequestMapping("/api/replication")
+@RequiredArgsConstructor
+public class ReplicationController {
+
+    private final ReplicationPublisher replicationPublisher;
+    private final ReplicaFollower replicaFollower;
+
+    /**
+     * Binary snapshot of every namespace, labelled with the delta log sequence it covers
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<StreamingResponseBody> snapshot() {
+        if (!replicationPublisher.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        long sequence = replicationPublisher.sequence();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(ReplicaFollower.SEQUENCE_HEADER, String.valueOf(sequence))
+                .body(out -> replicationPublisher.writeSnapshot(sequence, out));
+    }
+
+    /**
+     * Delta log entries after a sequence; 410 Gone when they were already trimmed
+     */
+    @GetMapping("/log")
+    public ResponseEntity<byte[]> log(@RequestParam long after,
+                                      @RequestParam(defaultValue = "4194304") long maxBytes) {
+        if (!replicationPublisher.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        long sequence = replicationPublisher.sequence();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(ReplicaFollower.SEQUENCE_HEADER, String.valueOf(sequence))
+                .body(replicationPublisher.readLog(after, maxBytes));
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<ReplicationStatus> status() {
+        String role = replicationPublisher.isEnabled() ? "primary"
+                : replicaFollower.isEnabled() ? "replica" : "standalone";
+        return ResponseEntity.ok(new ReplicationStatus(role, replicationPublisher.sequence(),
+                replicationPublisher.firstSequence(), replicationPublisher.logBytes(),
+                replicaFollower.appliedSequence(), replicaFollower.primarySequence()));
+    }
+
+    /**
+     * sequence, firstSequence and logBytes describe this node's delta log (primary); appliedSequence and
+     * primarySequence describe how far this node has replicated (replica, -1 before the first snapshot)
+     */
+    public record ReplicationStatus(String role, long sequence, long firstSequence, long logBytes,
+                                    long appliedSequence, long primarySequence) {}
+}
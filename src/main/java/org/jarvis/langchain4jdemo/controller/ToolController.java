@@ -18,11 +18,16 @@ public class ToolController {
     private final ToolService toolService;
 
     @PostMapping("/chat")
-    public ResponseEntity<ToolResponse> chatWithTools(@RequestBody ToolRequest request) {
-        String response = toolService.chatWithTools(request.message());
-        return ResponseEntity.ok(new ToolResponse(response));
+    public ResponseEntity<ToolService.ToolChatResponse> chatWithTools(@RequestBody ToolRequest request) {
+        String sessionId = request.sessionId() != null ? request.sessionId() : ToolService.DEFAULT_SESSION;
+        return ResponseEntity.ok(toolService.chatWithTools(sessionId, request.message()));
     }
 
-    public record ToolRequest(String message) {}
-    public record ToolResponse(String response) {}
+    @PostMapping("/clear")
+    public ResponseEntity<String> clearMemory(@RequestParam(defaultValue = ToolService.DEFAULT_SESSION) String sessionId) {
+        toolService.clearMemory(sessionId);
+        return ResponseEntity.ok("Tool conversation cleared");
+    }
+
+    public record ToolRequest(String message, String sessionId) {}
 }
@@ -0,0 +1,84 @@
+package org.jarvis.langchain4jdemo.deadline;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gives every /api request a deadline: the X-Request-Timeout header (e.g. 1500ms, 30s, 2m; plain numbers are
+ * milliseconds), capped at the endpoint default, which is deadlines.endpoints.&lt;first path segment after
+ * /api/&gt; or deadlines.default
+ */
+@Component
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private static final String ENDPOINT_PROPERTY_PREFIX = "deadlines.endpoints.";
+    private static final Pattern TIMEOUT = Pattern.compile("(\\d+)\\s*(ms|s|m)?");
+
+    private final Environment environment;
+    private final Duration defaultTimeout;
+
+    public DeadlineFilter(Environment environment, @Value("${deadlines.default:300s}") Duration defaultTimeout) {
+        this.environment = environment;
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Duration limit = endpointTimeout(request.getRequestURI());
+        Duration requested = parse(request.getHeader(TIMEOUT_HEADER));
+        Duration timeout = requested != null && requested.compareTo(limit) < 0 ? requested : limit;
+        try (RequestDeadline.Scope ignored = RequestDeadline.open(timeout)) {
+            chain.doFilter(request, response);
+        }
+    }
+
+    private Duration endpointTimeout(String path) {
+        String rest = path.substring("/api/".length());
+        int slash = rest.indexOf('/');
+        String endpoint = slash < 0 ? rest : rest.substring(0, slash);
+        return environment.getProperty(ENDPOINT_PROPERTY_PREFIX + endpoint, Duration.class, defaultTimeout);
+    }
+
+    /**
+     * Requested timeout, or null if the header is missing, malformed or too large to represent; such a header is
+     * ignored, so the endpoint default applies
+     */
+    static Duration parse(String header) {
+        if (header == null) {
+            return null;
+        }
+        Matcher matcher = TIMEOUT.matcher(header.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            long amount = Long.parseLong(matcher.group(1));
+            String unit = matcher.group(2);
+            if (unit == null || unit.equals("ms")) {
+                return Duration.ofMillis(amount);
+            }
+            return unit.equals("s") ? Duration.ofSeconds(amount) : Duration.ofMinutes(amount);
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.jarvis.langchain4jdemo.deadline;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Per-thread request deadline: {@link DeadlineFilter} opens one for every request, and the embed, retrieve,
+ * generate and tool steps check it before they start and bound their waits by it; outside a request every
+ * check is a no-op
+ *
+ * Blocking model calls run through {@link #callWithin}, on a virtual thread the caller waits for. When the
+ * deadline passes or the caller is interrupted (e.g. a cancelled job), that thread is interrupted; socket I/O of
+ * a virtual thread is interruptible, so its HTTP connection is closed and the model server stops generating.
+ * Endpoints are synchronous, so a client that disconnects is not noticed until the response is written;
+ * its request keeps running until it finishes or its deadline passes.
+ */
+public final class RequestDeadline {
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+    private static final ExecutorService CALLS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("llm-call-", 0).factory());
+
+    private final Duration timeout;
+    private final long deadlineNanos;
+
+    private RequestDeadline(Duration timeout) {
+        this.timeout = timeout;
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+    }
+
+    /**
+     * Deadline of the calling thread, or null outside a request
+     */
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind the calling thread to a deadline timeout from now until the returned scope is closed
+     */
+    public static Scope open(Duration timeout) {
+        return bind(new RequestDeadline(timeout));
+    }
+
+    /**
+     * Bind the calling thread to an existing deadline, e.g. one captured before handing work to another thread
+     */
+    public static Scope bind(RequestDeadline deadline) {
+        RequestDeadline previous = CURRENT.get();
+        CURRENT.set(deadline);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * Throw {@link DeadlineExceededException} if the calling thread's deadline has passed before the given step
+     */
+    public static void check(String step) {
+        RequestDeadline deadline = CURRENT.get();
+        if (deadline != null && deadline.remainingNanos() <= 0) {
+            throw deadline.exceeded(step);
+        }
+    }
+
+    /**
+     * Run a blocking call within the calling thread's deadline, abandoning (and interrupting) it when the
+     * deadline passes or the caller is interrupted
+     *
+     * @throws DeadlineExceededException if the deadline passed first
+     * @throws CancellationException if the caller was interrupted; its interrupt flag is kept
+     */
+    public static <T> T callWithin(String step, Supplier<T> call) {
+        RequestDeadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return call.get();
+        }
+        check(step);
+        Future<T> future = CALLS.submit(call::get);
+        try {
+            return future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw deadline.exceeded(step);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted during " + step);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public Duration timeout() {
+        return timeout;
+    }
+
+    public DeadlineExceededException exceeded(String step) {
+        return new DeadlineExceededException("Deadline of " + timeout.toMillis() + " ms exceeded at " + step);
+    }
+
+    /**
+     * Restores the previous deadline when closed
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,77 @@
+package org.jarvis.langchain4jdemo.document;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunk-level manifest of one source document: content hash and embedding store id of every chunk
+ * in the currently indexed version. Callers synchronize on the manifest while re-indexing it.
+ */
+@Getter
+public class DocumentManifest {
+
+    private final String documentId;
+    private List<Chunk> chunks = List.of();
+    private int version;
+    private Instant updatedAt;
+
+    public DocumentManifest(String documentId) {
+        this.documentId = documentId;
+    }
+
+    /**
+     * Store ids of the current chunks grouped by content hash; duplicate chunks keep one id each
+     */
+    public Map<String, Deque<String>> idsByHash() {
+        Map<String, Deque<String>> ids = new HashMap<>();
+        for (Chunk chunk : chunks) {
+            ids.computeIfAbsent(chunk.hash(), h -> new ArrayDeque<>()).addLast(chunk.embeddingId());
+        }
+        return ids;
+    }
+
+    /**
+     * Position of each current chunk in the document by store id
+     */
+    public Map<String, Integer> positionsById() {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            positions.put(chunks.get(i).embeddingId(), i);
+        }
+        return positions;
+    }
+
+    public void replace(List<Chunk> newChunks) {
+        this.chunks = List.copyOf(newChunks);
+        this.version++;
+        this.updatedAt = Instant.now();
+    }
+
+    public List<String> embeddingIds() {
+        List<String> ids = new ArrayList<>(chunks.size());
+        chunks.forEach(chunk -> ids.add(chunk.embeddingId()));
+        return ids;
+    }
+
+    public static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public record Chunk(String hash, String embeddingId) {}
+}
@@ -0,0 +1,288 @@
+package org.jarvis.langchain4jdemo.document;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Document splitter that sizes segments in model tokens and works on index ranges of the original text
+ *
+ * The text is scanned once into sentence units (int offsets only, no substrings or regex), each unit's tokens
+ * are counted in place by a {@link TokenCounter}, and units are packed into segments of at most maxTokens.
+ * Segments end at sentence boundaries and prefer paragraph boundaries; consecutive segments share up to
+ * overlapTokens worth of trailing sentences. A sentence longer than maxTokens is cut at word boundaries.
+ * The only strings allocated are the final segment texts.
+ *
+ * {@link #splitAnchored} never lets a segment or its overlap cross a paragraph boundary, so each paragraph is
+ * split on its own: editing one paragraph leaves the segments of every other paragraph unchanged, which is
+ * what incremental re-indexing needs to reuse them.
+ */
+public class TokenAwareDocumentSplitter implements DocumentSplitter {
+
+    private final TokenCounter tokenCounter;
+    private final int maxTokens;
+    private final int overlapTokens;
+
+    public TokenAwareDocumentSplitter(TokenCounter tokenCounter, int maxTokens, int overlapTokens) {
+        if (maxTokens <= 0 || overlapTokens < 0 || overlapTokens >= maxTokens) {
+            throw new IllegalArgumentException("Require 0 <= overlapTokens < maxTokens, got " + overlapTokens + " / " + maxTokens);
+        }
+        this.tokenCounter = tokenCounter;
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        return split(document, false);
+    }
+
+    /**
+     * Split with segment boundaries anchored to paragraphs: short paragraphs become segments of their own
+     */
+    public List<TextSegment> splitAnchored(Document document) {
+        return split(document, true);
+    }
+
+    private List<TextSegment> split(Document document, boolean anchored) {
+        String text = document.text();
+        Units units = scanUnits(text);
+        List<TextSegment> segments = new ArrayList<>();
+
+        int first = 0;
+        while (first < units.size) {
+            int last = first;
+            int tokens = units.tokens[first];
+            int lastParagraphEnd = -1;
+            while (last + 1 < units.size && tokens + units.tokens[last + 1] <= maxTokens
+                    && !(anchored && units.paragraphStart[last + 1])) {
+                if (units.paragraphStart[last + 1]) {
+                    lastParagraphEnd = last;
+                }
+                last++;
+                tokens += units.tokens[last];
+            }
+            // Prefer ending on a paragraph boundary when that still fills at least half the budget
+            if (last + 1 < units.size && !units.paragraphStart[last + 1] && lastParagraphEnd >= first
+                    && tokensBetween(units, first, lastParagraphEnd) >= maxTokens / 2) {
+                last = lastParagraphEnd;
+            }
+
+            addSegment(segments, document.metadata(), text, units.start[first], units.end[last]);
+            if (last + 1 >= units.size) {
+                break;
+            }
+
+            // Step back over trailing units that fit in the overlap window, always making progress
+            // (anchored segments do not overlap into the next paragraph)
+            int next = last + 1;
+            int overlap = 0;
+            boolean newParagraph = anchored && units.paragraphStart[next];
+            while (!newParagraph && next - 1 > first && overlap + units.tokens[next - 1] <= overlapTokens) {
+                next--;
+                overlap += units.tokens[next];
+            }
+            first = next;
+        }
+        return segments;
+    }
+
+    private void addSegment(List<TextSegment> segments, Metadata documentMetadata, String text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return;
+        }
+        Metadata metadata = documentMetadata.copy().put("index", String.valueOf(segments.size()));
+        segments.add(TextSegment.from(text.substring(start, end), metadata));
+    }
+
+    private static int tokensBetween(Units units, int from, int to) {
+        int sum = 0;
+        for (int i = from; i <= to; i++) {
+            sum += units.tokens[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Split the text into sentence units, cutting oversized sentences at word boundaries
+     */
+    private Units scanUnits(CharSequence text) {
+        Units units = new Units(Math.max(16, text.length() / 80));
+        int length = text.length();
+        int unitStart = 0;
+        boolean paragraphStart = true;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '\n' && isParagraphBreak(text, i)) {
+                int breakEnd = skipWhitespace(text, i);
+                addUnit(units, text, unitStart, breakEnd, paragraphStart);
+                paragraphStart = true;
+                unitStart = breakEnd;
+                i = breakEnd;
+            } else if ((c == '.' || c == '!' || c == '?') && isSentenceEnd(text, i)) {
+                int sentenceEnd = skipClosers(text, i + 1);
+                int nextStart = skipWhitespace(text, sentenceEnd);
+                addUnit(units, text, unitStart, nextStart, paragraphStart);
+                // The whitespace after a sentence may hold the blank line ending its paragraph
+                paragraphStart = hasBlankLine(text, sentenceEnd, nextStart);
+                unitStart = nextStart;
+                i = nextStart;
+            } else {
+                i++;
+            }
+        }
+        addUnit(units, text, unitStart, length, paragraphStart);
+        return units;
+    }
+
+    private void addUnit(Units units, CharSequence text, int start, int end, boolean paragraphStart) {
+        if (start >= end) {
+            return;
+        }
+        int tokens = tokenCounter.count(text, start, end);
+        if (tokens <= maxTokens) {
+            units.add(start, end, tokens, paragraphStart);
+            return;
+        }
+        // Oversized sentence: cut at the last word boundary that keeps each piece within budget
+        int pieceStart = start;
+        int pieceTokens = 0;
+        int wordStart = start;
+        boolean first = paragraphStart;
+        while (wordStart < end) {
+            int wordEnd = skipWhitespace(text, nextWhitespace(text, wordStart, end));
+            wordEnd = Math.min(wordEnd, end);
+            int wordTokens = tokenCounter.count(text, wordStart, wordEnd);
+            if (pieceTokens > 0 && pieceTokens + wordTokens > maxTokens) {
+                units.add(pieceStart, wordStart, pieceTokens, first);
+                first = false;
+                pieceStart = wordStart;
+                pieceTokens = 0;
+            }
+            pieceTokens += wordTokens;
+            wordStart = wordEnd;
+        }
+        if (pieceStart < end) {
+            units.add(pieceStart, end, pieceTokens, first);
+        }
+    }
+
+    private static boolean isParagraphBreak(CharSequence text, int newline) {
+        for (int i = newline + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                return true;
+            }
+            if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the whitespace text[from, to) contains two newlines, i.e. a paragraph break
+     */
+    private static boolean hasBlankLine(CharSequence text, int from, int to) {
+        boolean newline = false;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                if (newline) {
+                    return true;
+                }
+                newline = true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A terminator ends a sentence when followed by whitespace (or end of text) and then a capital, digit or newline,
+     * which keeps abbreviations such as "e.g. this" inside their sentence
+     */
+    private static boolean isSentenceEnd(CharSequence text, int terminator) {
+        int after = skipClosers(text, terminator + 1);
+        if (after >= text.length()) {
+            return true;
+        }
+        if (!Character.isWhitespace(text.charAt(after))) {
+            return false;
+        }
+        int next = skipWhitespace(text, after);
+        if (next >= text.length()) {
+            return true;
+        }
+        char c = text.charAt(next);
+        return Character.isUpperCase(c) || Character.isDigit(c) || text.charAt(after) == '\n' || !Character.isLetter(c);
+    }
+
+    private static int skipClosers(CharSequence text, int i) {
+        while (i < text.length() && isCloser(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isCloser(char c) {
+        return c == '"' || c == '\'' || c == ')' || c == ']' || c == '”' || c == '’';
+    }
+
+    private static int skipWhitespace(CharSequence text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int nextWhitespace(CharSequence text, int i, int end) {
+        while (i < end && !Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Growable parallel arrays of unit offsets, token counts and paragraph-start flags
+     */
+    private static final class Units {
+        private int[] start;
+        private int[] end;
+        private int[] tokens;
+        private boolean[] paragraphStart;
+        private int size;
+
+        private Units(int capacity) {
+            start = new int[capacity];
+            end = new int[capacity];
+            tokens = new int[capacity];
+            paragraphStart = new boolean[capacity];
+        }
+
+        private void add(int unitStart, int unitEnd, int unitTokens, boolean startsParagraph) {
+            if (size == start.length) {
+                int capacity = size * 2;
+                start = Arrays.copyOf(start, capacity);
+                end = Arrays.copyOf(end, capacity);
+                tokens = Arrays.copyOf(tokens, capacity);
+                paragraphStart = Arrays.copyOf(paragraphStart, capacity);
+            }
+            start[size] = unitStart;
+            end[size] = unitEnd;
+            tokens[size] = unitTokens;
+            paragraphStart[size] = startsParagraph;
+            size++;
+        }
+    }
+}
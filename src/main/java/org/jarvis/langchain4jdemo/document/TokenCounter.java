@@ -0,0 +1,17 @@
+package org.jarvis.langchain4jdemo.document;
+
+/**
+ * Counts model tokens in a range of a character sequence without materializing it as a String
+ */
+@FunctionalInterface
+public interface TokenCounter {
+
+    /**
+     * Number of tokens in text[start, end)
+     */
+    int count(CharSequence text, int start, int end);
+
+    default int count(CharSequence text) {
+        return count(text, 0, text.length());
+    }
+}
@@ -0,0 +1,279 @@
+package org.jarvis.langchain4jdemo.document;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.function.SingletonSupplier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Allocation-free WordPiece token counter using the vocabulary of the bundled all-minilm-l6-v2 tokenizer
+ *
+ * Mirrors the BERT uncased pipeline: lowercasing, splitting on whitespace, punctuation and CJK characters,
+ * then greedy longest-match WordPiece over a character trie. Accent stripping is not applied, so accented
+ * words may count slightly differently from the real tokenizer. [CLS]/[SEP] are not included.
+ */
+@Slf4j
+public class WordPieceTokenCounter implements TokenCounter {
+
+    public static final String MINILM_TOKENIZER_RESOURCE = "all-minilm-l6-v2-tokenizer.json";
+
+    private static final int MAX_CHARS_PER_WORD = 100;
+    private static final String CONTINUATION_PREFIX = "##";
+
+    private final SingletonSupplier<Vocabulary> vocabulary;
+
+    public WordPieceTokenCounter(String tokenizerResource) {
+        // The vocabulary is parsed on first use to keep it off the startup path
+        this.vocabulary = SingletonSupplier.of(() -> Vocabulary.load(tokenizerResource));
+    }
+
+    public static WordPieceTokenCounter miniLm() {
+        return new WordPieceTokenCounter(MINILM_TOKENIZER_RESOURCE);
+    }
+
+    @Override
+    public int count(CharSequence text, int start, int end) {
+        Vocabulary vocab = vocabulary.obtain();
+        int tokens = 0;
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || Character.isISOControl(c)) {
+                i++;
+            } else if (isPunctuation(c) || isCjk(c)) {
+                tokens++;
+                i++;
+            } else {
+                int wordEnd = i + 1;
+                while (wordEnd < end && isWordChar(text.charAt(wordEnd))) {
+                    wordEnd++;
+                }
+                tokens += countWordPieces(vocab, text, i, wordEnd);
+                i = wordEnd;
+            }
+        }
+        return tokens;
+    }
+
+    private static int countWordPieces(Vocabulary vocab, CharSequence text, int start, int end) {
+        if (end - start > MAX_CHARS_PER_WORD) {
+            return 1;
+        }
+        int pieces = 0;
+        int position = start;
+        Trie trie = vocab.wordStarts;
+        while (position < end) {
+            int longestMatchEnd = trie.longestMatch(text, position, end);
+            if (longestMatchEnd < 0) {
+                // BERT maps a word with any unmatchable piece to a single [UNK]
+                return 1;
+            }
+            pieces++;
+            position = longestMatchEnd;
+            trie = vocab.continuations;
+        }
+        return pieces;
+    }
+
+    private static boolean isWordChar(char c) {
+        return !Character.isWhitespace(c) && !Character.isISOControl(c) && !isPunctuation(c) && !isCjk(c);
+    }
+
+    private static boolean isPunctuation(char c) {
+        if ((c >= 33 && c <= 47) || (c >= 58 && c <= 64) || (c >= 91 && c <= 96) || (c >= 123 && c <= 126)) {
+            return true;
+        }
+        int type = Character.getType(c);
+        return type == Character.CONNECTOR_PUNCTUATION || type == Character.DASH_PUNCTUATION
+                || type == Character.START_PUNCTUATION || type == Character.END_PUNCTUATION
+                || type == Character.INITIAL_QUOTE_PUNCTUATION || type == Character.FINAL_QUOTE_PUNCTUATION
+                || type == Character.OTHER_PUNCTUATION;
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF) || (c >= 0xF900 && c <= 0xFAFF);
+    }
+
+    /**
+     * Word-start pieces and "##" continuation pieces, each in its own trie
+     */
+    private record Vocabulary(Trie wordStarts, Trie continuations) {
+
+        static Vocabulary load(String resource) {
+            ClassLoader classLoader = WordPieceTokenCounter.class.getClassLoader();
+            try (InputStream in = classLoader.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IllegalStateException("Tokenizer resource not found on classpath: " + resource);
+                }
+                String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                List<String> tokens = parseVocabularyKeys(json);
+
+                Trie.Builder wordStarts = new Trie.Builder();
+                Trie.Builder continuations = new Trie.Builder();
+                for (String token : tokens) {
+                    if (token.startsWith(CONTINUATION_PREFIX) && token.length() > CONTINUATION_PREFIX.length()) {
+                        continuations.add(token.substring(CONTINUATION_PREFIX.length()));
+                    } else {
+                        wordStarts.add(token);
+                    }
+                }
+                log.info("Loaded WordPiece vocabulary with {} entries from {}", tokens.size(), resource);
+                return new Vocabulary(wordStarts.build(), continuations.build());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Extract the keys of model.vocab from a Hugging Face tokenizer.json
+         */
+        private static List<String> parseVocabularyKeys(String json) {
+            int modelIndex = json.indexOf("\"model\"");
+            int vocabIndex = json.indexOf("\"vocab\"", Math.max(modelIndex, 0));
+            if (vocabIndex < 0) {
+                throw new IllegalStateException("Tokenizer JSON has no model.vocab section");
+            }
+            int i = json.indexOf('{', vocabIndex) + 1;
+            List<String> keys = new ArrayList<>(32_000);
+            StringBuilder key = new StringBuilder();
+            while (i < json.length()) {
+                char c = json.charAt(i);
+                if (c == '}') {
+                    break;
+                }
+                if (c != '"') {
+                    i++;
+                    continue;
+                }
+                key.setLength(0);
+                i++;
+                while (json.charAt(i) != '"') {
+                    char k = json.charAt(i);
+                    if (k == '\\') {
+                        char escaped = json.charAt(++i);
+                        switch (escaped) {
+                            case 'u' -> {
+                                key.append((char) Integer.parseInt(json, i + 1, i + 5, 16));
+                                i += 4;
+                            }
+                            case 'n' -> key.append('\n');
+                            case 't' -> key.append('\t');
+                            case 'r' -> key.append('\r');
+                            case 'b' -> key.append('\b');
+                            case 'f' -> key.append('\f');
+                            default -> key.append(escaped);
+                        }
+                    } else {
+                        key.append(k);
+                    }
+                    i++;
+                }
+                keys.add(key.toString());
+                // Skip ": <id>"
+                i++;
+                while (i < json.length() && json.charAt(i) != ',' && json.charAt(i) != '}') {
+                    i++;
+                }
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Immutable character trie with sorted child arrays, walked without allocation
+     */
+    private static final class Trie {
+
+        private final char[][] childChars;
+        private final int[][] childNodes;
+        private final boolean[] terminal;
+
+        private Trie(char[][] childChars, int[][] childNodes, boolean[] terminal) {
+            this.childChars = childChars;
+            this.childNodes = childNodes;
+            this.terminal = terminal;
+        }
+
+        /**
+         * End index of the longest vocabulary entry starting at text[start], or -1 if none matches
+         */
+        int longestMatch(CharSequence text, int start, int end) {
+            int node = 0;
+            int matchEnd = -1;
+            for (int i = start; i < end; i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                int slot = Arrays.binarySearch(childChars[node], c);
+                if (slot < 0) {
+                    break;
+                }
+                node = childNodes[node][slot];
+                if (terminal[node]) {
+                    matchEnd = i + 1;
+                }
+            }
+            return matchEnd;
+        }
+
+        private static final class Builder {
+
+            private final List<Map<Character, Integer>> children = new ArrayList<>();
+            private final List<Boolean> terminal = new ArrayList<>();
+
+            Builder() {
+                newNode();
+            }
+
+            void add(String token) {
+                int node = 0;
+                for (int i = 0; i < token.length(); i++) {
+                    char c = token.charAt(i);
+                    Integer next = children.get(node).get(c);
+                    if (next == null) {
+                        next = newNode();
+                        children.get(node).put(c, next);
+                    }
+                    node = next;
+                }
+                terminal.set(node, true);
+            }
+
+            Trie build() {
+                int size = children.size();
+                char[][] chars = new char[size][];
+                int[][] nodes = new int[size][];
+                boolean[] terminals = new boolean[size];
+                for (int n = 0; n < size; n++) {
+                    Map<Character, Integer> edges = children.get(n);
+                    char[] keys = new char[edges.size()];
+                    int k = 0;
+                    for (char c : edges.keySet()) {
+                        keys[k++] = c;
+                    }
+                    Arrays.sort(keys);
+                    int[] targets = new int[keys.length];
+                    for (int j = 0; j < keys.length; j++) {
+                        targets[j] = edges.get(keys[j]);
+                    }
+                    chars[n] = keys;
+                    nodes[n] = targets;
+                    terminals[n] = terminal.get(n);
+                }
+                return new Trie(chars, nodes, terminals);
+            }
+
+            private int newNode() {
+                children.add(new HashMap<>(4));
+                terminal.add(false);
+                return children.size() - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.jarvis.langchain4jdemo.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Embedding model that defers building the underlying (ONNX) model until it is first needed
+ * or until {@link #warmUpAsync()} loads it in the background
+ */
+@Slf4j
+public class LazyEmbeddingModel implements EmbeddingModel {
+
+    private final Supplier<EmbeddingModel> factory;
+    private volatile EmbeddingModel delegate;
+    private volatile Duration loadTime;
+
+    public LazyEmbeddingModel(Supplier<EmbeddingModel> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        return delegate().embedAll(textSegments);
+    }
+
+    /**
+     * Load the model and run one inference on a background thread so the first real request pays nothing
+     */
+    public CompletableFuture<Void> warmUpAsync() {
+        return CompletableFuture.runAsync(this::warmUp, runnable -> Thread.ofPlatform().name("embedding-warmup").start(runnable));
+    }
+
+    /**
+     * Load the model and run one inference on the calling thread
+     */
+    public void warmUp() {
+        delegate().embed("warm-up");
+    }
+
+    public boolean isLoaded() {
+        return delegate != null;
+    }
+
+    /**
+     * Time spent building the model, or null if it has not been loaded yet
+     */
+    public Duration getLoadTime() {
+        return loadTime;
+    }
+
+    private EmbeddingModel delegate() {
+        EmbeddingModel model = delegate;
+        if (model == null) {
+            synchronized (this) {
+                model = delegate;
+                if (model == null) {
+                    long start = System.nanoTime();
+                    model = factory.get();
+                    loadTime = Duration.ofNanos(System.nanoTime() - start);
+                    delegate = model;
+                    log.info("Embedding model loaded in {} ms", loadTime.toMillis());
+                }
+            }
+        }
+        return model;
+    }
+}
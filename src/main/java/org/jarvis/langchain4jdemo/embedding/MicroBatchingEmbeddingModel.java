@@ -0,0 +1,185 @@
+package org.jarvis.langchain4jdemo.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedding model front-end that merges concurrent single-text embed calls into one embedAll call
+ *
+ * A dispatcher thread drains waiting requests into batches of at most maxBatchSize. When no batch is in flight
+ * the batch is dispatched immediately, so a lone request pays no extra latency; while batches are running the
+ * dispatcher waits up to maxWait for more requests to join. At most {@code lanes} batches run at once.
+ * Once closed, or if the dispatcher stops, waiting and new requests fail with IllegalStateException.
+ */
+@Slf4j
+public class MicroBatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Semaphore lanes;
+
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ExecutorService batchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread dispatcher;
+    private final DistributionSummary batchSizes;
+    private final Timer queueWait;
+
+    private volatile boolean running = true;
+
+    public MicroBatchingEmbeddingModel(EmbeddingModel delegate, int lanes, int maxBatchSize, Duration maxWait,
+                                       MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.lanes = new Semaphore(Math.max(1, lanes));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = maxWait.toNanos();
+        this.batchSizes = DistributionSummary.builder("embedding.batch.size")
+                .description("Number of texts embedded per model invocation")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("embedding.queue.wait")
+                .description("Time single-text embed calls wait before their batch starts")
+                .register(meterRegistry);
+        this.dispatcher = Thread.ofPlatform().daemon().name("embedding-batcher").start(this::dispatchLoop);
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return embed(TextSegment.from(text));
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment textSegment) {
+        if (!running) {
+            throw new IllegalStateException("Embedding batcher is closed");
+        }
+        PendingEmbedding pending = new PendingEmbedding(textSegment);
+        queue.add(pending);
+        if (!running) {
+            // Closed while enqueueing: the dispatcher may already have failed the queue and exited
+            failQueued();
+        }
+        try {
+            return new Response<>(pending.future.join());
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (textSegments.size() == 1) {
+            return new Response<>(List.of(embed(textSegments.get(0)).content()));
+        }
+        lanes.acquireUninterruptibly();
+        try {
+            batchSizes.record(textSegments.size());
+            return delegate.embedAll(textSegments);
+        } finally {
+            lanes.release();
+        }
+    }
+
+    private void dispatchLoop() {
+        List<PendingEmbedding> batch = List.of();
+        try {
+            while (running) {
+                batch = new ArrayList<>(maxBatchSize);
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - batch.size());
+
+                // Only linger for more requests when other batches are busy; an idle model serves immediately
+                if (batch.size() < maxBatchSize && maxWaitNanos > 0 && inFlight.get() > 0) {
+                    long deadline = System.nanoTime() + maxWaitNanos;
+                    while (batch.size() < maxBatchSize) {
+                        PendingEmbedding next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                    }
+                }
+
+                lanes.acquire();
+                // Requests that arrived while waiting for a lane ride along
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                inFlight.incrementAndGet();
+                List<PendingEmbedding> dispatched = batch;
+                batchExecutor.execute(() -> runBatch(dispatched));
+                batch = List.of();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Embedding dispatcher stopped: {}", e.getMessage());
+        } finally {
+            running = false;
+            IllegalStateException closed = new IllegalStateException("Embedding batcher is closed");
+            batch.forEach(pending -> pending.future.completeExceptionally(closed));
+            failQueued();
+        }
+    }
+
+    private void failQueued() {
+        IllegalStateException closed = new IllegalStateException("Embedding batcher is closed");
+        for (PendingEmbedding pending; (pending = queue.poll()) != null; ) {
+            pending.future.completeExceptionally(closed);
+        }
+    }
+
+    private void runBatch(List<PendingEmbedding> batch) {
+        try {
+            long now = System.nanoTime();
+            batch.forEach(pending -> queueWait.record(now - pending.enqueuedAt, TimeUnit.NANOSECONDS));
+            batchSizes.record(batch.size());
+
+            List<Embedding> embeddings = delegate.embedAll(batch.stream().map(p -> p.segment).toList()).content();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(embeddings.get(i));
+            }
+        } catch (RuntimeException e) {
+            log.error("Embedding batch of {} failed: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+        } finally {
+            inFlight.decrementAndGet();
+            lanes.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        batchExecutor.shutdown();
+    }
+
+    private static final class PendingEmbedding {
+        private final TextSegment segment;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Embedding> future = new CompletableFuture<>();
+
+        private PendingEmbedding(TextSegment segment) {
+            this.segment = segment;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.jarvis.langchain4jdemo.generation;
+
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.ollama.OllamaChatModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.audit.LlmAuditLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out chat models configured by generation profile
+ *
+ * One Ollama client is built per profile and shared by every endpoint bound to it; each endpoint gets a
+ * thin {@link ProfiledChatModel} over it so token usage and latency are reported per endpoint.
+ */
+@Component
+@Slf4j
+public class ChatModelProvider {
+
+    private final GenerationProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final LlmAuditLog auditLog;
+    private final ModelWarmup modelWarmup;
+    private final String baseUrl;
+    private final String modelName;
+    private final Duration timeout;
+
+    private final Map<String, ChatLanguageModel> modelsByProfile = new ConcurrentHashMap<>();
+    private final Map<String, ChatLanguageModel> modelsByEndpoint = new ConcurrentHashMap<>();
+
+    public ChatModelProvider(GenerationProperties properties, MeterRegistry meterRegistry, LlmAuditLog auditLog,
+                             ModelWarmup modelWarmup,
+                             @Value("${ollama.base.url}") String baseUrl,
+                             @Value("${ollama.chat.model}") String modelName,
+                             @Value("${ollama.timeout}") Duration timeout) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.auditLog = auditLog;
+        this.modelWarmup = modelWarmup;
+        this.baseUrl = baseUrl;
+        this.modelName = modelName;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Chat model for the profile bound to the given endpoint (llm.endpoints.&lt;endpoint&gt;)
+     */
+    public ChatLanguageModel forEndpoint(String endpoint) {
+        return modelsByEndpoint.computeIfAbsent(endpoint, e -> {
+            String profile = properties.profileName(e);
+            return new ProfiledChatModel(modelsByProfile.computeIfAbsent(profile, this::build), e, profile,
+                    meterRegistry, auditLog, modelWarmup);
+        });
+    }
+
+    private ChatLanguageModel build(String profileName) {
+        GenerationProfile profile = properties.profile(profileName);
+        log.info("Building chat model for generation profile '{}': {}", profileName, profile);
+        return OllamaChatModel.builder()
+                .baseUrl(baseUrl)
+                .modelName(modelName)
+                .timeout(timeout)
+                // A single attempt: a retry would resend the prompt after a deadline or cancellation interrupt
+                .maxRetries(1)
+                .temperature(profile.temperature())
+                .numPredict(profile.maxTokens())
+                .stop(profile.stop())
+                .format(profile.format())
+                .build();
+    }
+}
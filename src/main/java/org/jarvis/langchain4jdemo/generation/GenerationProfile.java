@@ -0,0 +1,16 @@
+package org.jarvis.langchain4jdemo.generation;
+
+import java.util.List;
+
+/**
+ * Named decoding settings for one kind of call; unset fields fall back to the model's defaults
+ *
+ * @param temperature sampling temperature
+ * @param maxTokens   cap on generated tokens (Ollama num_predict)
+ * @param stop        stop sequences that end generation early
+ * @param format      output format constraint, e.g. "json"
+ */
+public record GenerationProfile(Double temperature, Integer maxTokens, List<String> stop, String format) {
+
+    public static final GenerationProfile UNCONSTRAINED = new GenerationProfile(0.7, null, null, null);
+}
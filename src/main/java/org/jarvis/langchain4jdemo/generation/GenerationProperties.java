@@ -0,0 +1,35 @@
+package org.jarvis.langchain4jdemo.generation;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+/**
+ * Generation profiles (llm.profiles.&lt;name&gt;.*) and the profile each endpoint uses (llm.endpoints.&lt;endpoint&gt;)
+ * Endpoints without a binding use the "default" profile.
+ */
+@ConfigurationProperties("llm")
+public record GenerationProperties(Map<String, GenerationProfile> profiles, Map<String, String> endpoints) {
+
+    public static final String DEFAULT_PROFILE = "default";
+
+    public GenerationProperties {
+        profiles = profiles != null ? Map.copyOf(profiles) : Map.of();
+        endpoints = endpoints != null ? Map.copyOf(endpoints) : Map.of();
+    }
+
+    public String profileName(String endpoint) {
+        return endpoints.getOrDefault(endpoint, DEFAULT_PROFILE);
+    }
+
+    public GenerationProfile profile(String name) {
+        GenerationProfile profile = profiles.get(name);
+        if (profile == null) {
+            if (DEFAULT_PROFILE.equals(name)) {
+                return GenerationProfile.UNCONSTRAINED;
+            }
+            throw new IllegalStateException("Unknown generation profile: " + name);
+        }
+        return profile;
+    }
+}
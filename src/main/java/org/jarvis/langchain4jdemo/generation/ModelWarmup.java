@@ -0,0 +1,108 @@
+package org.jarvis.langchain4jdemo.generation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preloads the chat model in Ollama and keeps it resident, so requests after idle do not pay the model load
+ *
+ * At startup and every ollama.warmup.interval, an empty /api/generate request loads the model and pins it for
+ * ollama.keep-alive. Regular chat requests reset Ollama's timer to the server default (OLLAMA_KEEP_ALIVE,
+ * ollama.server-keep-alive here), so the interval should stay below it. The model is assumed resident until
+ * its last known expiry; calls started after that count as cold in llm.ttft{endpoint, state}.
+ */
+@Component
+@Slf4j
+public class ModelWarmup {
+
+    private final RestClient restClient;
+    private final String modelName;
+    private final boolean enabled;
+    private final Duration keepAlive;
+    private final Duration serverKeepAlive;
+    private final MeterRegistry meterRegistry;
+    private final Timer warmupTimer;
+
+    private volatile long residentUntilNanos = System.nanoTime();
+
+    public ModelWarmup(@Value("${ollama.base.url}") String baseUrl,
+                       @Value("${ollama.chat.model}") String modelName,
+                       @Value("${ollama.timeout}") Duration timeout,
+                       @Value("${ollama.warmup.enabled:true}") boolean enabled,
+                       @Value("${ollama.keep-alive:30m}") Duration keepAlive,
+                       @Value("${ollama.server-keep-alive:5m}") Duration serverKeepAlive,
+                       MeterRegistry meterRegistry) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory();
+        requestFactory.setReadTimeout(timeout);
+        this.restClient = RestClient.builder().baseUrl(baseUrl).requestFactory(requestFactory).build();
+        this.modelName = modelName;
+        this.enabled = enabled;
+        this.keepAlive = keepAlive;
+        this.serverKeepAlive = serverKeepAlive;
+        this.meterRegistry = meterRegistry;
+        this.warmupTimer = Timer.builder("llm.warmup.duration")
+                .description("Time for Ollama to load (or confirm) the chat model")
+                .tag("model", modelName)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Load the model and refresh its keep-alive; runs at startup and then on a fixed delay
+     */
+    @Scheduled(initialDelayString = "0", fixedDelayString = "${ollama.warmup.interval:4m}")
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            restClient.post()
+                    .uri("/api/generate")
+                    .body(Map.of("model", modelName, "keep_alive", keepAlive.toSeconds() + "s"))
+                    .retrieve()
+                    .toBodilessEntity();
+            long elapsed = System.nanoTime() - start;
+            warmupTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            residentFor(keepAlive);
+            log.debug("Model {} warm, pinned for {} (took {} ms)", modelName, keepAlive, elapsed / 1_000_000);
+        } catch (RestClientException e) {
+            log.warn("Warm-up of model {} failed: {}", modelName, e.getMessage());
+        }
+    }
+
+    /**
+     * Whether the model is believed to be loaded; read before a call to classify it as cold or warm
+     */
+    public boolean isWarm() {
+        return System.nanoTime() - residentUntilNanos < 0;
+    }
+
+    /**
+     * Record a finished call: its time to first token under the state seen when it started; the call also
+     * reset Ollama's expiry to the server default
+     */
+    public void recordCall(String endpoint, boolean warmAtStart, long timeToFirstTokenNanos) {
+        Timer.builder("llm.ttft")
+                .description("Time from sending a chat request to its first token (whole response when not streaming)")
+                .tag("endpoint", endpoint)
+                .tag("state", warmAtStart ? "warm" : "cold")
+                .register(meterRegistry)
+                .record(timeToFirstTokenNanos, TimeUnit.NANOSECONDS);
+        residentFor(serverKeepAlive);
+    }
+
+    private void residentFor(Duration duration) {
+        residentUntilNanos = System.nanoTime() + duration.toNanos();
+    }
+}
@@ -0,0 +1,134 @@
+package org.jarvis.langchain4jdemo.generation;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jarvis.langchain4jdemo.audit.LlmAuditLog;
+import org.jarvis.langchain4jdemo.deadline.DeadlineExceededException;
+import org.jarvis.langchain4jdemo.deadline.RequestDeadline;
+import org.jarvis.langchain4jdemo.ratelimit.RateLimiter;
+import org.jarvis.langchain4jdemo.tracing.RequestTracing;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Chat model view for one endpoint: delegates to the shared model of its profile within the request deadline
+ * (see RequestDeadline), records llm.output.tokens, llm.generation.duration and llm.generation.wasted (calls
+ * abandoned at the deadline or on cancellation) tagged with endpoint and profile, reports cold or warm
+ * time to first token to {@link ModelWarmup}, charges the tokens used to the rate-limited client, and hands the
+ * exchange to the LLM audit log
+ */
+public class ProfiledChatModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final String endpoint;
+    private final LlmAuditLog auditLog;
+    private final ModelWarmup modelWarmup;
+    private final DistributionSummary outputTokens;
+    private final DistributionSummary inputTokens;
+    private final Timer duration;
+    private final Timer wasted;
+
+    ProfiledChatModel(ChatLanguageModel delegate, String endpoint, String profile, MeterRegistry meterRegistry,
+                      LlmAuditLog auditLog, ModelWarmup modelWarmup) {
+        this.delegate = delegate;
+        this.endpoint = endpoint;
+        this.auditLog = auditLog;
+        this.modelWarmup = modelWarmup;
+        this.outputTokens = DistributionSummary.builder("llm.output.tokens")
+                .description("Tokens generated per LLM call")
+                .tag("endpoint", endpoint)
+                .tag("profile", profile)
+                .register(meterRegistry);
+        this.inputTokens = DistributionSummary.builder("llm.input.tokens")
+                .description("Prompt tokens per LLM call")
+                .tag("endpoint", endpoint)
+                .tag("profile", profile)
+                .register(meterRegistry);
+        this.duration = Timer.builder("llm.generation.duration")
+                .description("Wall-clock time of LLM calls")
+                .tag("endpoint", endpoint)
+                .tag("profile", profile)
+                .register(meterRegistry);
+        this.wasted = Timer.builder("llm.generation.wasted")
+                .description("Generation time of LLM calls abandoned at their deadline or on cancellation")
+                .tag("endpoint", endpoint)
+                .tag("profile", profile)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return record(messages, () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return record(messages, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return record(messages, () -> delegate.generate(messages, toolSpecification));
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    private Response<AiMessage> record(List<ChatMessage> messages, Supplier<Response<AiMessage>> call) {
+        boolean warm = modelWarmup.isWarm();
+        long start = System.nanoTime();
+        Response<AiMessage> response;
+        try (RequestTracing.Scope ignored = RequestTracing.span("llm." + endpoint)) {
+            response = RequestDeadline.callWithin("llm." + endpoint, call);
+        } catch (RuntimeException e) {
+            long elapsed = System.nanoTime() - start;
+            duration.record(elapsed, TimeUnit.NANOSECONDS);
+            if (e instanceof DeadlineExceededException || e instanceof CancellationException) {
+                wasted.record(elapsed, TimeUnit.NANOSECONDS);
+            }
+            auditLog.record(endpoint, messages, e.getMessage(), elapsed, "error");
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        duration.record(elapsed, TimeUnit.NANOSECONDS);
+        // Not streaming: the first token reaches the caller with the whole response
+        modelWarmup.recordCall(endpoint, warm, elapsed);
+        auditLog.record(endpoint, messages, responseText(response), elapsed, "success");
+
+        TokenUsage usage = response != null ? response.tokenUsage() : null;
+        if (usage != null) {
+            if (usage.outputTokenCount() != null) {
+                outputTokens.record(usage.outputTokenCount());
+            }
+            if (usage.inputTokenCount() != null) {
+                inputTokens.record(usage.inputTokenCount());
+            }
+            if (usage.totalTokenCount() != null) {
+                RateLimiter.chargeTokens(usage.totalTokenCount());
+            }
+        }
+        return response;
+    }
+
+    private static String responseText(Response<AiMessage> response) {
+        if (response == null || response.content() == null) {
+            return null;
+        }
+        AiMessage message = response.content();
+        return message.hasToolExecutionRequests() ? "tool calls: " + message.toolExecutionRequests() : message.text();
+    }
+}
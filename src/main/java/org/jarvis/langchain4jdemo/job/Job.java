@@ -0,0 +1,63 @@
+package org.jarvis.langchain4jdemo.job;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * An asynchronous unit of LLM work tracked by {@link JobService}
+ */
+@Getter
+public class Job {
+
+    private final String id;
+    private final JobType type;
+    private final String tenant;
+    private final JobPriority priority;
+    private final Instant submittedAt = Instant.now();
+
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String result;
+    private volatile String error;
+    private volatile Future<?> future;
+
+    Job(String id, JobType type, String tenant, JobPriority priority) {
+        this.id = id;
+        this.type = type;
+        this.tenant = tenant;
+        this.priority = priority;
+    }
+
+    void attach(Future<?> future) {
+        this.future = future;
+    }
+
+    void markRunning() {
+        this.startedAt = Instant.now();
+        this.status = JobStatus.RUNNING;
+    }
+
+    void complete(String result) {
+        this.result = result;
+        finish(JobStatus.SUCCEEDED);
+    }
+
+    void fail(String error) {
+        this.error = error;
+        finish(JobStatus.FAILED);
+    }
+
+    void cancel() {
+        finish(JobStatus.CANCELLED);
+    }
+
+    private synchronized void finish(JobStatus finalStatus) {
+        if (!status.isFinished()) {
+            this.finishedAt = Instant.now();
+            this.status = finalStatus;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.jarvis.langchain4jdemo.job;
+
+/**
+ * Scheduling class of an LLM call
+ * INTERACTIVE calls (HTTP requests waiting on an answer) are always dispatched before BATCH calls
+ */
+public enum JobPriority {
+    INTERACTIVE,
+    BATCH
+}
@@ -0,0 +1,141 @@
+package org.jarvis.langchain4jdemo.job;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.service.AiServiceExampleService;
+import org.jarvis.langchain4jdemo.service.BasicChatService;
+import org.jarvis.langchain4jdemo.service.EmbeddingService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Service running long LLM operations as asynchronous jobs
+ * Feature: submit/poll/cancel instead of holding an HTTP connection open; job LLM calls are scheduled as BATCH
+ */
+@Service
+@Slf4j
+public class JobService implements DisposableBean {
+
+    private final BasicChatService basicChatService;
+    private final AiServiceExampleService aiServiceExampleService;
+    private final EmbeddingService embeddingService;
+    private final int maxActiveJobs;
+    private final Duration retention;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public JobService(BasicChatService basicChatService,
+                      AiServiceExampleService aiServiceExampleService,
+                      EmbeddingService embeddingService,
+                      @Value("${jobs.max-active:1000}") int maxActiveJobs,
+                      @Value("${jobs.retention:1h}") Duration retention) {
+        this.basicChatService = basicChatService;
+        this.aiServiceExampleService = aiServiceExampleService;
+        this.embeddingService = embeddingService;
+        this.maxActiveJobs = maxActiveJobs;
+        this.retention = retention;
+    }
+
+    /**
+     * Submit a job; it runs in the background and its LLM calls compete as the given tenant and priority
+     */
+    public Job submit(JobType type, Map<String, String> params, String tenant, JobPriority priority) {
+        evictExpired();
+        long active = jobs.values().stream().filter(job -> !job.getStatus().isFinished()).count();
+        if (active >= maxActiveJobs) {
+            throw new LlmCapacityExceededException("Too many active jobs (" + maxActiveJobs + ")");
+        }
+
+        String owner = tenant != null && !tenant.isBlank() ? tenant : LlmCallContext.DEFAULT_TENANT;
+        Job job = new Job(UUID.randomUUID().toString(), type, owner, priority);
+        jobs.put(job.getId(), job);
+        job.attach(executor.submit(() -> run(job, params)));
+        log.info("Submitted {} job {} for tenant {} ({})", type, job.getId(), job.getTenant(), priority);
+        return job;
+    }
+
+    public Optional<Job> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancel a queued or running job; a job waiting for an LLM slot leaves the queue immediately
+     */
+    public Optional<Job> cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (!job.getStatus().isFinished()) {
+            job.cancel();
+            if (job.getFuture() != null) {
+                job.getFuture().cancel(true);
+            }
+            log.info("Cancelled job {}", id);
+        }
+        return Optional.of(job);
+    }
+
+    private void run(Job job, Map<String, String> params) {
+        if (job.getStatus().isFinished()) {
+            return;
+        }
+        job.markRunning();
+        try (LlmCallContext.Scope ignored = LlmCallContext.open(job.getTenant(), job.getPriority())) {
+            job.complete(execute(job.getType(), params));
+        } catch (CancellationException e) {
+            job.cancel();
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                job.cancel();
+            } else {
+                log.error("Job {} failed: {}", job.getId(), e.getMessage(), e);
+                job.fail(e.getMessage());
+            }
+        }
+    }
+
+    private String execute(JobType type, Map<String, String> params) {
+        return switch (type) {
+            case CHAT -> basicChatService.chat(required(params, "message"));
+            case GENERATE_CODE -> aiServiceExampleService.generateCode(
+                    params.getOrDefault("language", "Java"), required(params, "description"));
+            case SUMMARIZE -> aiServiceExampleService.summarize(
+                    required(params, "text"), Integer.parseInt(params.getOrDefault("maxWords", "100")));
+            case ADD_LONG_DOCUMENT -> {
+                embeddingService.addLongDocument(required(params, "text"));
+                yield "Long document processed and added successfully";
+            }
+        };
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params != null ? params.get(name) : null;
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing job parameter: " + name);
+        }
+        return value;
+    }
+
+    private void evictExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.getStatus().isFinished()
+                && job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,16 @@
+package org.jarvis.langchain4jdemo.job;
+
+/**
+ * Lifecycle states of an asynchronous job
+ */
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+    }
+}
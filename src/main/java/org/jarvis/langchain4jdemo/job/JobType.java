@@ -0,0 +1,11 @@
+package org.jarvis.langchain4jdemo.job;
+
+/**
+ * Long-running operations that can be submitted as asynchronous jobs
+ */
+public enum JobType {
+    CHAT,
+    GENERATE_CODE,
+    SUMMARIZE,
+    ADD_LONG_DOCUMENT
+}
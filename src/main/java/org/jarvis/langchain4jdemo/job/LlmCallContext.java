@@ -0,0 +1,59 @@
+package org.jarvis.langchain4jdemo.job;
+
+/**
+ * Per-thread context describing who an LLM call is made for and how it should be scheduled
+ * Opened by {@link TenantFilter} for HTTP requests and by {@link JobService} for background jobs
+ */
+public final class LlmCallContext {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final ThreadLocal<LlmCallContext> CURRENT = new ThreadLocal<>();
+
+    private final String tenant;
+    private final JobPriority priority;
+
+    private LlmCallContext(String tenant, JobPriority priority) {
+        this.tenant = tenant;
+        this.priority = priority;
+    }
+
+    public String tenant() {
+        return tenant;
+    }
+
+    public JobPriority priority() {
+        return priority;
+    }
+
+    /**
+     * Context of the calling thread; calls made outside a request or job are interactive for the default tenant
+     */
+    public static LlmCallContext current() {
+        LlmCallContext context = CURRENT.get();
+        return context != null ? context : new LlmCallContext(DEFAULT_TENANT, JobPriority.INTERACTIVE);
+    }
+
+    /**
+     * Bind the calling thread to the given tenant and priority until the returned scope is closed
+     */
+    public static Scope open(String tenant, JobPriority priority) {
+        LlmCallContext previous = CURRENT.get();
+        CURRENT.set(new LlmCallContext(tenant != null && !tenant.isBlank() ? tenant : DEFAULT_TENANT, priority));
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * Restores the previous context when closed
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
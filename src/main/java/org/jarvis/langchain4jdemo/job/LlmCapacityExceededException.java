@@ -0,0 +1,15 @@
+package org.jarvis.langchain4jdemo.job;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the LLM scheduler queue is full and a call cannot even be queued
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class LlmCapacityExceededException extends RuntimeException {
+
+    public LlmCapacityExceededException(String message) {
+        super(message);
+    }
+}
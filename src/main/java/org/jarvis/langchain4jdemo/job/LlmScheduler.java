@@ -0,0 +1,246 @@
+package org.jarvis.langchain4jdemo.job;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.deadline.RequestDeadline;
+import org.jarvis.langchain4jdemo.tracing.RequestTracing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, priority-aware admission gate in front of the LLM backend
+ *
+ * At most max-concurrency calls hold a slot at once; batch calls may use at most max-batch-concurrency of them,
+ * so interactive calls always find headroom while batch jobs run. Waiting calls are granted slots interactive
+ * first, then round-robin across tenants within a priority so one tenant cannot starve the others.
+ * The call itself runs on the caller's thread, so thread-bound request state stays intact.
+ * A waiting call gives up when its request deadline passes.
+ */
+@Component
+@Slf4j
+public class LlmScheduler {
+
+    private final int maxConcurrency;
+    private final int maxBatchConcurrency;
+    private final int maxQueued;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<JobPriority, LinkedHashMap<String, ArrayDeque<Waiter>>> waiting = new EnumMap<>(JobPriority.class);
+    private final Map<JobPriority, Integer> running = new EnumMap<>(JobPriority.class);
+    private final Map<JobPriority, Timer> waitTimers = new EnumMap<>(JobPriority.class);
+    private int queued;
+
+    public LlmScheduler(@Value("${llm.scheduler.max-concurrency:4}") int maxConcurrency,
+                        @Value("${llm.scheduler.max-batch-concurrency:2}") int maxBatchConcurrency,
+                        @Value("${llm.scheduler.max-queued:256}") int maxQueued,
+                        MeterRegistry meterRegistry) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        // Keep at least one slot for interactive calls whenever there is more than one slot
+        this.maxBatchConcurrency = Math.max(1, Math.min(maxBatchConcurrency, Math.max(1, this.maxConcurrency - 1)));
+        this.maxQueued = maxQueued;
+
+        for (JobPriority priority : JobPriority.values()) {
+            waiting.put(priority, new LinkedHashMap<>());
+            running.put(priority, 0);
+            waitTimers.put(priority, Timer.builder("llm.scheduler.wait")
+                    .description("Time LLM calls spend waiting for a backend slot")
+                    .tag("priority", priority.name().toLowerCase())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+            Gauge.builder("llm.scheduler.running", () -> runningCount(priority))
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("llm.scheduler.queued", this::queuedCount).register(meterRegistry);
+
+        log.info("LLM scheduler: {} slots, {} usable by batch work, queue bound {}",
+                this.maxConcurrency, this.maxBatchConcurrency, maxQueued);
+    }
+
+    /**
+     * Run an LLM call once a slot is available for the calling thread's tenant and priority
+     */
+    public <T> T execute(Supplier<T> call) {
+        try (Permit ignored = acquire()) {
+            return call.get();
+        }
+    }
+
+    /**
+     * Acquire a slot for the calling thread's tenant and priority; the permit must be closed when the call ends
+     */
+    public Permit acquire() {
+        LlmCallContext context = LlmCallContext.current();
+        try (RequestTracing.Scope ignored = RequestTracing.span("llm.queue")) {
+            return acquire(context.tenant(), context.priority());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for an LLM slot");
+        }
+    }
+
+    Permit acquire(String tenant, JobPriority priority) throws InterruptedException {
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        try {
+            if (!hasWaitersAtOrAbove(priority) && canRun(priority)) {
+                running.merge(priority, 1, Integer::sum);
+            } else {
+                if (queued >= maxQueued) {
+                    throw new LlmCapacityExceededException("LLM queue is full (" + maxQueued + " waiting calls)");
+                }
+                Waiter waiter = new Waiter(lock.newCondition());
+                waiting.get(priority).computeIfAbsent(tenant, t -> new ArrayDeque<>()).addLast(waiter);
+                queued++;
+                RequestDeadline deadline = RequestDeadline.current();
+                try {
+                    while (!waiter.granted) {
+                        if (deadline == null) {
+                            waiter.condition.await();
+                        } else if (deadline.remainingNanos() > 0) {
+                            waiter.condition.awaitNanos(deadline.remainingNanos());
+                        } else {
+                            removeWaiter(priority, tenant, waiter);
+                            throw deadline.exceeded("llm.queue");
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        release(priority);
+                    } else {
+                        removeWaiter(priority, tenant, waiter);
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        waitTimers.get(priority).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Permit(priority);
+    }
+
+    private void release(JobPriority priority) {
+        lock.lock();
+        try {
+            running.merge(priority, -1, Integer::sum);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand free slots to waiters: interactive before batch, round-robin across tenants within a priority
+     */
+    private void dispatch() {
+        for (JobPriority priority : JobPriority.values()) {
+            LinkedHashMap<String, ArrayDeque<Waiter>> tenants = waiting.get(priority);
+            while (!tenants.isEmpty() && canRun(priority)) {
+                Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it = tenants.entrySet().iterator();
+                Map.Entry<String, ArrayDeque<Waiter>> next = it.next();
+                it.remove();
+                Waiter waiter = next.getValue().pollFirst();
+                if (!next.getValue().isEmpty()) {
+                    // Re-insert at the tail so the next grant goes to the next tenant
+                    tenants.put(next.getKey(), next.getValue());
+                }
+                queued--;
+                running.merge(priority, 1, Integer::sum);
+                waiter.granted = true;
+                waiter.condition.signal();
+            }
+        }
+    }
+
+    private boolean canRun(JobPriority priority) {
+        int total = running.get(JobPriority.INTERACTIVE) + running.get(JobPriority.BATCH);
+        if (total >= maxConcurrency) {
+            return false;
+        }
+        return priority == JobPriority.INTERACTIVE || running.get(JobPriority.BATCH) < maxBatchConcurrency;
+    }
+
+    private boolean hasWaitersAtOrAbove(JobPriority priority) {
+        for (JobPriority p : JobPriority.values()) {
+            if (!waiting.get(p).isEmpty()) {
+                return true;
+            }
+            if (p == priority) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private void removeWaiter(JobPriority priority, String tenant, Waiter waiter) {
+        ArrayDeque<Waiter> queue = waiting.get(priority).get(tenant);
+        if (queue != null && queue.remove(waiter)) {
+            queued--;
+            if (queue.isEmpty()) {
+                waiting.get(priority).remove(tenant);
+            }
+        }
+    }
+
+    private int runningCount(JobPriority priority) {
+        lock.lock();
+        try {
+            return running.get(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int queuedCount() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        private final Condition condition;
+        private boolean granted;
+
+        private Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * A held backend slot; closing it hands the slot to the next waiter
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final JobPriority priority;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(JobPriority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(priority);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.jarvis.langchain4jdemo.job;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Binds every HTTP request to its tenant (X-Tenant-Id header) as an interactive LLM caller
+ */
+@Component
+public class TenantFilter extends OncePerRequestFilter {
+
+    public static final String TENANT_HEADER = "X-Tenant-Id";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try (LlmCallContext.Scope ignored = LlmCallContext.open(request.getHeader(TENANT_HEADER), JobPriority.INTERACTIVE)) {
+            chain.doFilter(request, response);
+        }
+    }
+}
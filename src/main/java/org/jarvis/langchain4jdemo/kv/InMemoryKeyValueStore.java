@@ -0,0 +1,99 @@
+package org.jarvis.langchain4jdemo.kv;
+
+import org.jarvis.langchain4jdemo.quota.MemoryEstimates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free in-memory store on a ConcurrentSkipListMap; sorted keys make prefix listing a range scan
+ */
+public class InMemoryKeyValueStore implements KeyValueStore {
+
+    private final ConcurrentSkipListMap<String, String> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    @Override
+    public Optional<String> get(String key) {
+        return Optional.ofNullable(entries.get(key));
+    }
+
+    @Override
+    public void put(String key, String value) {
+        replace(key, value);
+    }
+
+    /**
+     * Put and return the previous value, or null
+     */
+    public String replace(String key, String value) {
+        String previous = entries.put(key, value);
+        bytes.addAndGet(previous == null ? entryBytes(key, value) : MemoryEstimates.of(value) - MemoryEstimates.of(previous));
+        return previous;
+    }
+
+    @Override
+    public boolean delete(String key) {
+        return remove(key) != null;
+    }
+
+    /**
+     * Delete and return the removed value, or null
+     */
+    public String remove(String key) {
+        String previous = entries.remove(key);
+        if (previous != null) {
+            bytes.addAndGet(-entryBytes(key, previous));
+        }
+        return previous;
+    }
+
+    @Override
+    public KeyPage list(String prefix, String after, int limit) {
+        String from = prefix != null ? prefix : "";
+        NavigableMap<String, String> range = after != null && after.compareTo(from) >= 0
+                ? entries.tailMap(after, false)
+                : entries.tailMap(from, true);
+
+        List<String> keys = new ArrayList<>(Math.min(limit, 64));
+        for (String key : range.keySet()) {
+            if (!key.startsWith(from)) {
+                break;
+            }
+            if (keys.size() == limit) {
+                return new KeyPage(keys, keys.get(keys.size() - 1));
+            }
+            keys.add(key);
+        }
+        return new KeyPage(keys, null);
+    }
+
+    @Override
+    public long size() {
+        return entries.size();
+    }
+
+    @Override
+    public long approximateBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Estimated heap of one entry: skip-list node plus key and value strings
+     */
+    public static long entryBytes(String key, String value) {
+        return MemoryEstimates.MAP_ENTRY + MemoryEstimates.of(key) + MemoryEstimates.of(value);
+    }
+
+    /**
+     * Live entries in key order (weakly consistent under concurrent writes)
+     */
+    public Iterable<Map.Entry<String, String>> entries() {
+        return entries.entrySet();
+    }
+}
@@ -0,0 +1,37 @@
+package org.jarvis.langchain4jdemo.kv;
+
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Thread-safe string key-value store backing the DataStoreTool; approximateBytes covers the heap-resident entries
+ */
+public interface KeyValueStore extends AutoCloseable, MemoryAccounted {
+
+    Optional<String> get(String key);
+
+    void put(String key, String value);
+
+    /**
+     * @return true if the key existed
+     */
+    boolean delete(String key);
+
+    /**
+     * Keys starting with prefix, in ascending order, strictly after the cursor key (null for the first page)
+     */
+    KeyPage list(String prefix, String after, int limit);
+
+    long size();
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * One page of keys; nextCursor is null when there are no more keys
+     */
+    record KeyPage(List<String> keys, String nextCursor) {}
+}
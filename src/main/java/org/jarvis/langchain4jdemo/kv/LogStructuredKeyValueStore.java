@@ -0,0 +1,398 @@
+package org.jarvis.langchain4jdemo.kv;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store: a lock-free in-memory tier in front of an append-only, memory-mapped log
+ *
+ * Reads and listings are served from the in-memory skip list without locking. Writes append a
+ * checksummed record to the mapped log under a single writer lock and then update memory. On startup the
+ * log is replayed up to the first torn or corrupt record. When dead (overwritten or deleted) bytes exceed
+ * compaction-ratio of the log, a background task rewrites the live entries to a new file and swaps it in;
+ * the old mapping stays in use until the new file is in place and mapped, so a failed compaction changes nothing.
+ *
+ * Record layout: [int payloadLength][int crc32(payload)][payload = byte op, int keyLength, key,
+ * int valueLength, value]; the length is written last so a partially written record reads as end of log.
+ */
+@Slf4j
+public class LogStructuredKeyValueStore implements KeyValueStore {
+
+    private static final int MAGIC = 0x4C4B5631; // "LKV1"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Path path;
+    private final long initialSize;
+    private final double compactionRatio;
+    private final long compactionMinBytes;
+    private final boolean syncOnWrite;
+
+    private final InMemoryKeyValueStore memory = new InMemoryKeyValueStore();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("kv-compactor").factory());
+
+    private FileChannel channel;
+    private Arena arena;
+    private MemorySegment mapped;
+    private long position;
+    private long deadBytes;
+
+    public LogStructuredKeyValueStore(Path path, long initialSize, double compactionRatio,
+                                      long compactionMinBytes, boolean syncOnWrite) {
+        this.path = path;
+        this.initialSize = Math.max(4096, initialSize);
+        this.compactionRatio = compactionRatio;
+        this.compactionMinBytes = compactionMinBytes;
+        this.syncOnWrite = syncOnWrite;
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open key-value log " + path, e);
+        }
+    }
+
+    @Override
+    public Optional<String> get(String key) {
+        return memory.get(key);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        writeLock.lock();
+        try {
+            append(OP_PUT, key, value);
+            String previous = memory.replace(key, value);
+            if (previous != null) {
+                deadBytes += estimatedRecordSize(key, previous);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        maybeCompact();
+    }
+
+    @Override
+    public boolean delete(String key) {
+        writeLock.lock();
+        try {
+            if (memory.get(key).isEmpty()) {
+                return false;
+            }
+            append(OP_DELETE, key, "");
+            String previous = memory.remove(key);
+            // Both the old value and the tombstone itself become garbage
+            deadBytes += estimatedRecordSize(key, previous) + estimatedRecordSize(key, "");
+        } finally {
+            writeLock.unlock();
+        }
+        maybeCompact();
+        return true;
+    }
+
+    @Override
+    public KeyPage list(String prefix, String after, int limit) {
+        return memory.list(prefix, after, limit);
+    }
+
+    @Override
+    public long size() {
+        return memory.size();
+    }
+
+    /**
+     * Heap held by the in-memory tier; the mapped log lives outside the heap and is reported by logBytes
+     */
+    @Override
+    public long approximateBytes() {
+        return memory.approximateBytes();
+    }
+
+    /**
+     * Bytes currently used by the log, including garbage not yet compacted
+     */
+    public long logBytes() {
+        writeLock.lock();
+        try {
+            return position;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        // A running compaction is interrupted and cannot complete; wait for it so it never sees the unmapped log
+        compactor.shutdownNow();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Compaction of {} still running at close", path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            mapped.force();
+            arena.close();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error closing key-value log {}: {}", path, e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        boolean fresh = channel.size() == 0;
+        map(Math.max(channel.size(), initialSize));
+        if (fresh) {
+            mapped.set(INT, 0, MAGIC);
+            position = HEADER_SIZE;
+        } else {
+            if (mapped.get(INT, 0) != MAGIC) {
+                throw new IOException("Not a key-value log: " + path);
+            }
+            replay();
+        }
+        log.info("Opened key-value log {} with {} keys ({} bytes)", path, memory.size(), position);
+    }
+
+    /**
+     * Map the channel in a new arena; on failure the current mapping stays as it was
+     */
+    private void map(long size) throws IOException {
+        Arena newArena = Arena.ofShared();
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, newArena);
+        } catch (IOException | RuntimeException e) {
+            newArena.close();
+            throw e;
+        }
+        arena = newArena;
+    }
+
+    private void replay() {
+        long offset = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_HEADER_SIZE <= mapped.byteSize()) {
+            int length = mapped.get(INT, offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > mapped.byteSize()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            MemorySegment.copy(mapped, ValueLayout.JAVA_BYTE, offset + RECORD_HEADER_SIZE, payload, 0, length);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != mapped.get(INT, offset + 4)) {
+                log.warn("Corrupt record at offset {} in {}; ignoring the rest of the log", offset, path);
+                break;
+            }
+            apply(ByteBuffer.wrap(payload));
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        position = offset;
+    }
+
+    private void apply(ByteBuffer payload) {
+        byte op = payload.get();
+        String key = readString(payload);
+        String value = readString(payload);
+        String previous = op == OP_PUT ? memory.replace(key, value) : memory.remove(key);
+        if (previous != null) {
+            deadBytes += estimatedRecordSize(key, previous);
+        }
+        if (op == OP_DELETE) {
+            deadBytes += estimatedRecordSize(key, "");
+        }
+    }
+
+    private void append(byte op, String key, String value) {
+        byte[] payload = encode(op, key, value);
+        long recordSize = RECORD_HEADER_SIZE + payload.length;
+        try {
+            if (position + recordSize > mapped.byteSize()) {
+                grow(position + recordSize);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot grow key-value log " + path, e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        MemorySegment.copy(payload, 0, mapped, ValueLayout.JAVA_BYTE, position + RECORD_HEADER_SIZE, payload.length);
+        mapped.set(INT, position + 4, (int) crc.getValue());
+        mapped.set(INT, position, payload.length);
+        if (syncOnWrite) {
+            mapped.asSlice(position, recordSize).force();
+        }
+        position += recordSize;
+    }
+
+    private void grow(long required) throws IOException {
+        long newSize = Math.max(required, mapped.byteSize() * 2);
+        Arena previous = arena;
+        map(newSize);
+        previous.close();
+    }
+
+    private void maybeCompact() {
+        boolean due;
+        writeLock.lock();
+        try {
+            long used = position - HEADER_SIZE;
+            due = used >= compactionMinBytes && deadBytes > used * compactionRatio;
+        } finally {
+            writeLock.unlock();
+        }
+        if (due && compactionScheduled.compareAndSet(false, true)) {
+            compactor.execute(this::compact);
+        }
+    }
+
+    /**
+     * Rewrite live entries into a fresh log and atomically replace the old one; writers wait, readers do not
+     */
+    private void compact() {
+        writeLock.lock();
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        FileChannel newChannel = null;
+        Arena newArena = null;
+        try {
+            long before = position;
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC));
+                CRC32 crc = new CRC32();
+                for (Map.Entry<String, String> entry : memory.entries()) {
+                    byte[] payload = encode(OP_PUT, entry.getKey(), entry.getValue());
+                    crc.reset();
+                    crc.update(payload);
+                    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+                    record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                }
+                out.force(true);
+            }
+
+            // Map the new file before it replaces the old one; the old mapping stays live until the swap
+            newChannel = FileChannel.open(compacted, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long liveSize = newChannel.size();
+            newArena = Arena.ofShared();
+            MemorySegment newMapped = newChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(initialSize, liveSize * 2), newArena);
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Arena oldArena = arena;
+            FileChannel oldChannel = channel;
+            channel = newChannel;
+            arena = newArena;
+            mapped = newMapped;
+            position = liveSize;
+            deadBytes = 0;
+            newChannel = null;
+            newArena = null;
+            oldArena.close();
+            closeQuietly(oldChannel);
+            log.info("Compacted key-value log {}: {} -> {} bytes", path, before, liveSize);
+        } catch (IOException | RuntimeException e) {
+            log.error("Compaction of {} failed, keeping the current log: {}", path, e.getMessage(), e);
+        } finally {
+            if (newArena != null) {
+                newArena.close();
+            }
+            if (newChannel != null) {
+                closeQuietly(newChannel);
+            }
+            try {
+                Files.deleteIfExists(compacted);
+            } catch (IOException e) {
+                log.warn("Cannot delete {}: {}", compacted, e.getMessage());
+            }
+            compactionScheduled.set(false);
+            writeLock.unlock();
+        }
+    }
+
+    private void closeQuietly(FileChannel fileChannel) {
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            log.warn("Error closing {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static byte[] encode(byte op, String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 4 + keyBytes.length + 4 + valueBytes.length)
+                .put(op)
+                .putInt(keyBytes.length).put(keyBytes)
+                .putInt(valueBytes.length).put(valueBytes)
+                .array();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static long estimatedRecordSize(String key, String value) {
+        return RECORD_HEADER_SIZE + 1 + 4 + utf8Length(key) + 4 + utf8Length(value);
+    }
+
+    /**
+     * Encoded UTF-8 length without encoding (an unpaired surrogate counts as the 3 bytes of a BMP char)
+     */
+    static int utf8Length(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
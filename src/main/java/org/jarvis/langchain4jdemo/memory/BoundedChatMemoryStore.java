@@ -0,0 +1,75 @@
+package org.jarvis.langchain4jdemo.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+import org.jarvis.langchain4jdemo.quota.MemoryEstimates;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Non-persistent ChatMemoryStore that forgets the least recently used sessions once their estimated size
+ * exceeds maxBytes (0 or less means unbounded, like InMemoryChatMemoryStore)
+ */
+@Slf4j
+public class BoundedChatMemoryStore implements ChatMemoryStore, MemoryAccounted {
+
+    private final long maxBytes;
+    private final Map<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    public BoundedChatMemoryStore(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public synchronized List<ChatMessage> getMessages(Object memoryId) {
+        Session session = sessions.get(String.valueOf(memoryId));
+        return session == null ? List.of() : session.messages();
+    }
+
+    @Override
+    public synchronized void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        String sessionId = String.valueOf(memoryId);
+        Session session = new Session(List.copyOf(messages), MemoryEstimates.MAP_ENTRY
+                + MemoryEstimates.of(sessionId) + MemoryEstimates.of(messages));
+        Session previous = sessions.put(sessionId, session);
+        bytes += session.bytes() - (previous == null ? 0 : previous.bytes());
+        evict();
+    }
+
+    @Override
+    public synchronized void deleteMessages(Object memoryId) {
+        Session removed = sessions.remove(String.valueOf(memoryId));
+        if (removed != null) {
+            bytes -= removed.bytes();
+        }
+    }
+
+    @Override
+    public synchronized long approximateBytes() {
+        return bytes;
+    }
+
+    /**
+     * Drop least recently used sessions, never the one just written
+     */
+    private void evict() {
+        if (maxBytes <= 0) {
+            return;
+        }
+        Iterator<Map.Entry<String, Session>> eldest = sessions.entrySet().iterator();
+        while (bytes > maxBytes && sessions.size() > 1) {
+            Map.Entry<String, Session> entry = eldest.next();
+            bytes -= entry.getValue().bytes();
+            eldest.remove();
+            log.info("Evicted chat session {} to stay within {} bytes", entry.getKey(), maxBytes);
+        }
+    }
+
+    private record Session(List<ChatMessage> messages, long bytes) {}
+}
@@ -0,0 +1,206 @@
+package org.jarvis.langchain4jdemo.memory;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of chat messages: a kind byte followed by varint-length-prefixed UTF-8 strings
+ *
+ * Only text is persisted; non-text user content (e.g. images) is dropped.
+ */
+final class ChatMessageCodec {
+
+    private static final byte SYSTEM = 1;
+    private static final byte USER = 2;
+    private static final byte AI = 3;
+    private static final byte TOOL_RESULT = 4;
+
+    private ChatMessageCodec() {
+    }
+
+    static void writeMessages(Writer out, List<ChatMessage> messages) {
+        out.writeVarInt(messages.size());
+        for (ChatMessage message : messages) {
+            writeMessage(out, message);
+        }
+    }
+
+    static List<ChatMessage> readMessages(Reader in) {
+        int count = in.readVarInt();
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(readMessage(in));
+        }
+        return messages;
+    }
+
+    private static void writeMessage(Writer out, ChatMessage message) {
+        switch (message) {
+            case SystemMessage system -> {
+                out.writeByte(SYSTEM);
+                out.writeString(system.text());
+            }
+            case UserMessage user -> {
+                out.writeByte(USER);
+                out.writeString(user.name());
+                out.writeString(userText(user));
+            }
+            case AiMessage ai -> {
+                out.writeByte(AI);
+                out.writeString(ai.text());
+                List<ToolExecutionRequest> requests = ai.hasToolExecutionRequests() ? ai.toolExecutionRequests() : List.of();
+                out.writeVarInt(requests.size());
+                for (ToolExecutionRequest request : requests) {
+                    out.writeString(request.id());
+                    out.writeString(request.name());
+                    out.writeString(request.arguments());
+                }
+            }
+            case ToolExecutionResultMessage result -> {
+                out.writeByte(TOOL_RESULT);
+                out.writeString(result.id());
+                out.writeString(result.toolName());
+                out.writeString(result.text());
+            }
+            default -> throw new IllegalArgumentException("Unsupported chat message type: " + message.type());
+        }
+    }
+
+    private static ChatMessage readMessage(Reader in) {
+        byte kind = in.readByte();
+        return switch (kind) {
+            case SYSTEM -> SystemMessage.from(in.readString());
+            case USER -> {
+                String name = in.readString();
+                String text = in.readString();
+                yield name != null ? UserMessage.from(name, text) : UserMessage.from(text);
+            }
+            case AI -> {
+                String text = in.readString();
+                int count = in.readVarInt();
+                if (count == 0) {
+                    yield AiMessage.from(text);
+                }
+                List<ToolExecutionRequest> requests = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    requests.add(ToolExecutionRequest.builder()
+                            .id(in.readString())
+                            .name(in.readString())
+                            .arguments(in.readString())
+                            .build());
+                }
+                yield text != null ? AiMessage.from(text, requests) : AiMessage.from(requests);
+            }
+            case TOOL_RESULT -> ToolExecutionResultMessage.from(in.readString(), in.readString(), in.readString());
+            default -> throw new IllegalStateException("Unknown chat message kind: " + kind);
+        };
+    }
+
+    private static String userText(UserMessage user) {
+        if (user.hasSingleText()) {
+            return user.singleText();
+        }
+        StringBuilder text = new StringBuilder();
+        for (Content content : user.contents()) {
+            if (content instanceof TextContent textContent) {
+                text.append(textContent.text());
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Growable byte array writer; strings are nullable (length + 1, 0 meaning null)
+     */
+    static final class Writer {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Sequential reader over a byte array written by {@link Writer}
+     */
+    static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        byte readByte() {
+            return bytes[position++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        String readString() {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
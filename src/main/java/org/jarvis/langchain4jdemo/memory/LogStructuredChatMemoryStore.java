@@ -0,0 +1,724 @@
+package org.jarvis.langchain4jdemo.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+import org.jarvis.langchain4jdemo.quota.MemoryEstimates;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable ChatMemoryStore on segmented, memory-mapped, append-only log files
+ *
+ * Each update is stored as one record per session: an EDIT (drop n messages from the head, append new ones),
+ * a full SNAPSHOT every snapshot-every records, or a DELETE. Resuming a session walks its records backwards,
+ * newest segment first, to the latest SNAPSHOT or DELETE and replays forward, so a resume reads O(window)
+ * records regardless of how many sessions exist.
+ *
+ * The active segment keeps its session-to-offsets index in memory. When it fills up it is sealed: the file is
+ * truncated and a sorted (session hash, offset) index file is written next to it, which lookups binary-search
+ * through a mapping. Startup only lists the segment files and scans the active segment, so restart time is
+ * bounded by the segment size rather than the number of sessions; sealed segments are mapped on first use.
+ * Once more than max-sealed-segments are sealed, a background task copies the live state of sessions that
+ * still depend on the oldest segment forward as snapshots and deletes it.
+ *
+ * Decoded sessions are kept in an LRU cache bounded by both cached-sessions and max-cached-bytes; since every
+ * session is durable, exceeding the byte bound only evicts from the cache and the session is reloaded on demand.
+ */
+@Slf4j
+public class LogStructuredChatMemoryStore implements ChatMemoryStore, MemoryAccounted, AutoCloseable {
+
+    private static final int LOG_MAGIC = 0x434C4F47; // "CLOG"
+    private static final int INDEX_MAGIC = 0x43494458; // "CIDX"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INDEX_HEADER_SIZE = 8;
+    private static final int INDEX_ENTRY_SIZE = 12;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final byte SNAPSHOT = 1;
+    private static final byte EDIT = 2;
+    private static final byte DELETE = 3;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int snapshotEvery;
+    private final int maxSealedSegments;
+    private final int cachedSessions;
+    private final long maxCachedBytes;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<Long, SealedSegment> sealed = new TreeMap<>();
+    private final Map<String, SessionState> cache;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("chat-memory-compactor").factory());
+
+    private ActiveSegment active;
+    private long cachedBytes;
+
+    public LogStructuredChatMemoryStore(Path directory, long segmentSize, int snapshotEvery,
+                                        int maxSealedSegments, int cachedSessions, long maxCachedBytes) {
+        this.directory = directory;
+        this.segmentSize = Math.max(64 * 1024, segmentSize);
+        this.snapshotEvery = Math.max(1, snapshotEvery);
+        this.maxSealedSegments = Math.max(1, maxSealedSegments);
+        this.cachedSessions = Math.max(0, cachedSessions);
+        this.maxCachedBytes = maxCachedBytes;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open chat memory log in " + directory, e);
+        }
+        maybeCompact();
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        String sessionId = String.valueOf(memoryId);
+        SessionState cached = cached(sessionId);
+        if (cached != null) {
+            return cached.messages();
+        }
+        lock.readLock().lock();
+        try {
+            SessionState state = load(sessionId);
+            cache(sessionId, state);
+            return state.messages();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        String sessionId = String.valueOf(memoryId);
+        List<ChatMessage> updated = List.copyOf(messages);
+        lock.writeLock().lock();
+        try {
+            SessionState state = stateForWrite(sessionId);
+            List<ChatMessage> current = state.messages();
+            if (current.equals(updated)) {
+                return;
+            }
+            int trim = headTrim(current, updated);
+            if (trim == current.size() || state.recordsSinceSnapshot() + 1 >= snapshotEvery) {
+                append(SNAPSHOT, sessionId, 0, updated);
+                cache(sessionId, new SessionState(updated, 0));
+            } else {
+                append(EDIT, sessionId, trim, updated.subList(current.size() - trim, updated.size()));
+                cache(sessionId, new SessionState(updated, state.recordsSinceSnapshot() + 1));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String sessionId = String.valueOf(memoryId);
+        lock.writeLock().lock();
+        try {
+            if (stateForWrite(sessionId).messages().isEmpty()) {
+                return;
+            }
+            append(DELETE, sessionId, 0, List.of());
+            cache(sessionId, new SessionState(List.of(), 0));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Heap held by cached sessions and the active segment's index; mapped segments are off-heap
+     */
+    @Override
+    public long approximateBytes() {
+        long indexBytes;
+        lock.readLock().lock();
+        try {
+            indexBytes = active.indexBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (cache) {
+            return cachedBytes + indexBytes;
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdown();
+        lock.writeLock().lock();
+        try {
+            active.close();
+            sealed.values().forEach(SealedSegment::close);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> sequences;
+        try (Stream<Path> files = Files.list(directory)) {
+            sequences = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("chat-") && name.endsWith(LOG_SUFFIX))
+                    .map(name -> Long.parseLong(name, 5, name.length() - LOG_SUFFIX.length(), 10))
+                    .sorted()
+                    .toList();
+        }
+        for (int i = 0; i < sequences.size(); i++) {
+            long sequence = sequences.get(i);
+            boolean newest = i == sequences.size() - 1;
+            if (Files.exists(indexPath(sequence))) {
+                sealed.put(sequence, new SealedSegment(sequence));
+            } else if (newest) {
+                active = new ActiveSegment(sequence);
+            } else {
+                // Crashed between rolling and sealing: rebuild the index by scanning, then seal
+                ActiveSegment recovered = new ActiveSegment(sequence);
+                sealed.put(sequence, recovered.seal());
+            }
+        }
+        if (active == null) {
+            active = new ActiveSegment(sequences.isEmpty() ? 1 : sequences.get(sequences.size() - 1) + 1);
+        }
+        log.info("Opened chat memory log in {}: {} sealed segments, active segment {} at {} bytes",
+                directory, sealed.size(), active.sequence, active.position);
+    }
+
+    private SessionState stateForWrite(String sessionId) {
+        SessionState state = cached(sessionId);
+        return state != null ? state : load(sessionId);
+    }
+
+    /**
+     * Walk the session's records newest first until a SNAPSHOT or DELETE, then replay them oldest first
+     */
+    private SessionState load(String sessionId) {
+        List<LogRecord> chain = chain(sessionId);
+        List<ChatMessage> messages = new ArrayList<>();
+        int sinceSnapshot = 0;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            LogRecord record = chain.get(i);
+            switch (record.type()) {
+                case SNAPSHOT -> {
+                    messages = new ArrayList<>(record.messages());
+                    sinceSnapshot = 0;
+                }
+                case DELETE -> {
+                    messages.clear();
+                    sinceSnapshot = 0;
+                }
+                default -> {
+                    messages.subList(0, Math.min(record.trim(), messages.size())).clear();
+                    messages.addAll(record.messages());
+                    sinceSnapshot++;
+                }
+            }
+        }
+        return new SessionState(List.copyOf(messages), sinceSnapshot);
+    }
+
+    private List<LogRecord> chain(String sessionId) {
+        List<LogRecord> chain = new ArrayList<>();
+        if (collect(chain, active.mapped, active.offsets(sessionId), sessionId, active.sequence)) {
+            return chain;
+        }
+        for (SealedSegment segment : sealed.descendingMap().values()) {
+            if (collect(chain, segment.mapped(), segment.offsets(hash(sessionId)), sessionId, segment.sequence)) {
+                break;
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Add the session's records at the given offsets newest first; true once a chain start was reached
+     */
+    private static boolean collect(List<LogRecord> chain, MemorySegment log, int[] offsets, String sessionId, long sequence) {
+        for (int i = offsets.length - 1; i >= 0; i--) {
+            LogRecord record = LogRecord.read(log, offsets[i], sequence);
+            if (record == null || !record.sessionId().equals(sessionId)) {
+                continue; // hash collision in a sealed index
+            }
+            chain.add(record);
+            if (record.type() != EDIT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of leading messages of current that were dropped to produce updated, or current.size() if
+     * updated is not current minus a head plus appended messages
+     */
+    private static int headTrim(List<ChatMessage> current, List<ChatMessage> updated) {
+        for (int trim = 0; trim < current.size(); trim++) {
+            int kept = current.size() - trim;
+            if (kept <= updated.size() && current.subList(trim, current.size()).equals(updated.subList(0, kept))) {
+                return trim;
+            }
+        }
+        return current.size();
+    }
+
+    private SessionState cached(String sessionId) {
+        synchronized (cache) {
+            return cache.get(sessionId);
+        }
+    }
+
+    /**
+     * Insert and evict least recently used sessions while over either bound; the new entry itself is kept
+     */
+    private void cache(String sessionId, SessionState state) {
+        synchronized (cache) {
+            SessionState previous = cache.put(sessionId, state);
+            cachedBytes += cacheEntryBytes(sessionId, state) - (previous == null ? 0 : cacheEntryBytes(sessionId, previous));
+            Iterator<Map.Entry<String, SessionState>> eldest = cache.entrySet().iterator();
+            while (cache.size() > 1 && (cache.size() > cachedSessions || (maxCachedBytes > 0 && cachedBytes > maxCachedBytes))) {
+                Map.Entry<String, SessionState> entry = eldest.next();
+                cachedBytes -= cacheEntryBytes(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+            if (cachedSessions == 0) {
+                cache.clear();
+                cachedBytes = 0;
+            }
+        }
+    }
+
+    private static long cacheEntryBytes(String sessionId, SessionState state) {
+        return MemoryEstimates.MAP_ENTRY + MemoryEstimates.OBJECT_HEADER + MemoryEstimates.of(sessionId)
+                + MemoryEstimates.of(state.messages());
+    }
+
+    private void append(byte type, String sessionId, int trim, List<ChatMessage> messages) {
+        ChatMessageCodec.Writer payload = new ChatMessageCodec.Writer();
+        payload.writeByte(type);
+        payload.writeString(sessionId);
+        if (type == EDIT) {
+            payload.writeVarInt(trim);
+        }
+        if (type != DELETE) {
+            ChatMessageCodec.writeMessages(payload, messages);
+        }
+        byte[] bytes = payload.toByteArray();
+        if (HEADER_SIZE + RECORD_HEADER_SIZE + bytes.length > segmentSize) {
+            throw new IllegalArgumentException("Chat memory record of " + bytes.length + " bytes exceeds the segment size");
+        }
+        try {
+            if (!active.append(sessionId, bytes)) {
+                roll();
+                active.append(sessionId, bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write chat memory log in " + directory, e);
+        }
+    }
+
+    private void roll() throws IOException {
+        ActiveSegment full = active;
+        active = new ActiveSegment(full.sequence + 1);
+        sealed.put(full.sequence, full.seal());
+        maybeCompact();
+    }
+
+    private void maybeCompact() {
+        if (sealed.size() > maxSealedSegments && compactionScheduled.compareAndSet(false, true)) {
+            compactor.execute(this::compactOldest);
+        }
+    }
+
+    /**
+     * Copy forward the live state of every session whose chain starts in the oldest segment, then drop it
+     */
+    private void compactOldest() {
+        try {
+            while (true) {
+                SealedSegment oldest;
+                Set<String> sessions;
+                lock.readLock().lock();
+                try {
+                    if (sealed.size() <= maxSealedSegments) {
+                        return;
+                    }
+                    oldest = sealed.firstEntry().getValue();
+                    sessions = oldest.sessionIds();
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                int copied = 0;
+                for (String sessionId : sessions) {
+                    lock.writeLock().lock();
+                    try {
+                        List<LogRecord> chain = chain(sessionId);
+                        if (!chain.isEmpty() && chain.get(chain.size() - 1).sequence() == oldest.sequence) {
+                            SessionState state = load(sessionId);
+                            if (!state.messages().isEmpty()) {
+                                append(SNAPSHOT, sessionId, 0, state.messages());
+                                copied++;
+                            }
+                            cache(sessionId, new SessionState(state.messages(), 0));
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+
+                lock.writeLock().lock();
+                try {
+                    sealed.remove(oldest.sequence);
+                    oldest.close();
+                    Files.deleteIfExists(indexPath(oldest.sequence));
+                    Files.deleteIfExists(logPath(oldest.sequence));
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("Compacted chat memory segment {}: {} sessions, {} copied forward",
+                        oldest.sequence, sessions.size(), copied);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Chat memory compaction failed: {}", e.getMessage(), e);
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    private Path logPath(long sequence) {
+        return directory.resolve(String.format("chat-%016d%s", sequence, LOG_SUFFIX));
+    }
+
+    private Path indexPath(long sequence) {
+        return directory.resolve(String.format("chat-%016d%s", sequence, INDEX_SUFFIX));
+    }
+
+    /**
+     * FNV-1a over the UTF-16 code units of the session id
+     */
+    private static long hash(String sessionId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sessionId.length(); i++) {
+            hash ^= sessionId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private record SessionState(List<ChatMessage> messages, int recordsSinceSnapshot) {}
+
+    /**
+     * Decoded log record; sequence identifies the segment it was read from
+     */
+    private record LogRecord(byte type, String sessionId, int trim, List<ChatMessage> messages, long sequence) {
+
+        /**
+         * Decode the record at offset, or null if it is torn or corrupt
+         */
+        static LogRecord read(MemorySegment log, long offset, long sequence) {
+            byte[] payload = payload(log, offset);
+            if (payload == null) {
+                return null;
+            }
+            ChatMessageCodec.Reader in = new ChatMessageCodec.Reader(payload);
+            byte type = in.readByte();
+            String sessionId = in.readString();
+            int trim = type == EDIT ? in.readVarInt() : 0;
+            List<ChatMessage> messages = type == DELETE ? List.of() : ChatMessageCodec.readMessages(in);
+            return new LogRecord(type, sessionId, trim, messages, sequence);
+        }
+
+        static String sessionId(MemorySegment log, long offset) {
+            byte[] payload = payload(log, offset);
+            if (payload == null) {
+                return null;
+            }
+            ChatMessageCodec.Reader in = new ChatMessageCodec.Reader(payload);
+            in.readByte();
+            return in.readString();
+        }
+
+        static byte[] payload(MemorySegment log, long offset) {
+            if (offset + RECORD_HEADER_SIZE > log.byteSize()) {
+                return null;
+            }
+            int length = log.get(INT, offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > log.byteSize()) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            MemorySegment.copy(log, ValueLayout.JAVA_BYTE, offset + RECORD_HEADER_SIZE, payload, 0, length);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue() == log.get(INT, offset + 4) ? payload : null;
+        }
+    }
+
+    /**
+     * Segment being appended to: pre-sized mapping plus an in-memory session index
+     */
+    private final class ActiveSegment {
+
+        private final long sequence;
+        private final FileChannel channel;
+        private final Arena arena = Arena.ofShared();
+        private final MemorySegment mapped;
+        private final Map<String, int[]> index = new HashMap<>();
+        private long position;
+
+        ActiveSegment(long sequence) throws IOException {
+            this.sequence = sequence;
+            this.channel = FileChannel.open(logPath(sequence),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean fresh = channel.size() == 0;
+            this.mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, channel.size()), arena);
+            if (fresh) {
+                mapped.set(INT, 0, LOG_MAGIC);
+                position = HEADER_SIZE;
+            } else {
+                if (mapped.get(INT, 0) != LOG_MAGIC) {
+                    throw new IOException("Not a chat memory log: " + logPath(sequence));
+                }
+                scan();
+            }
+        }
+
+        /**
+         * Rebuild the index from the records up to the first torn or corrupt one
+         */
+        private void scan() {
+            long offset = HEADER_SIZE;
+            String sessionId;
+            while ((sessionId = LogRecord.sessionId(mapped, offset)) != null) {
+                addOffset(sessionId, (int) offset);
+                offset += RECORD_HEADER_SIZE + mapped.get(INT, offset);
+            }
+            position = offset;
+        }
+
+        boolean append(String sessionId, byte[] payload) {
+            long recordSize = RECORD_HEADER_SIZE + payload.length;
+            if (position + recordSize > mapped.byteSize()) {
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            MemorySegment.copy(payload, 0, mapped, ValueLayout.JAVA_BYTE, position + RECORD_HEADER_SIZE, payload.length);
+            mapped.set(INT, position + 4, (int) crc.getValue());
+            // Length last: a record cut short by a crash reads as the end of the log
+            mapped.set(INT, position, payload.length);
+            addOffset(sessionId, (int) position);
+            position += recordSize;
+            return true;
+        }
+
+        long indexBytes() {
+            long bytes = 0;
+            for (Map.Entry<String, int[]> entry : index.entrySet()) {
+                bytes += MemoryEstimates.MAP_ENTRY + MemoryEstimates.of(entry.getKey())
+                        + MemoryEstimates.OBJECT_HEADER + 4L * entry.getValue().length;
+            }
+            return bytes;
+        }
+
+        int[] offsets(String sessionId) {
+            int[] offsets = index.get(sessionId);
+            return offsets == null ? new int[0] : Arrays.copyOfRange(offsets, 1, offsets[0] + 1);
+        }
+
+        /**
+         * Offsets are stored as [count, offset...] with spare capacity
+         */
+        private void addOffset(String sessionId, int offset) {
+            int[] offsets = index.get(sessionId);
+            if (offsets == null) {
+                offsets = new int[4];
+            } else if (offsets[0] + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[++offsets[0]] = offset;
+            index.put(sessionId, offsets);
+        }
+
+        /**
+         * Flush, truncate to the written length and write the sorted index file
+         */
+        SealedSegment seal() throws IOException {
+            List<long[]> entries = new ArrayList<>();
+            index.forEach((sessionId, offsets) -> {
+                long hash = hash(sessionId);
+                for (int i = 1; i <= offsets[0]; i++) {
+                    entries.add(new long[]{hash, offsets[i]});
+                }
+            });
+            entries.sort(Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+
+            mapped.force();
+            arena.close();
+            channel.truncate(position);
+            channel.force(true);
+            channel.close();
+
+            ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + entries.size() * INDEX_ENTRY_SIZE);
+            buffer.putInt(INDEX_MAGIC).putInt(entries.size());
+            for (long[] entry : entries) {
+                buffer.putLong(entry[0]).putInt((int) entry[1]);
+            }
+            buffer.flip();
+            Path temporary = indexPath(sequence).resolveSibling(indexPath(sequence).getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            Files.move(temporary, indexPath(sequence), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new SealedSegment(sequence);
+        }
+
+        void close() {
+            try {
+                mapped.force();
+                arena.close();
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing chat memory segment {}: {}", sequence, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Immutable segment with an on-disk sorted index; both files are mapped on first use
+     */
+    private final class SealedSegment {
+
+        private final long sequence;
+        private Arena arena;
+        private MemorySegment mapped;
+        private MemorySegment index;
+
+        SealedSegment(long sequence) {
+            this.sequence = sequence;
+        }
+
+        MemorySegment mapped() {
+            mapIfNeeded();
+            return mapped;
+        }
+
+        /**
+         * Offsets of records whose session id hashes to the given value, ascending
+         */
+        int[] offsets(long hash) {
+            mapIfNeeded();
+            int count = index.get(INT, 4);
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (index.get(LONG, entry(mid)) < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int end = low;
+            while (end < count && index.get(LONG, entry(end)) == hash) {
+                end++;
+            }
+            int[] offsets = new int[end - low];
+            for (int i = low; i < end; i++) {
+                offsets[i - low] = index.get(INT, entry(i) + 8);
+            }
+            return offsets;
+        }
+
+        Set<String> sessionIds() {
+            mapIfNeeded();
+            int count = index.get(INT, 4);
+            Set<String> sessions = new LinkedHashSet<>();
+            for (int i = 0; i < count; i++) {
+                String sessionId = LogRecord.sessionId(mapped, index.get(INT, entry(i) + 8));
+                if (sessionId != null) {
+                    sessions.add(sessionId);
+                }
+            }
+            return sessions;
+        }
+
+        private static long entry(int i) {
+            return INDEX_HEADER_SIZE + (long) i * INDEX_ENTRY_SIZE;
+        }
+
+        /**
+         * Called with the read or write lock held; concurrent readers may race to map, so map under the segment
+         */
+        private synchronized void mapIfNeeded() {
+            if (mapped != null) {
+                return;
+            }
+            try (FileChannel logChannel = FileChannel.open(logPath(sequence), StandardOpenOption.READ);
+                 FileChannel indexChannel = FileChannel.open(indexPath(sequence), StandardOpenOption.READ)) {
+                Arena mappingArena = Arena.ofShared();
+                index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size(), mappingArena);
+                if (index.get(INT, 0) != INDEX_MAGIC) {
+                    mappingArena.close();
+                    throw new IOException("Not a chat memory index: " + indexPath(sequence));
+                }
+                mapped = logChannel.map(FileChannel.MapMode.READ_ONLY, 0, logChannel.size(), mappingArena);
+                arena = mappingArena;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void close() {
+            if (arena != null) {
+                arena.close();
+                arena = null;
+                mapped = null;
+                index = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.jarvis.langchain4jdemo.namespace;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.Getter;
+import org.jarvis.langchain4jdemo.document.DocumentManifest;
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+import org.jarvis.langchain4jdemo.quota.MemoryEstimates;
+import org.jarvis.langchain4jdemo.quota.QuotaExceededException;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One namespace's isolated index: its own embedding store and document manifests, a byte quota and usage counters
+ *
+ * Writes go through {@link #add} and {@link #remove}, which report each change to the registry's
+ * {@link KnowledgeBases.ChangeListener} after applying it, under the same lock, so changes are reported in the
+ * order they were applied and never after the namespace's drop; replicas apply replicated changes with
+ * {@link #applyAdd} and {@link #applyRemove}, which do not.
+ *
+ * Stores that cannot report their size (LangChain4j's InMemoryEmbeddingStore) are sized here instead: each row's
+ * estimated bytes are kept by id when it is added and subtracted when it is removed.
+ */
+public class KnowledgeBase implements MemoryAccounted {
+
+    @Getter
+    private final String name;
+    @Getter
+    private final EmbeddingStore<TextSegment> store;
+    @Getter
+    private final long maxBytes;
+    private final KnowledgeBases owner;
+    private final Instant createdAt = Instant.now();
+    /** Manifests of documents indexed with syncDocument, so dropping the namespace drops them too */
+    @Getter
+    private final Map<String, DocumentManifest> manifests = new ConcurrentHashMap<>();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder segmentsAdded = new LongAdder();
+    /** Set once the namespace is dropped; later writes through stale references are not reported */
+    private boolean dropped;
+    /** Estimated bytes per row id, for stores that are not MemoryAccounted; null otherwise */
+    private final Map<String, Long> estimatedRows;
+    private final AtomicLong estimatedBytes = new AtomicLong();
+
+    KnowledgeBase(String name, EmbeddingStore<TextSegment> store, long maxBytes, KnowledgeBases owner) {
+        this.name = name;
+        this.store = store;
+        this.maxBytes = maxBytes;
+        this.owner = owner;
+        this.estimatedRows = store instanceof MemoryAccounted ? null : new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Add segments with their embeddings under new ids
+     */
+    public synchronized List<String> add(List<Embedding> embeddings, List<TextSegment> segments) {
+        List<String> ids = store.addAll(embeddings, segments);
+        segmentsAdded.add(ids.size());
+        if (estimatedRows != null) {
+            for (int i = 0; i < ids.size(); i++) {
+                long bytes = rowBytes(ids.get(i), embeddings.get(i), segments == null ? null : segments.get(i));
+                Long replaced = estimatedRows.put(ids.get(i), bytes);
+                estimatedBytes.addAndGet(replaced == null ? bytes : bytes - replaced);
+            }
+        }
+        if (!dropped) {
+            owner.listener().added(name, ids, embeddings, segments);
+        }
+        return ids;
+    }
+
+    public synchronized void remove(Collection<String> ids) {
+        store.removeAll(ids);
+        if (estimatedRows != null) {
+            for (String id : ids) {
+                Long removed = estimatedRows.remove(id);
+                if (removed != null) {
+                    estimatedBytes.addAndGet(-removed);
+                }
+            }
+        }
+        if (!dropped) {
+            owner.listener().removed(name, ids);
+        }
+        owner.contentRemoved(name);
+    }
+
+    /**
+     * Report the drop once changes in progress have been reported
+     */
+    synchronized void drop(Runnable report) {
+        dropped = true;
+        report.run();
+    }
+
+    /**
+     * Add or replace entries under the ids chosen by the primary; needs a flat store to keep the ids
+     */
+    public void applyAdd(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (!(store instanceof FlatEmbeddingStore flatStore)) {
+            throw new IllegalStateException("Replication requires embedding.store.type=flat");
+        }
+        flatStore.addAll(ids, embeddings, segments);
+        segmentsAdded.add(ids.size());
+    }
+
+    public void applyRemove(Collection<String> ids) {
+        store.removeAll(ids);
+        owner.contentRemoved(name);
+    }
+
+    /**
+     * Throw {@link QuotaExceededException} if roughly additionalBytes more would exceed this namespace's quota
+     */
+    public void reserve(long additionalBytes) {
+        if (maxBytes > 0 && approximateBytes() + additionalBytes > maxBytes) {
+            throw new QuotaExceededException("Namespace " + name + " is full: " + approximateBytes() + " + "
+                    + additionalBytes + " bytes > " + maxBytes);
+        }
+    }
+
+    public void recordQuery() {
+        queries.increment();
+    }
+
+    /**
+     * The flat store reports its own size; other stores are estimated from the rows added through this namespace
+     */
+    @Override
+    public long approximateBytes() {
+        return store instanceof MemoryAccounted accounted ? accounted.approximateBytes() : estimatedBytes.get();
+    }
+
+    public Stats stats() {
+        int segments = store instanceof FlatEmbeddingStore flatStore ? flatStore.size()
+                : estimatedRows != null ? estimatedRows.size() : -1;
+        return new Stats(name, segments, manifests.size(), approximateBytes(), maxBytes,
+                segmentsAdded.sum(), queries.sum(), createdAt);
+    }
+
+    /**
+     * An InMemoryEmbeddingStore entry (id, embedding with its vector, segment) in its map, plus the estimate's own
+     * map entry and boxed size
+     */
+    private static long rowBytes(String id, Embedding embedding, TextSegment segment) {
+        long vector = MemoryEstimates.OBJECT_HEADER + 4L * embedding.dimension();
+        long entry = MemoryEstimates.OBJECT_HEADER + 3L * MemoryEstimates.REFERENCE + MemoryEstimates.of(id)
+                + MemoryEstimates.OBJECT_HEADER + vector + MemoryEstimates.of(segment);
+        return MemoryEstimates.MAP_ENTRY + entry + MemoryEstimates.MAP_ENTRY + MemoryEstimates.OBJECT_HEADER;
+    }
+
+    /**
+     * segments is -1 when the store cannot count its rows; maxBytes is -1 for no quota
+     */
+    public record Stats(String name, int segments, int documents, long bytes, long maxBytes,
+                        long segmentsAdded, long queries, Instant createdAt) {}
+}
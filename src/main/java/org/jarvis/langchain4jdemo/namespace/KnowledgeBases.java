@@ -0,0 +1,243 @@
+package org.jarvis.langchain4jdemo.namespace;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.job.LlmCallContext;
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+import org.jarvis.langchain4jdemo.quota.QuotaExceededException;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Registry of namespaces, each with an independent embedding store, so a query only scans its own corpus
+ *
+ * The namespace of a call is its tenant (X-Tenant-Id, see LlmCallContext), which background jobs inherit.
+ * Writes create the namespace on first use; reads of a namespace that does not exist see an empty index.
+ * Creating a namespace allocates an empty store and dropping one releases it, so both are O(1).
+ * On a read replica the registry is read-only: writes fail with {@link ReadOnlyReplicaException} and the
+ * content changes only through the apply methods used by replication.
+ *
+ * Creating and dropping a namespace notify the listener while holding the namespace's map entry, and a drop
+ * also waits for changes in progress in it (see KnowledgeBase#add), so the listener sees a namespace's
+ * creation, changes and drop in the order they took effect.
+ * Caches of a namespace's content register a removal listener, which hears of every removal on both the
+ * write and the apply paths.
+ */
+@Slf4j
+public class KnowledgeBases implements MemoryAccounted {
+
+    private final Supplier<EmbeddingStore<TextSegment>> storeFactory;
+    private final ToLongFunction<String> defaultQuota;
+    private final int maxNamespaces;
+    /** Replaced as a whole when a replica loads a snapshot */
+    private volatile ConcurrentMap<String, KnowledgeBase> namespaces = new ConcurrentHashMap<>();
+    private volatile ChangeListener listener = ChangeListener.NONE;
+    private final List<Consumer<String>> removalListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean readOnly;
+
+    /**
+     * @param defaultQuota byte quota of a namespace by name (-1 for none), used unless one is given at creation
+     */
+    public KnowledgeBases(Supplier<EmbeddingStore<TextSegment>> storeFactory, ToLongFunction<String> defaultQuota,
+                          int maxNamespaces) {
+        this.storeFactory = storeFactory;
+        this.defaultQuota = defaultQuota;
+        this.maxNamespaces = maxNamespaces;
+    }
+
+    /**
+     * Namespace of the calling thread's tenant
+     */
+    public static String currentNamespace() {
+        return LlmCallContext.current().tenant();
+    }
+
+    /**
+     * The caller's namespace, created if needed; use for writes
+     */
+    public KnowledgeBase current() {
+        checkWritable();
+        String name = currentNamespace();
+        KnowledgeBase existing = namespaces.get(name);
+        return existing != null ? existing : create(name, null);
+    }
+
+    /**
+     * The caller's namespace if it exists; use for reads so queries never create namespaces
+     */
+    public Optional<KnowledgeBase> currentIfExists() {
+        return find(currentNamespace());
+    }
+
+    public Optional<KnowledgeBase> find(String name) {
+        return Optional.ofNullable(namespaces.get(name));
+    }
+
+    /**
+     * Create a namespace, or return the existing one unchanged
+     *
+     * @param maxBytes byte quota, or null for the configured default
+     */
+    public KnowledgeBase create(String name, Long maxBytes) {
+        checkWritable();
+        return namespaces.computeIfAbsent(name, n -> {
+            if (namespaces.size() >= maxNamespaces) {
+                throw new QuotaExceededException("Namespace limit of " + maxNamespaces + " reached");
+            }
+            log.info("Creating namespace {}", n);
+            KnowledgeBase knowledgeBase = new KnowledgeBase(n, storeFactory.get(),
+                    maxBytes != null ? maxBytes : defaultQuota.applyAsLong(n), this);
+            // Before the namespace becomes visible, so no change to it can be reported ahead of its creation
+            listener.created(n, knowledgeBase.getMaxBytes());
+            return knowledgeBase;
+        });
+    }
+
+    /**
+     * Remove a namespace with its index and manifests
+     */
+    public boolean drop(String name) {
+        checkWritable();
+        boolean[] dropped = new boolean[1];
+        namespaces.computeIfPresent(name, (n, knowledgeBase) -> {
+            knowledgeBase.drop(() -> listener.dropped(n));
+            contentRemoved(n);
+            log.info("Dropped namespace {} ({} bytes)", n, knowledgeBase.approximateBytes());
+            dropped[0] = true;
+            return null;
+        });
+        return dropped[0];
+    }
+
+    /**
+     * Snapshot of the current namespaces, in no particular order
+     */
+    public List<KnowledgeBase> all() {
+        return List.copyOf(namespaces.values());
+    }
+
+    /**
+     * Replication apply path: create or replace a namespace without notifying the listener
+     */
+    public KnowledgeBase applyCreate(String name, long maxBytes) {
+        KnowledgeBase existing = namespaces.get(name);
+        if (existing != null && existing.getMaxBytes() == maxBytes) {
+            return existing;
+        }
+        KnowledgeBase knowledgeBase = new KnowledgeBase(name, storeFactory.get(), maxBytes, this);
+        if (namespaces.put(name, knowledgeBase) != null) {
+            contentRemoved(name);
+        }
+        return knowledgeBase;
+    }
+
+    /**
+     * Replication apply path: drop a namespace without notifying the listener
+     */
+    public void applyDrop(String name) {
+        if (namespaces.remove(name) != null) {
+            contentRemoved(name);
+        }
+    }
+
+    /**
+     * Replication apply path: a namespace for a snapshot being loaded, not registered until {@link #applySnapshot}
+     */
+    public KnowledgeBase detached(String name, long maxBytes) {
+        return new KnowledgeBase(name, storeFactory.get(), maxBytes, this);
+    }
+
+    /**
+     * Replication apply path: replace every namespace at once with the fully loaded ones of a snapshot,
+     * so reads see either the previous content or the snapshot, never a partial load
+     */
+    public void applySnapshot(Collection<KnowledgeBase> loaded) {
+        ConcurrentMap<String, KnowledgeBase> replacement = new ConcurrentHashMap<>();
+        for (KnowledgeBase knowledgeBase : loaded) {
+            replacement.put(knowledgeBase.getName(), knowledgeBase);
+        }
+        ConcurrentMap<String, KnowledgeBase> previous = namespaces;
+        namespaces = replacement;
+        previous.keySet().forEach(this::contentRemoved);
+    }
+
+    public void setChangeListener(ChangeListener listener) {
+        this.listener = listener;
+    }
+
+    ChangeListener listener() {
+        return listener;
+    }
+
+    /**
+     * Called with a namespace's name after segments may have left it: a remove, a drop, or on a replica a
+     * replicated remove or drop, a namespace recreated with another quota, or a snapshot replacing it
+     */
+    public void addRemovalListener(Consumer<String> removalListener) {
+        removalListeners.add(removalListener);
+    }
+
+    void contentRemoved(String name) {
+        removalListeners.forEach(removalListener -> removalListener.accept(name));
+    }
+
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new ReadOnlyReplicaException("This node is a read replica; send writes to the primary");
+        }
+    }
+
+    public List<KnowledgeBase.Stats> stats() {
+        return namespaces.values().stream()
+                .map(KnowledgeBase::stats)
+                .sorted(Comparator.comparing(KnowledgeBase.Stats::name))
+                .toList();
+    }
+
+    /**
+     * Total over all namespaces, reported as the embedding-store component
+     */
+    @Override
+    public long approximateBytes() {
+        long bytes = 0;
+        for (KnowledgeBase knowledgeBase : namespaces.values()) {
+            bytes += knowledgeBase.approximateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Notified after each change made through the write path, in the order the changes were applied
+     */
+    public interface ChangeListener {
+
+        ChangeListener NONE = new ChangeListener() {};
+
+        default void created(String namespace, long maxBytes) {
+        }
+
+        default void dropped(String namespace) {
+        }
+
+        default void added(String namespace, List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        }
+
+        default void removed(String namespace, Collection<String> ids) {
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.jarvis.langchain4jdemo.namespace;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a write reaches a read replica, whose knowledge bases change only through replication
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ReadOnlyReplicaException extends RuntimeException {
+
+    public ReadOnlyReplicaException(String message) {
+        super(message);
+    }
+}
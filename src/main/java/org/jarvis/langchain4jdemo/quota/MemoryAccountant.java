@@ -0,0 +1,137 @@
+package org.jarvis.langchain4jdemo.quota;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Tracks approximate heap held by the in-memory stores and enforces per-component quotas
+ *
+ * Components register a {@link MemoryAccounted} source and are published as memory.component.bytes{component}
+ * with their quota as memory.component.quota{component}. Quotas come from memory.quota.&lt;component&gt;
+ * (unset means unlimited). {@link #reserve} is called before data is added and rejects it when the component
+ * would exceed its quota, or when the live heap measured after the last GC would exceed
+ * memory.max-heap-fraction of the maximum heap, so callers fail fast instead of driving the JVM into OOM.
+ */
+@Component
+@Slf4j
+public class MemoryAccountant {
+
+    public static final String EMBEDDING_STORE = "embedding-store";
+    public static final String CHAT_MEMORY = "chat-memory";
+    public static final String DATA_STORE = "datastore";
+    public static final String REPLICATION_LOG = "replication-log";
+    public static final String WORKING_SET = "rag-working-set";
+
+    private static final String QUOTA_PROPERTY_PREFIX = "memory.quota.";
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final double maxHeapFraction;
+    private final Map<String, MemoryAccounted> components = new ConcurrentSkipListMap<>();
+    private final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+            .toList();
+
+    public MemoryAccountant(Environment environment, MeterRegistry meterRegistry,
+                            @Value("${memory.max-heap-fraction:0.9}") double maxHeapFraction) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.maxHeapFraction = maxHeapFraction;
+        Gauge.builder("memory.heap.live", this::liveHeapBytes)
+                .description("Heap in use right after the most recent collection")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public void register(String component, MemoryAccounted source) {
+        components.put(component, source);
+        Gauge.builder("memory.component.bytes", source, MemoryAccounted::approximateBytes)
+                .description("Approximate heap held by an in-memory store")
+                .baseUnit("bytes")
+                .tag("component", component)
+                .register(meterRegistry);
+        long quota = quota(component);
+        if (quota > 0) {
+            Gauge.builder("memory.component.quota", () -> quota)
+                    .baseUnit("bytes")
+                    .tag("component", component)
+                    .register(meterRegistry);
+        }
+        log.info("Memory accounting for {}: quota {}", component, quota > 0 ? DataSize.ofBytes(quota) : "unlimited");
+    }
+
+    /**
+     * Quota in bytes for a component, or -1 if it has none
+     */
+    public long quota(String component) {
+        DataSize quota = environment.getProperty(QUOTA_PROPERTY_PREFIX + component, DataSize.class);
+        return quota == null ? -1 : quota.toBytes();
+    }
+
+    /**
+     * Throw {@link QuotaExceededException} if adding roughly additionalBytes to the component is not allowed
+     */
+    public void reserve(String component, long additionalBytes) {
+        long quota = quota(component);
+        MemoryAccounted source = components.get(component);
+        if (quota > 0 && source != null) {
+            long used = source.approximateBytes();
+            if (used + additionalBytes > quota) {
+                meterRegistry.counter("memory.quota.rejections", "component", component, "reason", "quota").increment();
+                throw new QuotaExceededException("Memory quota of " + component + " exceeded: " + used + " + "
+                        + additionalBytes + " bytes > " + quota);
+            }
+        }
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long live = liveHeapBytes();
+        if (live + additionalBytes > maxHeap * maxHeapFraction) {
+            meterRegistry.counter("memory.quota.rejections", "component", component, "reason", "heap").increment();
+            throw new QuotaExceededException("Heap limit reached: " + live + " bytes live of " + maxHeap
+                    + " max, refusing " + additionalBytes + " more for " + component);
+        }
+    }
+
+    public List<ComponentUsage> usage() {
+        List<ComponentUsage> usage = new ArrayList<>(components.size());
+        components.forEach((component, source) -> usage.add(
+                new ComponentUsage(component, source.approximateBytes(), quota(component))));
+        return usage;
+    }
+
+    /**
+     * Sum of heap pool usage after their last collection; a pool never collected yet counts its current usage
+     */
+    public long liveHeapBytes() {
+        long live = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage afterCollection = pool.getCollectionUsage();
+            live += afterCollection != null && afterCollection.getCommitted() > 0
+                    ? afterCollection.getUsed()
+                    : pool.getUsage().getUsed();
+        }
+        return live;
+    }
+
+    public long maxHeapBytes() {
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * quotaBytes is -1 for components without a quota
+     */
+    public record ComponentUsage(String component, long bytes, long quotaBytes) {}
+}
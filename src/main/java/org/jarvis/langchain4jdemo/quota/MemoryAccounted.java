@@ -0,0 +1,12 @@
+package org.jarvis.langchain4jdemo.quota;
+
+/**
+ * A component that can report roughly how much heap its contents occupy
+ */
+public interface MemoryAccounted {
+
+    /**
+     * Approximate retained heap bytes; cheap enough to be read on every metrics scrape
+     */
+    long approximateBytes();
+}
@@ -0,0 +1,80 @@
+package org.jarvis.langchain4jdemo.quota;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.List;
+
+/**
+ * Rough shallow-plus-payload heap sizes for the objects the stores hold, assuming compressed oops
+ *
+ * These are estimates for quota accounting, not measurements: strings are counted at two bytes per char
+ * so accounting errs towards over-reporting.
+ */
+public final class MemoryEstimates {
+
+    public static final int OBJECT_HEADER = 16;
+    public static final int REFERENCE = 4;
+    /** String object plus its backing array header */
+    public static final int STRING_OVERHEAD = 40;
+    /** One entry of a HashMap or skip-list map, excluding key and value */
+    public static final int MAP_ENTRY = 48;
+
+    private MemoryEstimates() {
+    }
+
+    public static long of(String value) {
+        return value == null ? 0 : STRING_OVERHEAD + 2L * value.length();
+    }
+
+    public static long of(TextSegment segment) {
+        if (segment == null) {
+            return 0;
+        }
+        return OBJECT_HEADER + of(segment.text()) + of(segment.metadata());
+    }
+
+    public static long of(Metadata metadata) {
+        if (metadata == null) {
+            return 0;
+        }
+        long bytes = OBJECT_HEADER + MAP_ENTRY;
+        for (var entry : metadata.toMap().entrySet()) {
+            bytes += MAP_ENTRY + of(entry.getKey()) + of(String.valueOf(entry.getValue()));
+        }
+        return bytes;
+    }
+
+    public static long of(ChatMessage message) {
+        long bytes = OBJECT_HEADER;
+        switch (message) {
+            case SystemMessage system -> bytes += of(system.text());
+            case UserMessage user -> bytes += of(user.hasSingleText() ? user.singleText() : user.toString()) + of(user.name());
+            case AiMessage ai -> {
+                bytes += of(ai.text());
+                if (ai.hasToolExecutionRequests()) {
+                    for (ToolExecutionRequest request : ai.toolExecutionRequests()) {
+                        bytes += OBJECT_HEADER + of(request.id()) + of(request.name()) + of(request.arguments());
+                    }
+                }
+            }
+            case ToolExecutionResultMessage result -> bytes += of(result.id()) + of(result.toolName()) + of(result.text());
+            default -> bytes += of(message.toString());
+        }
+        return bytes;
+    }
+
+    public static long of(List<ChatMessage> messages) {
+        long bytes = OBJECT_HEADER + (long) REFERENCE * messages.size();
+        for (ChatMessage message : messages) {
+            bytes += of(message);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,64 @@
+package org.jarvis.langchain4jdemo.ratelimit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Applies the {@link RateLimiter} to LLM endpoints (ratelimit.paths), keyed by the X-API-Key header or, without
+ * one, by client address; rejected requests get 429 with a Retry-After in whole seconds
+ */
+@Component
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    private final RateLimiter rateLimiter;
+    private final List<String> paths;
+
+    public RateLimitFilter(RateLimiter rateLimiter,
+                           @Value("${ratelimit.paths:/api/basic-chat/,/api/ai-services/,/api/conversational-chat/,/api/rag/,/api/tools/}") List<String> paths) {
+        this.rateLimiter = rateLimiter;
+        this.paths = paths;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!rateLimiter.isEnabled()) {
+            return true;
+        }
+        String path = request.getRequestURI();
+        return paths.stream().noneMatch(path::startsWith);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        String key = apiKey != null && !apiKey.isBlank() ? "key:" + apiKey : "ip:" + request.getRemoteAddr();
+        RateLimiter.Decision decision = rateLimiter.admit(key);
+        if (!decision.admitted()) {
+            long retryAfterSeconds = decision.retryAfterSeconds();
+            log.debug("Rate limited {} on {} ({}), retry after {}s", key, request.getRequestURI(), decision.limit(),
+                    retryAfterSeconds);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(),
+                    "Rate limit exceeded (" + decision.limit() + "), retry after " + retryAfterSeconds + "s");
+            return;
+        }
+        try (RateLimiter.Scope ignored = RateLimiter.bind(decision.client())) {
+            chain.doFilter(request, response);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.jarvis.langchain4jdemo.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client admission control for LLM endpoints: one bucket of requests and one of LLM tokens per API key
+ *
+ * A request is admitted if the request bucket has room and the token bucket is not overdrawn. Tokens are
+ * charged after each LLM call from the model's reported usage (see {@link #chargeTokens}), so a client that
+ * spends more than its token burst waits until it is paid back. Buckets are lock-free ({@link TokenBucket}) and
+ * usage is counted in LongAdders, so concurrent requests of one client never contend on a lock.
+ * Once ratelimit.max-clients are tracked, a new client triggers one eviction pass that forgets every idle client
+ * whose buckets are full and then the least recently seen ones, down to nine tenths of max-clients; the cost
+ * of a pass is spread over the new clients it makes room for. A flood of new keys thus displaces the clients
+ * seen longest ago instead of pushing new ones into a shared bucket.
+ */
+@Component
+public class RateLimiter {
+
+    public static final String REQUESTS = "requests";
+    public static final String TOKENS = "tokens";
+
+    private static final ThreadLocal<Client> CURRENT = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final double requestsPerSecond;
+    private final long requestBurst;
+    private final double tokensPerSecond;
+    private final long tokenBurst;
+    private final int maxClients;
+    private final ConcurrentMap<String, Client> clients = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final Counter admitted;
+    private final Counter rejectedRequests;
+    private final Counter rejectedTokens;
+    private final Counter tokensCharged;
+
+    public RateLimiter(MeterRegistry meterRegistry,
+                       @Value("${ratelimit.enabled:true}") boolean enabled,
+                       @Value("${ratelimit.requests.per-second:2}") double requestsPerSecond,
+                       @Value("${ratelimit.requests.burst:20}") long requestBurst,
+                       @Value("${ratelimit.tokens.per-second:200}") double tokensPerSecond,
+                       @Value("${ratelimit.tokens.burst:20000}") long tokenBurst,
+                       @Value("${ratelimit.max-clients:10000}") int maxClients) {
+        this.enabled = enabled;
+        this.requestsPerSecond = requestsPerSecond;
+        this.requestBurst = requestBurst;
+        this.tokensPerSecond = tokensPerSecond;
+        this.tokenBurst = tokenBurst;
+        this.maxClients = maxClients;
+        this.admitted = Counter.builder("ratelimit.requests")
+                .description("Requests to rate-limited endpoints by outcome")
+                .tag("outcome", "admitted").tag("limit", "none")
+                .register(meterRegistry);
+        this.rejectedRequests = Counter.builder("ratelimit.requests")
+                .tag("outcome", "rejected").tag("limit", REQUESTS)
+                .register(meterRegistry);
+        this.rejectedTokens = Counter.builder("ratelimit.requests")
+                .tag("outcome", "rejected").tag("limit", TOKENS)
+                .register(meterRegistry);
+        this.tokensCharged = Counter.builder("ratelimit.tokens")
+                .description("LLM tokens charged to rate-limited clients")
+                .register(meterRegistry);
+        Gauge.builder("ratelimit.clients", clients, ConcurrentMap::size)
+                .description("Clients with tracked buckets")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admit or reject one request of the client; an admitted request has taken one unit of its request bucket
+     */
+    public Decision admit(String key) {
+        return admit(key, System.nanoTime());
+    }
+
+    Decision admit(String key, long now) {
+        Client client = client(key, now);
+        long tokenWait = client.tokens.waitNanos(now);
+        if (tokenWait > 0) {
+            client.rejected.increment();
+            rejectedTokens.increment();
+            return new Decision(client, false, TOKENS, tokenWait);
+        }
+        long requestWait = client.requests.tryAcquire(1, now);
+        if (requestWait > 0) {
+            client.rejected.increment();
+            rejectedRequests.increment();
+            return new Decision(client, false, REQUESTS, requestWait);
+        }
+        client.admitted.increment();
+        admitted.increment();
+        return new Decision(client, true, null, 0);
+    }
+
+    /**
+     * Bind the calling thread to an admitted client so its LLM calls are charged to it until the scope closes
+     */
+    public static Scope bind(Client client) {
+        Client previous = CURRENT.get();
+        CURRENT.set(client);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * Charge LLM tokens to the client bound to the calling thread; no-op outside a rate-limited request
+     */
+    public static void chargeTokens(long tokens) {
+        chargeTokens(tokens, System.nanoTime());
+    }
+
+    static void chargeTokens(long tokens, long now) {
+        Client client = CURRENT.get();
+        if (client != null && tokens > 0) {
+            client.tokens.charge(tokens, now);
+            client.tokensUsed.add(tokens);
+            client.limiter.tokensCharged.increment(tokens);
+        }
+    }
+
+    /**
+     * Usage of the tracked clients, heaviest token users first
+     */
+    public List<ClientUsage> usage(int limit) {
+        return usage(limit, System.nanoTime());
+    }
+
+    List<ClientUsage> usage(int limit, long now) {
+        List<ClientUsage> usage = new ArrayList<>(clients.size());
+        clients.forEach((key, client) -> usage.add(new ClientUsage(masked(key), client.admitted.sum(),
+                client.rejected.sum(), client.tokensUsed.sum(), client.requests.available(now),
+                client.tokens.available(now))));
+        usage.sort(Comparator.comparingLong(ClientUsage::tokens).reversed());
+        return usage.size() > limit ? usage.subList(0, limit) : usage;
+    }
+
+    /**
+     * API keys are shown by their last four characters only
+     */
+    private static String masked(String key) {
+        return key.startsWith("key:") && key.length() > 8 ? "key:..." + key.substring(key.length() - 4) : key;
+    }
+
+    private Client client(String key, long now) {
+        Client client = clients.get(key);
+        if (client == null) {
+            if (clients.size() >= maxClients) {
+                evict(now);
+            }
+            client = clients.computeIfAbsent(key, k -> new Client(this, now));
+        }
+        client.lastSeen = now;
+        return client;
+    }
+
+    /**
+     * One pass at a time; new clients arriving during a pass are admitted without waiting for it,
+     * so the map may briefly exceed max-clients by the number of concurrent callers
+     */
+    private void evict(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            clients.values().removeIf(idle -> idle.requests.isFull(now) && idle.tokens.isFull(now));
+            int target = maxClients - Math.max(1, maxClients / 10);
+            if (clients.size() > target) {
+                List<Seen> seen = new ArrayList<>(clients.size());
+                clients.forEach((key, client) -> seen.add(new Seen(key, client, client.lastSeen)));
+                seen.sort(Comparator.comparingLong(Seen::nanos));
+                for (int i = 0; i < seen.size() - target; i++) {
+                    clients.remove(seen.get(i).key(), seen.get(i).client());
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Last use of a client, read once so the sort sees a stable order
+     */
+    private record Seen(String key, Client client, long nanos) {}
+
+    /**
+     * retryAfterNanos and limit (requests or tokens) are only set for rejections
+     */
+    public record Decision(Client client, boolean admitted, String limit, long retryAfterNanos) {
+
+        /**
+         * Retry-After of a rejection: the wait rounded up to whole seconds, at least one
+         */
+        public long retryAfterSeconds() {
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999));
+        }
+    }
+
+    /**
+     * available* are the units usable right now; availableTokens is negative while the client is overdrawn
+     */
+    public record ClientUsage(String key, long admitted, long rejected, long tokens,
+                              long availableRequests, long availableTokens) {}
+
+    /**
+     * Buckets and usage counters of one API key
+     */
+    public static final class Client {
+        private final RateLimiter limiter;
+        private final TokenBucket requests;
+        private final TokenBucket tokens;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder tokensUsed = new LongAdder();
+        private volatile long lastSeen;
+
+        private Client(RateLimiter limiter, long now) {
+            this.limiter = limiter;
+            this.requests = new TokenBucket(limiter.requestsPerSecond, limiter.requestBurst, now);
+            this.tokens = new TokenBucket(limiter.tokensPerSecond, limiter.tokenBurst, now);
+        }
+    }
+
+    /**
+     * Restores the previous binding when closed
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
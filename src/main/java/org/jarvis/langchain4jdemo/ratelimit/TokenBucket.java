@@ -0,0 +1,66 @@
+package org.jarvis.langchain4jdemo.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket kept as a single theoretical arrival time (GCRA)
+ *
+ * The bucket is full when the arrival time is at or before now; every unit taken moves it one refill interval
+ * into the future, and a request fits while the arrival time stays within burst intervals of now. Updates are a
+ * compare-and-set on one AtomicLong, so there is no lock and no background refill.
+ */
+final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(double perSecond, long burst, long nowNanos) {
+        this.intervalNanos = Math.max(1, Math.round(1_000_000_000d / perSecond));
+        this.toleranceNanos = burst * intervalNanos;
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Take cost units if they fit; returns 0 on success, otherwise the nanoseconds until they would
+     */
+    long tryAcquire(long cost, long nowNanos) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = Math.max(arrival, nowNanos) + cost * intervalNanos;
+            long excess = next - nowNanos - toleranceNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds until the bucket is no longer overdrawn (0 if it is not), without taking anything
+     */
+    long waitNanos(long nowNanos) {
+        return Math.max(0, theoreticalArrival.get() - nowNanos - toleranceNanos);
+    }
+
+    /**
+     * Take cost units unconditionally, for usage only known after the fact; may overdraw the bucket
+     */
+    void charge(long cost, long nowNanos) {
+        theoreticalArrival.updateAndGet(arrival -> Math.max(arrival, nowNanos) + cost * intervalNanos);
+    }
+
+    /**
+     * Units that could be taken right now (negative when overdrawn)
+     */
+    long available(long nowNanos) {
+        long used = Math.max(0, theoreticalArrival.get() - nowNanos);
+        return (toleranceNanos - used) / intervalNanos;
+    }
+
+    boolean isFull(long nowNanos) {
+        return theoreticalArrival.get() <= nowNanos;
+    }
+}
@@ -0,0 +1,15 @@
+package org.jarvis.langchain4jdemo.replication;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a replica asks for delta log entries that were already trimmed; it must reload the snapshot
+ */
+@ResponseStatus(HttpStatus.GONE)
+public class LogTruncatedException extends RuntimeException {
+
+    public LogTruncatedException(String message) {
+        super(message);
+    }
+}
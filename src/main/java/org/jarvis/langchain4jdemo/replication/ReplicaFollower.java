@@ -0,0 +1,219 @@
+package org.jarvis.langchain4jdemo.replication;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBase;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Replica side of replication (replication.role=replica): loads the primary's snapshot, then tails its delta log
+ *
+ * The knowledge bases are read-only here, so documents are never embedded on a replica; only query text is.
+ * Every replication.poll-interval the follower applies all new log entries; if it fell so far behind that the
+ * primary trimmed them (410 Gone), or has not loaded a snapshot yet, it reloads the snapshot first.
+ * A snapshot is loaded into new stores next to the current ones and swapped in once complete, so queries keep
+ * being answered from the previous content meanwhile; memory use peaks at both copies during the load.
+ */
+@Component
+@Slf4j
+public class ReplicaFollower {
+
+    public static final String SEQUENCE_HEADER = "X-Replication-Sequence";
+
+    /** Rows handed to the store per insert while loading a snapshot */
+    private static final int SNAPSHOT_BATCH = 1024;
+
+    private final KnowledgeBases knowledgeBases;
+    private final boolean enabled;
+    private final RestClient restClient;
+    private final long maxBatchBytes;
+    private final Counter applied;
+
+    /** Last log sequence applied; -1 until a snapshot is loaded */
+    private volatile long appliedSequence = -1;
+    private volatile long primarySequence;
+
+    public ReplicaFollower(KnowledgeBases knowledgeBases, MeterRegistry meterRegistry,
+                           @Value("${replication.role:standalone}") String role,
+                           @Value("${replication.primary-url:}") String primaryUrl,
+                           @Value("${replication.batch-max-bytes:4MB}") DataSize maxBatchBytes) {
+        this.knowledgeBases = knowledgeBases;
+        this.enabled = "replica".equals(role);
+        this.maxBatchBytes = maxBatchBytes.toBytes();
+        this.applied = Counter.builder("replication.applied")
+                .description("Delta log entries applied from the primary")
+                .register(meterRegistry);
+        if (enabled) {
+            if (primaryUrl.isBlank()) {
+                throw new IllegalStateException("replication.role=replica requires replication.primary-url");
+            }
+            this.restClient = RestClient.builder().baseUrl(primaryUrl).build();
+            knowledgeBases.setReadOnly(true);
+            Gauge.builder("replication.lag", () -> appliedSequence < 0 ? primarySequence : primarySequence - appliedSequence)
+                    .description("Delta log entries the primary has that this replica has not applied")
+                    .register(meterRegistry);
+            log.info("Read replica of {}", primaryUrl);
+        } else {
+            this.restClient = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long appliedSequence() {
+        return appliedSequence;
+    }
+
+    public long primarySequence() {
+        return primarySequence;
+    }
+
+    @Scheduled(fixedDelayString = "${replication.poll-interval:1s}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (appliedSequence < 0) {
+                bootstrap();
+            }
+            while (tail() > 0) {
+                // keep reading until caught up
+            }
+        } catch (HttpClientErrorException.Gone e) {
+            log.warn("Fell behind the primary's delta log at {}, reloading the snapshot", appliedSequence);
+            appliedSequence = -1;
+        } catch (RestClientException | UncheckedIOException e) {
+            log.warn("Replication poll failed: {}", e.getMessage());
+        }
+    }
+
+    private void bootstrap() {
+        long start = System.nanoTime();
+        restClient.get()
+                .uri("/api/replication/snapshot")
+                .exchange((request, response) -> {
+                    if (!response.getStatusCode().is2xxSuccessful()) {
+                        throw new RestClientException("Snapshot request failed with " + response.getStatusCode());
+                    }
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(response.getBody()))) {
+                        loadSnapshot(in);
+                    }
+                    return null;
+                });
+        log.info("Loaded snapshot at sequence {} in {} ms ({} namespaces)", appliedSequence,
+                (System.nanoTime() - start) / 1_000_000, knowledgeBases.all().size());
+    }
+
+    void loadSnapshot(DataInputStream in) throws IOException {
+        if (in.readInt() != ReplicationCodec.SNAPSHOT_MAGIC) {
+            throw new IOException("Not a knowledge base snapshot");
+        }
+        long sequence = in.readLong();
+        int namespaces = in.readInt();
+        List<KnowledgeBase> loaded = new ArrayList<>(namespaces);
+        for (int n = 0; n < namespaces; n++) {
+            String name = ReplicationCodec.readString(in);
+            KnowledgeBase knowledgeBase = knowledgeBases.detached(name, in.readLong());
+            int remaining = in.readInt();
+            while (remaining > 0) {
+                int batch = Math.min(remaining, SNAPSHOT_BATCH);
+                applyRows(in, batch, knowledgeBase);
+                remaining -= batch;
+            }
+            loaded.add(knowledgeBase);
+        }
+        knowledgeBases.applySnapshot(loaded);
+        appliedSequence = sequence;
+    }
+
+    /**
+     * Apply one batch of log entries; returns how many were applied
+     */
+    private int tail() {
+        ResponseEntity<byte[]> response = restClient.get()
+                .uri("/api/replication/log?after={after}&maxBytes={maxBytes}", appliedSequence, maxBatchBytes)
+                .retrieve()
+                .toEntity(byte[].class);
+        String sequence = response.getHeaders().getFirst(SEQUENCE_HEADER);
+        if (sequence != null) {
+            primarySequence = Long.parseLong(sequence);
+        }
+        byte[] body = response.getBody();
+        return body == null ? 0 : applyBatch(body);
+    }
+
+    /**
+     * Apply frames of [sequence:long][length:int][change] as served by ReplicationPublisher#readLog
+     */
+    int applyBatch(byte[] body) {
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            while (in.available() > 0) {
+                long entrySequence = in.readLong();
+                byte[] change = in.readNBytes(in.readInt());
+                apply(new DataInputStream(new ByteArrayInputStream(change)));
+                appliedSequence = entrySequence;
+                applied.increment();
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        String namespace = ReplicationCodec.readString(in);
+        switch (op) {
+            case ReplicationCodec.CREATE -> knowledgeBases.applyCreate(namespace, in.readLong());
+            case ReplicationCodec.DROP -> knowledgeBases.applyDrop(namespace);
+            case ReplicationCodec.ADD -> {
+                // A missing namespace was dropped by a later change already contained in the loaded snapshot
+                Optional<KnowledgeBase> knowledgeBase = knowledgeBases.find(namespace);
+                if (knowledgeBase.isPresent()) {
+                    applyRows(in, in.readInt(), knowledgeBase.get());
+                } else {
+                    log.debug("Skipping rows for dropped namespace {}", namespace);
+                }
+            }
+            case ReplicationCodec.REMOVE -> {
+                List<String> ids = ReplicationCodec.readIds(in);
+                knowledgeBases.find(namespace).ifPresent(knowledgeBase -> knowledgeBase.applyRemove(ids));
+            }
+            default -> throw new IOException("Unknown replication op " + op);
+        }
+    }
+
+    private static void applyRows(DataInputStream in, int count, KnowledgeBase knowledgeBase) throws IOException {
+        List<String> ids = new ArrayList<>(count);
+        List<Embedding> embeddings = new ArrayList<>(count);
+        List<TextSegment> segments = new ArrayList<>(count);
+        ReplicationCodec.readRows(in, count, ids, embeddings, segments);
+        knowledgeBase.applyAdd(ids, embeddings, segments);
+    }
+}
@@ -0,0 +1,212 @@
+package org.jarvis.langchain4jdemo.replication;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Binary encoding of knowledge base changes and snapshots
+ *
+ * A change is an op byte, the namespace and the op's arguments. A row is its id, the raw float32 vector and an
+ * optional segment (text plus typed metadata). Strings are UTF-8 with an int length prefix (-1 for null).
+ */
+final class ReplicationCodec {
+
+    static final byte CREATE = 1;
+    static final byte DROP = 2;
+    static final byte ADD = 3;
+    static final byte REMOVE = 4;
+
+    /** Starts every snapshot, followed by the log sequence it covers and its namespaces */
+    static final int SNAPSHOT_MAGIC = 0x4B425331; // "KBS1"
+
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte FLOAT = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte UUID_VALUE = 6;
+
+    private ReplicationCodec() {
+    }
+
+    static byte[] create(String namespace, long maxBytes) {
+        return encode(out -> {
+            out.writeByte(CREATE);
+            writeString(out, namespace);
+            out.writeLong(maxBytes);
+        });
+    }
+
+    static byte[] drop(String namespace) {
+        return encode(out -> {
+            out.writeByte(DROP);
+            writeString(out, namespace);
+        });
+    }
+
+    static byte[] add(String namespace, List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        return encode(out -> {
+            out.writeByte(ADD);
+            writeString(out, namespace);
+            out.writeInt(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                writeRow(out, ids.get(i), vector, 0, vector.length, segments != null ? segments.get(i) : null);
+            }
+        });
+    }
+
+    static byte[] remove(String namespace, Collection<String> ids) {
+        return encode(out -> {
+            out.writeByte(REMOVE);
+            writeString(out, namespace);
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                writeString(out, id);
+            }
+        });
+    }
+
+    static void writeRow(DataOutputStream out, String id, float[] vector, int offset, int dimension,
+                         TextSegment segment) throws IOException {
+        writeString(out, id);
+        out.writeInt(dimension);
+        for (int i = 0; i < dimension; i++) {
+            out.writeFloat(vector[offset + i]);
+        }
+        out.writeBoolean(segment != null);
+        if (segment != null) {
+            writeString(out, segment.text());
+            writeMetadata(out, segment.metadata());
+        }
+    }
+
+    /**
+     * Read rows into the given lists (segments may receive nulls)
+     */
+    static void readRows(DataInputStream in, int count, List<String> ids, List<Embedding> embeddings,
+                         List<TextSegment> segments) throws IOException {
+        for (int i = 0; i < count; i++) {
+            ids.add(readString(in));
+            float[] vector = new float[in.readInt()];
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = in.readFloat();
+            }
+            embeddings.add(Embedding.from(vector));
+            segments.add(in.readBoolean() ? TextSegment.from(readString(in), readMetadata(in)) : null);
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static void writeMetadata(DataOutputStream out, Metadata metadata) throws IOException {
+        Map<String, Object> values = metadata.toMap();
+        out.writeInt(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            writeString(out, entry.getKey());
+            switch (entry.getValue()) {
+                case String value -> {
+                    out.writeByte(STRING);
+                    writeString(out, value);
+                }
+                case Integer value -> {
+                    out.writeByte(INTEGER);
+                    out.writeInt(value);
+                }
+                case Long value -> {
+                    out.writeByte(LONG);
+                    out.writeLong(value);
+                }
+                case Float value -> {
+                    out.writeByte(FLOAT);
+                    out.writeFloat(value);
+                }
+                case Double value -> {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(value);
+                }
+                case UUID value -> {
+                    out.writeByte(UUID_VALUE);
+                    out.writeLong(value.getMostSignificantBits());
+                    out.writeLong(value.getLeastSignificantBits());
+                }
+                default -> throw new IllegalArgumentException("Unsupported metadata value type: "
+                        + entry.getValue().getClass().getName());
+            }
+        }
+    }
+
+    private static Metadata readMetadata(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Object> values = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            byte type = in.readByte();
+            Object value = switch (type) {
+                case STRING -> readString(in);
+                case INTEGER -> in.readInt();
+                case LONG -> in.readLong();
+                case FLOAT -> in.readFloat();
+                case DOUBLE -> in.readDouble();
+                case UUID_VALUE -> new UUID(in.readLong(), in.readLong());
+                default -> throw new IOException("Unknown metadata value type " + type);
+            };
+            values.put(key, value);
+        }
+        return Metadata.from(values);
+    }
+
+    static List<String> readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(readString(in));
+        }
+        return ids;
+    }
+
+    static byte[] encode(Encoder encoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.encode(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    interface Encoder {
+        void encode(DataOutputStream out) throws IOException;
+    }
+}
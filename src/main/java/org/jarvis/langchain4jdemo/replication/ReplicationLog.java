@@ -0,0 +1,84 @@
+package org.jarvis.langchain4jdemo.replication;
+
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+import org.jarvis.langchain4jdemo.quota.MemoryEstimates;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * In-memory delta log of encoded changes, numbered from 1 and trimmed from the head beyond maxBytes
+ *
+ * A reader that falls behind the retained head gets {@link LogTruncatedException} and must re-bootstrap
+ * from a snapshot.
+ */
+class ReplicationLog implements MemoryAccounted {
+
+    private static final int ENTRY_OVERHEAD = MemoryEstimates.OBJECT_HEADER * 2 + 8 + MemoryEstimates.REFERENCE;
+
+    private final long maxBytes;
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private long lastSequence;
+    private long bytes;
+
+    ReplicationLog(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized long append(byte[] payload) {
+        Entry entry = new Entry(++lastSequence, payload);
+        entries.addLast(entry);
+        bytes += entry.bytes();
+        while (bytes > maxBytes && entries.size() > 1) {
+            bytes -= entries.removeFirst().bytes();
+        }
+        return entry.sequence();
+    }
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Sequence of the oldest retained entry; lastSequence() + 1 when empty
+     */
+    synchronized long firstSequence() {
+        return entries.isEmpty() ? lastSequence + 1 : entries.peekFirst().sequence();
+    }
+
+    /**
+     * Entries after the given sequence, up to about maxBatchBytes (always at least one if any)
+     */
+    synchronized List<Entry> readAfter(long sequence, long maxBatchBytes) {
+        if (sequence < firstSequence() - 1) {
+            throw new LogTruncatedException("Log entries after " + sequence
+                    + " are no longer retained; oldest is " + firstSequence());
+        }
+        List<Entry> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (Entry entry : entries) {
+            if (entry.sequence() <= sequence) {
+                continue;
+            }
+            if (!batch.isEmpty() && batchBytes + entry.payload().length > maxBatchBytes) {
+                break;
+            }
+            batch.add(entry);
+            batchBytes += entry.payload().length;
+        }
+        return batch;
+    }
+
+    @Override
+    public synchronized long approximateBytes() {
+        return bytes;
+    }
+
+    record Entry(long sequence, byte[] payload) {
+        long bytes() {
+            return ENTRY_OVERHEAD + MemoryEstimates.OBJECT_HEADER + payload.length;
+        }
+    }
+}
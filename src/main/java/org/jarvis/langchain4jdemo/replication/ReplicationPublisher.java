@@ -0,0 +1,135 @@
+package org.jarvis.langchain4jdemo.replication;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBase;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Primary side of replication (replication.role=primary): records every knowledge base change in the delta log
+ * and serves snapshots, so replicas never embed documents themselves
+ *
+ * A snapshot is taken after reading the log sequence it is labelled with, so it contains at least every change
+ * up to that sequence and possibly some later ones; replaying those on top is harmless because every change is
+ * idempotent (adds carry their ids, removes and drops of missing entries are no-ops).
+ */
+@Component
+@Slf4j
+public class ReplicationPublisher implements KnowledgeBases.ChangeListener {
+
+    private final KnowledgeBases knowledgeBases;
+    private final ReplicationLog deltaLog;
+    private final boolean enabled;
+
+    public ReplicationPublisher(KnowledgeBases knowledgeBases, MemoryAccountant memoryAccountant,
+                                @Value("${replication.role:standalone}") String role,
+                                @Value("${replication.log-max-bytes:64MB}") DataSize logMaxBytes) {
+        this.knowledgeBases = knowledgeBases;
+        this.deltaLog = new ReplicationLog(logMaxBytes.toBytes());
+        this.enabled = "primary".equals(role);
+        if (enabled) {
+            knowledgeBases.setChangeListener(this);
+            memoryAccountant.register(MemoryAccountant.REPLICATION_LOG, deltaLog);
+            log.info("Replication primary: publishing changes, delta log bounded to {}", logMaxBytes);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long sequence() {
+        return deltaLog.lastSequence();
+    }
+
+    public long firstSequence() {
+        return deltaLog.firstSequence();
+    }
+
+    public long logBytes() {
+        return deltaLog.approximateBytes();
+    }
+
+    @Override
+    public void created(String namespace, long maxBytes) {
+        deltaLog.append(ReplicationCodec.create(namespace, maxBytes));
+    }
+
+    @Override
+    public void dropped(String namespace) {
+        deltaLog.append(ReplicationCodec.drop(namespace));
+    }
+
+    @Override
+    public void added(String namespace, List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        deltaLog.append(ReplicationCodec.add(namespace, ids, embeddings, segments));
+    }
+
+    @Override
+    public void removed(String namespace, Collection<String> ids) {
+        deltaLog.append(ReplicationCodec.remove(namespace, ids));
+    }
+
+    /**
+     * Write every namespace, labelled with a sequence read before this call; each namespace is encoded under its
+     * store's read lock and then written, so a slow reader never blocks ingest
+     */
+    public void writeSnapshot(long sequence, OutputStream target) throws IOException {
+        DataOutputStream out = new DataOutputStream(target);
+        List<KnowledgeBase> namespaces = knowledgeBases.all();
+        out.writeInt(ReplicationCodec.SNAPSHOT_MAGIC);
+        out.writeLong(sequence);
+        out.writeInt(namespaces.size());
+        for (KnowledgeBase knowledgeBase : namespaces) {
+            if (!(knowledgeBase.getStore() instanceof FlatEmbeddingStore store)) {
+                throw new IllegalStateException("Replication requires embedding.store.type=flat");
+            }
+            ByteArrayOutputStream rows = new ByteArrayOutputStream();
+            DataOutputStream rowsOut = new DataOutputStream(rows);
+            int[] count = new int[1];
+            store.forEachRow((id, matrix, offset, dimension, segment) -> {
+                try {
+                    ReplicationCodec.writeRow(rowsOut, id, matrix, offset, dimension, segment);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+            ReplicationCodec.writeString(out, knowledgeBase.getName());
+            out.writeLong(knowledgeBase.getMaxBytes());
+            out.writeInt(count[0]);
+            rows.writeTo(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Delta log entries after the given sequence as frames of [sequence:long][length:int][change]
+     *
+     * @throws LogTruncatedException if entries right after the sequence were already trimmed
+     */
+    public byte[] readLog(long after, long maxBatchBytes) {
+        List<ReplicationLog.Entry> entries = deltaLog.readAfter(after, maxBatchBytes);
+        return ReplicationCodec.encode(out -> {
+            for (ReplicationLog.Entry entry : entries) {
+                out.writeLong(entry.sequence());
+                out.writeInt(entry.payload().length);
+                out.write(entry.payload());
+            }
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package org.jarvis.langchain4jdemo.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks how many segments to retrieve per query instead of always taking a fixed k
+ *
+ * The store is asked for at most max-k candidates above min-score (stores prune everything below the
+ * threshold while scanning). Candidates are then taken in score order until one falls more than max-gap
+ * below its predecessor or more than max-drop below the best match, but never fewer than min-k.
+ * From a flat store, candidates come back without their segments and only the chosen ones are decoded.
+ */
+@Component
+@Slf4j
+public class AdaptiveRetriever {
+
+    private final double minScore;
+    private final int minK;
+    private final int maxK;
+    private final double maxGap;
+    private final double maxDrop;
+    private final DistributionSummary chosenK;
+
+    public AdaptiveRetriever(@Value("${rag.retrieval.min-score:0.62}") double minScore,
+                             @Value("${rag.retrieval.min-k:1}") int minK,
+                             @Value("${rag.retrieval.max-k:8}") int maxK,
+                             @Value("${rag.retrieval.max-gap:0.05}") double maxGap,
+                             @Value("${rag.retrieval.max-drop:0.12}") double maxDrop,
+                             MeterRegistry meterRegistry) {
+        this.minScore = minScore;
+        this.minK = Math.max(0, minK);
+        this.maxK = Math.max(1, maxK);
+        this.maxGap = maxGap;
+        this.maxDrop = maxDrop;
+        this.chosenK = DistributionSummary.builder("rag.retrieval.k")
+                .description("Number of segments chosen per query by adaptive retrieval")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Retrieve an adaptive number of segments; maxResults, when given, caps k below the configured max-k
+     */
+    public Retrieval retrieve(EmbeddingStore<TextSegment> store, Embedding queryEmbedding, Integer maxResults) {
+        int limit = limit(maxResults);
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
+                .maxResults(limit)
+                .minScore(minScore)
+                .build();
+        if (store instanceof FlatEmbeddingStore flatStore) {
+            Retrieval retrieval = choose(flatStore.search(request, false).matches(), limit);
+            return new Retrieval(flatStore.withText(retrieval.matches()), retrieval.candidates(), retrieval.stopReason());
+        }
+        return choose(store.search(request).matches(), limit);
+    }
+
+    /**
+     * Number of candidates to consider for the given maxResults
+     */
+    public int limit(Integer maxResults) {
+        return maxResults != null && maxResults > 0 ? Math.min(maxResults, maxK) : maxK;
+    }
+
+    public double minScore() {
+        return minScore;
+    }
+
+    /**
+     * Pick from candidates sorted by descending score, all at or above min-score and at most limit of them
+     */
+    public Retrieval choose(List<EmbeddingMatch<TextSegment>> candidates, int limit) {
+        List<EmbeddingMatch<TextSegment>> chosen = new ArrayList<>(candidates.size());
+        String stopReason = candidates.size() < limit ? "min-score" : "max-k";
+        for (EmbeddingMatch<TextSegment> candidate : candidates) {
+            if (!chosen.isEmpty() && chosen.size() >= minK) {
+                double previous = chosen.get(chosen.size() - 1).score();
+                double best = chosen.get(0).score();
+                if (previous - candidate.score() > maxGap) {
+                    stopReason = "score-gap";
+                    break;
+                }
+                if (best - candidate.score() > maxDrop) {
+                    stopReason = "drop-from-best";
+                    break;
+                }
+            }
+            chosen.add(candidate);
+        }
+
+        chosenK.record(chosen.size());
+        List<Double> scores = chosen.stream().map(EmbeddingMatch::score).toList();
+        log.info("Adaptive retrieval chose k={} of {} candidates ({}), scores {}", chosen.size(), candidates.size(), stopReason, scores);
+        return new Retrieval(chosen, candidates.size(), stopReason);
+    }
+
+    /**
+     * Segments chosen for a query, how many candidates the store returned and why selection stopped
+     */
+    public record Retrieval(List<EmbeddingMatch<TextSegment>> matches, int candidates, String stopReason) {
+
+        public int k() {
+            return matches.size();
+        }
+
+        public List<Double> scores() {
+            return matches.stream().map(EmbeddingMatch::score).toList();
+        }
+    }
+}
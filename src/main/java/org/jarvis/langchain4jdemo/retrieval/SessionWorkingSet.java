@@ -0,0 +1,259 @@
+package org.jarvis.langchain4jdemo.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+import org.jarvis.langchain4jdemo.quota.MemoryEstimates;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Segments retrieved in the last turns of each conversation, so follow-up questions can skip the store search
+ *
+ * Consecutive turns of a session usually need the same segments. After each store search the chosen matches
+ * (id, vector and segment) are remembered for the session, keeping its last max-turns turns. A follow-up
+ * question is scored against these few vectors first; when the best local relevance reaches min-score the
+ * answer comes from the working set through the usual adaptive selection, otherwise the store is searched.
+ * A session is forgotten ttl after its last store search, or earlier when it is the least recently used one
+ * beyond max-sessions. Whenever segments leave a namespace (see KnowledgeBases#addRemovalListener) all of its
+ * sessions are forgotten, and a store search that overlapped the removal is not remembered, so removed
+ * segments are never served from here.
+ *
+ * Lookups are counted in rag.working-set.lookups{outcome=hit|miss}; on a hit rag.working-set.saved records the
+ * average store search time (measured on misses) minus the local scoring time.
+ */
+@Component
+@Slf4j
+public class SessionWorkingSet implements MemoryAccounted {
+
+    private final AdaptiveRetriever adaptiveRetriever;
+    private final boolean enabled;
+    private final double minLocalScore;
+    private final int maxTurns;
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final Map<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer saved;
+    private long bytes;
+    /** Moving average of store search time on misses */
+    private double storeSearchNanos;
+    /** Bumped whenever a namespace's sessions are forgotten for a removal */
+    private long removals;
+
+    public SessionWorkingSet(AdaptiveRetriever adaptiveRetriever,
+                             @Value("${rag.working-set.enabled:true}") boolean enabled,
+                             @Value("${rag.working-set.min-score:0.8}") double minLocalScore,
+                             @Value("${rag.working-set.max-turns:3}") int maxTurns,
+                             @Value("${rag.working-set.max-sessions:1000}") int maxSessions,
+                             @Value("${rag.working-set.ttl:30m}") Duration ttl,
+                             MeterRegistry meterRegistry, MemoryAccountant memoryAccountant,
+                             KnowledgeBases knowledgeBases) {
+        this.adaptiveRetriever = adaptiveRetriever;
+        this.enabled = enabled;
+        this.minLocalScore = minLocalScore;
+        this.maxTurns = Math.max(1, maxTurns);
+        this.maxSessions = Math.max(1, maxSessions);
+        this.ttlNanos = ttl.toNanos();
+        this.hits = Counter.builder("rag.working-set.lookups").tag("outcome", "hit")
+                .description("Conversation retrievals answered from the session working set or by the store")
+                .register(meterRegistry);
+        this.misses = Counter.builder("rag.working-set.lookups").tag("outcome", "miss")
+                .description("Conversation retrievals answered from the session working set or by the store")
+                .register(meterRegistry);
+        this.saved = Timer.builder("rag.working-set.saved")
+                .description("Store search time avoided by a working set hit, net of local scoring")
+                .register(meterRegistry);
+        memoryAccountant.register(MemoryAccountant.WORKING_SET, this);
+        knowledgeBases.addRemovalListener(this::forgetNamespace);
+    }
+
+    /**
+     * Retrieve for one turn of a session: from its working set when a remembered segment is relevant enough,
+     * otherwise with storeSearch, whose chosen matches then become the session's newest turn
+     *
+     * @param storeSearch full retrieval against the namespace's store
+     */
+    public Lookup retrieve(String namespace, String sessionId, Embedding query, Integer maxResults,
+                           Supplier<AdaptiveRetriever.Retrieval> storeSearch) {
+        if (!enabled) {
+            return new Lookup(storeSearch.get(), false);
+        }
+        String session = key(namespace, sessionId);
+        long start = System.nanoTime();
+        Optional<AdaptiveRetriever.Retrieval> local = local(session, query, maxResults);
+        if (local.isPresent()) {
+            long localNanos = System.nanoTime() - start;
+            hits.increment();
+            double average;
+            synchronized (this) {
+                average = storeSearchNanos;
+            }
+            saved.record(Math.max(0, (long) average - localNanos), TimeUnit.NANOSECONDS);
+            log.debug("Working set hit for session {}: k={} in {} us", session, local.get().k(), localNanos / 1000);
+            return new Lookup(local.get(), true);
+        }
+        misses.increment();
+        long removalsBefore;
+        synchronized (this) {
+            removalsBefore = removals;
+        }
+        long searchStart = System.nanoTime();
+        AdaptiveRetriever.Retrieval retrieval = storeSearch.get();
+        long searchNanos = System.nanoTime() - searchStart;
+        remember(session, retrieval.matches(), searchNanos, removalsBefore);
+        return new Lookup(retrieval, false);
+    }
+
+    public void forget(String namespace, String sessionId) {
+        forget(key(namespace, sessionId));
+    }
+
+    /**
+     * Forget every session of the namespace; segments may have been removed from it
+     */
+    public synchronized void forgetNamespace(String namespace) {
+        removals++;
+        String prefix = key(namespace, "");
+        Iterator<Map.Entry<String, Session>> entries = sessions.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Session> entry = entries.next();
+            if (entry.getKey().startsWith(prefix)) {
+                bytes -= entry.getValue().bytes();
+                entries.remove();
+            }
+        }
+    }
+
+    private synchronized void forget(String session) {
+        Session removed = sessions.remove(session);
+        if (removed != null) {
+            bytes -= removed.bytes();
+        }
+    }
+
+    @Override
+    public synchronized long approximateBytes() {
+        return bytes;
+    }
+
+    /**
+     * Adaptive selection over the session's remembered segments, if the best of them reaches min-score
+     */
+    private Optional<AdaptiveRetriever.Retrieval> local(String session, Embedding query, Integer maxResults) {
+        Map<String, EmbeddingMatch<TextSegment>> scored = new LinkedHashMap<>();
+        synchronized (this) {
+            Session remembered = sessions.get(session);
+            if (remembered == null) {
+                return Optional.empty();
+            }
+            if (System.nanoTime() - remembered.rememberedNanos() > ttlNanos) {
+                forget(session);
+                return Optional.empty();
+            }
+            // Newest turn first, so a segment remembered twice is scored once
+            for (Iterator<List<EmbeddingMatch<TextSegment>>> turns = remembered.turns().descendingIterator(); turns.hasNext(); ) {
+                for (EmbeddingMatch<TextSegment> match : turns.next()) {
+                    if (!scored.containsKey(match.embeddingId())) {
+                        double score = RelevanceScore.fromCosineSimilarity(CosineSimilarity.between(query, match.embedding()));
+                        scored.put(match.embeddingId(), new EmbeddingMatch<>(score, match.embeddingId(),
+                                match.embedding(), match.embedded()));
+                    }
+                }
+            }
+        }
+        int limit = adaptiveRetriever.limit(maxResults);
+        List<EmbeddingMatch<TextSegment>> candidates = scored.values().stream()
+                .filter(match -> match.score() >= adaptiveRetriever.minScore())
+                .sorted(Comparator.comparingDouble(EmbeddingMatch<TextSegment>::score).reversed())
+                .limit(limit)
+                .toList();
+        if (candidates.isEmpty() || candidates.get(0).score() < minLocalScore) {
+            return Optional.empty();
+        }
+        return Optional.of(adaptiveRetriever.choose(candidates, limit));
+    }
+
+    /**
+     * Make the matches the session's newest turn, unless segments were removed from some namespace during the search
+     */
+    private synchronized void remember(String session, List<EmbeddingMatch<TextSegment>> matches, long searchNanos,
+                                       long removalsBefore) {
+        storeSearchNanos = storeSearchNanos == 0 ? searchNanos : 0.9 * storeSearchNanos + 0.1 * searchNanos;
+        if (removals != removalsBefore) {
+            return;
+        }
+        List<EmbeddingMatch<TextSegment>> turn = matches.stream()
+                .filter(match -> match.embedding() != null && match.embedded() != null)
+                .toList();
+        Session previous = sessions.remove(session);
+        Deque<List<EmbeddingMatch<TextSegment>>> turns = previous != null ? previous.turns() : new ArrayDeque<>();
+        if (previous != null) {
+            bytes -= previous.bytes();
+        }
+        if (!turn.isEmpty()) {
+            turns.addLast(turn);
+        }
+        while (turns.size() > maxTurns) {
+            turns.removeFirst();
+        }
+        if (turns.isEmpty()) {
+            return;
+        }
+        Session updated = new Session(turns, estimate(session, turns), System.nanoTime());
+        sessions.put(session, updated);
+        bytes += updated.bytes();
+        Iterator<Session> eldest = sessions.values().iterator();
+        while (sessions.size() > maxSessions) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Sessions are keyed by namespace, so equal session ids of different tenants stay apart
+     */
+    private static String key(String namespace, String sessionId) {
+        return namespace + "/" + sessionId;
+    }
+
+    private static long estimate(String session, Deque<List<EmbeddingMatch<TextSegment>>> turns) {
+        long estimate = MemoryEstimates.MAP_ENTRY + MemoryEstimates.of(session) + MemoryEstimates.OBJECT_HEADER;
+        for (List<EmbeddingMatch<TextSegment>> turn : turns) {
+            for (EmbeddingMatch<TextSegment> match : turn) {
+                estimate += MemoryEstimates.OBJECT_HEADER + MemoryEstimates.of(match.embeddingId())
+                        + 4L * match.embedding().dimension() + MemoryEstimates.of(match.embedded());
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * Retrieval of a turn and whether it came from the working set
+     */
+    public record Lookup(AdaptiveRetriever.Retrieval retrieval, boolean local) {}
+
+    private record Session(Deque<List<EmbeddingMatch<TextSegment>>> turns, long bytes, long rememberedNanos) {}
+}
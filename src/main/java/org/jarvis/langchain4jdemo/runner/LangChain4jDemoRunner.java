@@ -129,7 +129,7 @@ public class LangChain4jDemoRunner implements CommandLineRunner {
         log.info("Added {} knowledge base entries", knowledge.size());
 
         String question = "What is LangChain4j?";
-        String answer = ragService.answerWithContext(question, 2);
+        String answer = ragService.answerWithContext(question, 2).answer();
 
         log.info("\nQuestion: {}", question);
         log.info("Answer: {}", answer);
@@ -139,7 +139,7 @@ public class LangChain4jDemoRunner implements CommandLineRunner {
 
         log.info("\nQuestion: {}", question2);
         log.info("Answer: {}", response.answer());
-        log.info("Sources used: {}", response.sources().size());
+        log.info("Sources used: {} (scores {})", response.sources().size(), response.scores());
     }
 
     private void demo5AiServices() {
@@ -167,15 +167,15 @@ public class LangChain4jDemoRunner implements CommandLineRunner {
         log.info("DEMO 6: Tools/Function Calling");
         log.info("=".repeat(80));
 
-        String calc1 = toolService.chatWithTools("What is 25 multiplied by 4?");
+        String calc1 = toolService.chatWithTools("What is 25 multiplied by 4?").response();
         log.info("Q: What is 25 multiplied by 4?");
         log.info("A: {}", calc1);
 
-        String calc2 = toolService.chatWithTools("Calculate the square root of 144");
+        String calc2 = toolService.chatWithTools("Calculate the square root of 144").response();
         log.info("\nQ: Calculate the square root of 144");
         log.info("A: {}", calc2);
 
-        String weather = toolService.chatWithTools("What's the weather in San Francisco?");
+        String weather = toolService.chatWithTools("What's the weather in San Francisco?").response();
         log.info("\nQ: What's the weather in San Francisco?");
         log.info("A: {}", weather);
     }
@@ -4,45 +4,55 @@ import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
 import dev.langchain4j.service.UserMessage;
 import dev.langchain4j.service.V;
-import dev.langchain4j.model.chat.ChatLanguageModel;
 import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.generation.ChatModelProvider;
+import org.jarvis.langchain4jdemo.job.LlmScheduler;
 import org.springframework.stereotype.Service;
+import org.springframework.util.function.SingletonSupplier;
 
 /**
  * Service demonstrating AI Services (declarative AI interface)
  * Feature: Define AI behavior using annotations and interfaces
+ * Each interface is bound to a generation profile via llm.endpoints.&lt;endpoint&gt;
+ * Templates keep every fixed instruction in the system message and put user text last, so requests to the same
+ * interface share a prompt prefix the model server can reuse
  */
 @Service
 @Slf4j
 public class AiServiceExampleService {
 
-    private final ChatAssistant chatAssistant;
-    private final CodeGenerator codeGenerator;
-    private final TextAnalyzer textAnalyzer;
-    private final Translator translator;
+    private final SingletonSupplier<ChatAssistant> chatAssistant;
+    private final SingletonSupplier<CodeGenerator> codeGenerator;
+    private final SingletonSupplier<SentimentAnalyzer> sentimentAnalyzer;
+    private final SingletonSupplier<Summarizer> summarizer;
+    private final SingletonSupplier<Translator> translator;
+    private final LlmScheduler llmScheduler;
 
-    public AiServiceExampleService(ChatLanguageModel chatLanguageModel) {
-        // Create AI service instances
-        this.chatAssistant = AiServices.create(ChatAssistant.class, chatLanguageModel);
-        this.codeGenerator = AiServices.create(CodeGenerator.class, chatLanguageModel);
-        this.textAnalyzer = AiServices.create(TextAnalyzer.class, chatLanguageModel);
-        this.translator = AiServices.create(Translator.class, chatLanguageModel);
+    public AiServiceExampleService(ChatModelProvider chatModels, LlmScheduler llmScheduler) {
+        this.llmScheduler = llmScheduler;
+
+        // AI service proxies are created on first use to keep them off the startup path
+        this.chatAssistant = SingletonSupplier.of(() -> AiServices.create(ChatAssistant.class, chatModels.forEndpoint("assistant")));
+        this.codeGenerator = SingletonSupplier.of(() -> AiServices.create(CodeGenerator.class, chatModels.forEndpoint("code")));
+        this.sentimentAnalyzer = SingletonSupplier.of(() -> AiServices.create(SentimentAnalyzer.class, chatModels.forEndpoint("sentiment")));
+        this.summarizer = SingletonSupplier.of(() -> AiServices.create(Summarizer.class, chatModels.forEndpoint("summarize")));
+        this.translator = SingletonSupplier.of(() -> AiServices.create(Translator.class, chatModels.forEndpoint("translate")));
     }
 
     /**
      * General chat assistant
      */
     public String chat(String message) {
-        log.info("Chat assistant request: {}", message);
-        return chatAssistant.chat(message);
+        log.debug("Chat assistant request: {} chars", message == null ? 0 : message.length());
+        return llmScheduler.execute(() -> chatAssistant.obtain().chat(message));
     }
 
     /**
      * Generate code
      */
     public String generateCode(String language, String description) {
-        log.info("Code generation: {} in {}", description, language);
-        return codeGenerator.generateCode(language, description);
+        log.debug("Code generation: {} chars", description == null ? 0 : description.length());
+        return llmScheduler.execute(() -> codeGenerator.obtain().generateCode(language, description));
     }
 
     /**
@@ -50,7 +60,7 @@ public class AiServiceExampleService {
      */
     public String analyzeSentiment(String text) {
         log.info("Sentiment analysis for text of length: {}", text.length());
-        return textAnalyzer.analyzeSentiment(text);
+        return llmScheduler.execute(() -> sentimentAnalyzer.obtain().analyzeSentiment(text));
     }
 
     /**
@@ -58,7 +68,7 @@ public class AiServiceExampleService {
      */
     public String summarize(String text, int maxWords) {
         log.info("Summarizing text to {} words", maxWords);
-        return textAnalyzer.summarize(text, maxWords);
+        return llmScheduler.execute(() -> summarizer.obtain().summarize(text, maxWords));
     }
 
     /**
@@ -66,7 +76,7 @@ public class AiServiceExampleService {
      */
     public String translate(String text, String targetLanguage) {
         log.info("Translating text to {}", targetLanguage);
-        return translator.translate(text, targetLanguage);
+        return llmScheduler.execute(() -> translator.obtain().translate(text, targetLanguage));
     }
 
     /**
@@ -81,20 +91,26 @@ public class AiServiceExampleService {
      * Code Generator Interface
      */
     interface CodeGenerator {
-        @SystemMessage("You are an expert programmer. Generate clean, well-commented code.")
-        @UserMessage("Generate {{language}} code for: {{description}}")
+        @SystemMessage("You are an expert programmer. Generate clean, well-commented code in the requested language.")
+        @UserMessage("Language: {{language}}\nGenerate code for: {{description}}")
         String generateCode(@V("language") String language, @V("description") String description);
     }
 
     /**
-     * Text Analyzer Interface
+     * Sentiment Analyzer Interface
      */
-    interface TextAnalyzer {
-        @SystemMessage("You are a text analysis expert.")
-        @UserMessage("Analyze the sentiment of this text and respond with POSITIVE, NEGATIVE, or NEUTRAL, followed by a brief explanation: {{text}}")
+    interface SentimentAnalyzer {
+        @SystemMessage("You are a text analysis expert. Analyze the sentiment of the user's text and respond with POSITIVE, NEGATIVE, or NEUTRAL, followed by a brief explanation.")
+        @UserMessage("{{text}}")
         String analyzeSentiment(@V("text") String text);
+    }
 
-        @UserMessage("Summarize the following text in maximum {{maxWords}} words: {{text}}")
+    /**
+     * Summarizer Interface
+     */
+    interface Summarizer {
+        @SystemMessage("You summarize text. Keep the summary within the word limit given with the text.")
+        @UserMessage("Word limit: {{maxWords}}\nText: {{text}}")
         String summarize(@V("text") String text, @V("maxWords") int maxWords);
     }
 
@@ -103,7 +119,7 @@ public class AiServiceExampleService {
      */
     interface Translator {
         @SystemMessage("You are a professional translator. Translate accurately while preserving meaning and tone.")
-        @UserMessage("Translate the following text to {{language}}: {{text}}")
+        @UserMessage("Target language: {{language}}\nText: {{text}}")
         String translate(@V("text") String text, @V("language") String language);
     }
 }
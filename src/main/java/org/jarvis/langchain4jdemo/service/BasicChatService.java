@@ -1,28 +1,36 @@
 package org.jarvis.langchain4jdemo.service;
 
-import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.generation.ChatModelProvider;
+import org.jarvis.langchain4jdemo.job.LlmScheduler;
 import org.springframework.stereotype.Service;
 
 /**
  * Service demonstrating basic chat interactions with LLM
  * Feature: Simple question-answering without context
+ * Each method is bound to its own generation profile via llm.endpoints.basic-*
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class BasicChatService {
 
-    private final ChatLanguageModel chatLanguageModel;
+    private static final SystemMessage CODE_INSTRUCTIONS = SystemMessage.from(
+            "Generate code based on the user's instruction. Provide only the code with comments.");
+
+    private final ChatModelProvider chatModelProvider;
+    private final LlmScheduler llmScheduler;
 
     /**
      * Simple chat - sends a message and gets a response
      */
     public String chat(String message) {
-        log.info("Basic chat request: {}", message);
-        String response = chatLanguageModel.generate(message);
-        log.info("Basic chat response: {}", response);
+        log.debug("Basic chat request of {} chars", message.length());
+        String response = llmScheduler.execute(() -> chatModelProvider.forEndpoint("basic-chat").generate(message));
+        log.debug("Basic chat response of {} chars", response.length());
         return response;
     }
 
@@ -30,9 +38,9 @@ public class BasicChatService {
      * Ask a specific question
      */
     public String askQuestion(String question) {
-        log.info("Question: {}", question);
-        String answer = chatLanguageModel.generate(question);
-        log.info("Answer: {}", answer);
+        log.debug("Question of {} chars", question.length());
+        String answer = llmScheduler.execute(() -> chatModelProvider.forEndpoint("basic-question").generate(question));
+        log.debug("Answer of {} chars", answer.length());
         return answer;
     }
 
@@ -40,8 +48,8 @@ public class BasicChatService {
      * Generate creative content
      */
     public String generateContent(String prompt) {
-        log.info("Content generation prompt: {}", prompt);
-        String content = chatLanguageModel.generate(prompt);
+        log.debug("Content generation prompt of {} chars", prompt.length());
+        String content = llmScheduler.execute(() -> chatModelProvider.forEndpoint("basic-content").generate(prompt));
         log.info("Generated content length: {} characters", content.length());
         return content;
     }
@@ -50,9 +58,8 @@ public class BasicChatService {
      * Code generation example
      */
     public String generateCode(String instruction) {
-        String prompt = "Generate code based on this instruction: " + instruction +
-                       "\nProvide only the code with comments.";
-        log.info("Code generation request: {}", instruction);
-        return chatLanguageModel.generate(prompt);
+        log.debug("Code generation request of {} chars", instruction.length());
+        return llmScheduler.execute(() -> chatModelProvider.forEndpoint("basic-code")
+                .generate(CODE_INSTRUCTIONS, UserMessage.from(instruction)).content().text());
     }
 }
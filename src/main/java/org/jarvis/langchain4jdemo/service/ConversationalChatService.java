@@ -1,59 +1,152 @@
 package org.jarvis.langchain4jdemo.service;
 
 import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.UserMessage;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.job.LlmScheduler;
+import org.jarvis.langchain4jdemo.retrieval.SessionWorkingSet;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
 /**
  * Service demonstrating conversational AI with memory
- * Feature: Maintains context across multiple exchanges
+ * Feature: Maintains context across multiple exchanges, per session, persisted across restarts
+ * chatWithKnowledge adds context from the caller's knowledge base to each turn (see RagService#retrieveInSession)
+ *
+ * A memory update reads the session's messages and writes them back, so updates of one session are serialized
+ * on a lock stripe; the model call runs outside it. Concurrent turns of one session may interleave their
+ * messages, but none is lost.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ConversationalChatService {
 
+    public static final String DEFAULT_SESSION = "default";
+
+    private static final int LOCK_STRIPES = 64;
+
     private final ChatLanguageModel chatLanguageModel;
-    private final MessageWindowChatMemory chatMemory;
+    private final ChatMemoryProvider chatMemoryProvider;
+    private final LlmScheduler llmScheduler;
+    private final RagService ragService;
+    private final ReentrantLock[] sessionLocks = newLocks();
 
     /**
      * Chat with memory - maintains conversation context
      */
     public String chatWithMemory(String userMessage) {
-        log.info("Conversational chat - User: {}", userMessage);
+        return chatWithMemory(DEFAULT_SESSION, userMessage);
+    }
 
-        // Add user message to memory
-        chatMemory.add(UserMessage.from(userMessage));
+    /**
+     * Chat with memory in the given session
+     */
+    public String chatWithMemory(String sessionId, String userMessage) {
+        log.debug("Conversational chat - session {}, user message of {} chars", sessionId, userMessage.length());
+        ChatMemory chatMemory = chatMemoryProvider.get(sessionId);
 
-        // Get all messages from memory for context
-        var messages = chatMemory.messages();
+        // Add user message to memory and get all messages from memory for context
+        var messages = inSession(sessionId, () -> {
+            chatMemory.add(UserMessage.from(userMessage));
+            return chatMemory.messages();
+        });
 
         // Generate response with full context
-        String response = chatLanguageModel.generate(messages).content().text();
+        String response = llmScheduler.execute(() -> chatLanguageModel.generate(messages)).content().text();
 
         // Add AI response to memory
-        chatMemory.add(AiMessage.from(response));
+        inSession(sessionId, () -> chatMemory.add(AiMessage.from(response)));
 
-        log.info("Conversational chat - AI: {}", response);
+        log.debug("Conversational chat - AI response of {} chars", response.length());
         return response;
     }
 
+    /**
+     * Chat with memory, answering from the knowledge base: the turn's retrieved context goes into the prompt but
+     * only the question itself is kept in memory; a turn without relevant context is plain conversation
+     */
+    public KnowledgeChatResponse chatWithKnowledge(String sessionId, String userMessage, Integer maxResults) {
+        log.debug("Conversational RAG - session {}, user message of {} chars", sessionId, userMessage.length());
+        SessionWorkingSet.Lookup lookup = ragService.retrieveInSession(sessionId, userMessage, maxResults);
+        List<String> sources = RagService.texts(lookup.retrieval());
+
+        ChatMemory chatMemory = chatMemoryProvider.get(sessionId);
+        List<ChatMessage> messages = inSession(sessionId, () -> {
+            chatMemory.add(UserMessage.from(userMessage));
+            return new ArrayList<>(chatMemory.messages());
+        });
+        if (!sources.isEmpty()) {
+            messages.set(messages.size() - 1,
+                    RagService.contextAndQuestion(String.join("\n\n", sources), userMessage));
+            messages.addFirst(RagService.ANSWER_INSTRUCTIONS);
+        }
+
+        String response = llmScheduler.execute(() -> chatLanguageModel.generate(messages)).content().text();
+        inSession(sessionId, () -> chatMemory.add(AiMessage.from(response)));
+        return new KnowledgeChatResponse(response, sources, lookup.retrieval().k(), lookup.local());
+    }
+
     /**
      * Clear conversation memory
      */
     public void clearMemory() {
-        log.info("Clearing conversation memory");
-        chatMemory.clear();
+        clearMemory(DEFAULT_SESSION);
+    }
+
+    public void clearMemory(String sessionId) {
+        log.info("Clearing conversation memory of session {}", sessionId);
+        inSession(sessionId, () -> chatMemoryProvider.get(sessionId).clear());
+        ragService.forgetSession(sessionId);
     }
 
     /**
      * Get current conversation history size
      */
     public int getConversationSize() {
-        return chatMemory.messages().size();
+        return getConversationSize(DEFAULT_SESSION);
+    }
+
+    public int getConversationSize(String sessionId) {
+        return chatMemoryProvider.get(sessionId).messages().size();
+    }
+
+    private <T> T inSession(String sessionId, Supplier<T> update) {
+        ReentrantLock lock = sessionLocks[Math.floorMod(sessionId.hashCode(), LOCK_STRIPES)];
+        lock.lock();
+        try {
+            return update.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void inSession(String sessionId, Runnable update) {
+        inSession(sessionId, () -> {
+            update.run();
+            return null;
+        });
+    }
+
+    private static ReentrantLock[] newLocks() {
+        ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
     }
+
+    /**
+     * Answer with the context used, its retrieval depth and whether it came from the session's working set
+     */
+    public record KnowledgeChatResponse(String response, List<String> sources, int k, boolean fromWorkingSet) {}
 }
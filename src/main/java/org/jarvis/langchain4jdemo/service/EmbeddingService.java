@@ -2,22 +2,37 @@ package org.jarvis.langchain4jdemo.service;
 
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.deadline.RequestDeadline;
+import org.jarvis.langchain4jdemo.document.DocumentManifest;
+import org.jarvis.langchain4jdemo.document.TokenAwareDocumentSplitter;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBase;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.jarvis.langchain4jdemo.tracing.RequestTracing;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
  * Service demonstrating embeddings and vector search
  * Feature: Store and retrieve information using semantic similarity
+ * Every call works on the caller's namespace (see KnowledgeBases); searches never see other namespaces
  */
 @Service
 @RequiredArgsConstructor
@@ -25,7 +40,10 @@ import java.util.stream.Collectors;
 public class EmbeddingService {
 
     private final EmbeddingModel embeddingModel;
-    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final KnowledgeBases knowledgeBases;
+    private final DocumentSplitter documentSplitter;
+    private final MeterRegistry meterRegistry;
+    private final MemoryAccountant memoryAccountant;
 
     /**
      * Add text to the embedding store
@@ -36,7 +54,8 @@ public class EmbeddingService {
         TextSegment segment = TextSegment.from(text);
         Embedding embedding = embeddingModel.embed(segment).content();
 
-        embeddingStore.add(embedding, segment);
+        KnowledgeBase knowledgeBase = knowledgeBases.current();
+        addAll(knowledgeBase, List.of(embedding), List.of(segment));
         log.info("Text embedded and stored successfully");
     }
 
@@ -46,11 +65,9 @@ public class EmbeddingService {
     public void addDocuments(List<String> texts) {
         log.info("Adding {} documents to embedding store", texts.size());
 
-        for (int i = 0; i < texts.size(); i++) {
-            TextSegment segment = TextSegment.from(texts.get(i));
-            Embedding embedding = embeddingModel.embed(segment).content();
-            embeddingStore.add(embedding, segment);
-        }
+        List<TextSegment> segments = texts.stream().map(TextSegment::from).toList();
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        addAll(knowledgeBases.current(), embeddings, segments);
 
         log.info("All documents embedded and stored successfully");
     }
@@ -59,11 +76,24 @@ public class EmbeddingService {
      * Search for similar text using semantic similarity
      */
     public List<String> searchSimilar(String query, int maxResults) {
-        log.info("Searching for similar texts to: {}", query);
+        log.debug("Searching for similar texts: {} chars", query == null ? 0 : query.length());
 
-        Embedding queryEmbedding = embeddingModel.embed(query).content();
-        List<EmbeddingMatch<TextSegment>> matches =
-            embeddingStore.findRelevant(queryEmbedding, maxResults);
+        Optional<KnowledgeBase> knowledgeBase = knowledgeBases.currentIfExists();
+        if (knowledgeBase.isEmpty()) {
+            return List.of();
+        }
+        knowledgeBase.get().recordQuery();
+        EmbeddingStore<TextSegment> embeddingStore = knowledgeBase.get().getStore();
+        Embedding queryEmbedding;
+        RequestDeadline.check("embed");
+        try (RequestTracing.Scope ignored = RequestTracing.span("embed")) {
+            queryEmbedding = embeddingModel.embed(query).content();
+        }
+        List<EmbeddingMatch<TextSegment>> matches;
+        RequestDeadline.check("retrieve");
+        try (RequestTracing.Scope ignored = RequestTracing.span("retrieve")) {
+            matches = embeddingStore.findRelevant(queryEmbedding, maxResults);
+        }
 
         log.info("Found {} relevant matches", matches.size());
 
@@ -71,12 +101,52 @@ public class EmbeddingService {
                 .map(match -> {
                     String text = match.embedded().text();
                     double score = match.score();
-                    log.info("Match score: {}, Text: {}", score, text.substring(0, Math.min(50, text.length())));
+                    log.debug("Match score: {}, {} chars", score, text.length());
                     return text;
                 })
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Search many queries at once
+     * All queries are embedded in one embedAll call; a flat store scores them together in blocked tiles,
+     * other stores fall back to one search per query
+     */
+    public List<List<ScoredText>> searchSimilarBatch(List<String> queries, int maxResults) {
+        log.info("Batch search for {} queries", queries.size());
+
+        Optional<KnowledgeBase> knowledgeBase = knowledgeBases.currentIfExists();
+        if (knowledgeBase.isEmpty()) {
+            return queries.stream().map(query -> List.<ScoredText>of()).toList();
+        }
+        knowledgeBase.get().recordQuery();
+        EmbeddingStore<TextSegment> embeddingStore = knowledgeBase.get().getStore();
+        List<TextSegment> querySegments = queries.stream().map(TextSegment::from).toList();
+        List<Embedding> queryEmbeddings;
+        RequestDeadline.check("embed");
+        try (RequestTracing.Scope ignored = RequestTracing.span("embed")) {
+            queryEmbeddings = embeddingModel.embedAll(querySegments).content();
+        }
+
+        List<List<EmbeddingMatch<TextSegment>>> matches;
+        RequestDeadline.check("retrieve");
+        try (RequestTracing.Scope ignored = RequestTracing.span("retrieve")) {
+            if (embeddingStore instanceof FlatEmbeddingStore flatStore) {
+                matches = flatStore.searchBatch(queryEmbeddings, maxResults, 0.0);
+            } else {
+                matches = queryEmbeddings.stream()
+                        .map(embedding -> embeddingStore.findRelevant(embedding, maxResults))
+                        .toList();
+            }
+        }
+
+        return matches.stream()
+                .map(perQuery -> perQuery.stream()
+                        .map(match -> new ScoredText(match.embedded() != null ? match.embedded().text() : null, match.score()))
+                        .toList())
+                .toList();
+    }
+
     /**
      * Split long document into chunks and add to store
      */
@@ -84,19 +154,127 @@ public class EmbeddingService {
         log.info("Processing long document of length: {}", document.length());
 
         Document doc = Document.from(document);
-        DocumentSplitter splitter = DocumentSplitters.recursive(300, 50);
-
-        List<TextSegment> segments = splitter.split(doc);
+        List<TextSegment> segments = documentSplitter.split(doc);
         log.info("Document split into {} segments", segments.size());
 
-        for (TextSegment segment : segments) {
-            Embedding embedding = embeddingModel.embed(segment).content();
-            embeddingStore.add(embedding, segment);
-        }
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        addAll(knowledgeBases.current(), embeddings, segments);
 
         log.info("Long document processed and stored successfully");
     }
 
+    /**
+     * Index a new version of a source document, re-embedding only chunks whose content changed
+     * 1. Split at paragraph-anchored boundaries and hash the new version
+     * 2. Keep chunks whose hash is already in the manifest at the same position
+     * 3. Re-add chunks that only moved with their stored vector (flat store) so their index is current
+     * 4. Embed and add new or changed chunks in one batch
+     * 5. Remove chunks that no longer appear, or were re-added at their new position
+     */
+    public SyncResult syncDocument(String documentId, String text) {
+        KnowledgeBase knowledgeBase = knowledgeBases.current();
+        Map<String, DocumentManifest> manifests = knowledgeBase.getManifests();
+        DocumentManifest manifest = manifests.computeIfAbsent(documentId, DocumentManifest::new);
+        synchronized (manifest) {
+            if (manifests.get(documentId) != manifest) {
+                // Removed while we waited for the lock; start over with a fresh manifest
+                return syncDocument(documentId, text);
+            }
+            Document doc = Document.from(text, Metadata.from("document_id", documentId));
+            List<TextSegment> segments = documentSplitter instanceof TokenAwareDocumentSplitter splitter
+                    ? splitter.splitAnchored(doc)
+                    : documentSplitter.split(doc);
+
+            Map<String, Deque<String>> previous = manifest.idsByHash();
+            Map<String, Integer> previousPositions = manifest.positionsById();
+            FlatEmbeddingStore flatStore = knowledgeBase.getStore() instanceof FlatEmbeddingStore flat ? flat : null;
+            List<DocumentManifest.Chunk> chunks = new ArrayList<>(segments.size());
+            List<TextSegment> added = new ArrayList<>();
+            List<Embedding> addedEmbeddings = new ArrayList<>();
+            List<Integer> addedPositions = new ArrayList<>();
+            List<TextSegment> changed = new ArrayList<>();
+            List<String> stale = new ArrayList<>();
+            int unchanged = 0;
+            int moved = 0;
+
+            for (TextSegment segment : segments) {
+                String hash = DocumentManifest.hash(segment.text());
+                Deque<String> reusable = previous.get(hash);
+                String previousId = reusable != null ? reusable.pollFirst() : null;
+                if (previousId != null && previousPositions.get(previousId) == chunks.size()) {
+                    chunks.add(new DocumentManifest.Chunk(hash, previousId));
+                    unchanged++;
+                    continue;
+                }
+                segment.metadata().put("chunk_hash", hash);
+                Optional<Embedding> storedEmbedding = previousId != null && flatStore != null
+                        ? flatStore.embedding(previousId)
+                        : Optional.empty();
+                if (previousId != null) {
+                    stale.add(previousId);
+                }
+                addedPositions.add(chunks.size());
+                chunks.add(null);
+                added.add(segment);
+                if (storedEmbedding.isPresent()) {
+                    addedEmbeddings.add(storedEmbedding.get());
+                    moved++;
+                } else {
+                    addedEmbeddings.add(null);
+                    changed.add(segment);
+                }
+            }
+
+            if (!changed.isEmpty()) {
+                Iterator<Embedding> embeddings = embeddingModel.embedAll(changed).content().iterator();
+                addedEmbeddings.replaceAll(embedding -> embedding != null ? embedding : embeddings.next());
+            }
+            if (!added.isEmpty()) {
+                List<String> ids = addAll(knowledgeBase, addedEmbeddings, added);
+                for (int i = 0; i < ids.size(); i++) {
+                    String hash = added.get(i).metadata().getString("chunk_hash");
+                    chunks.set(addedPositions.get(i), new DocumentManifest.Chunk(hash, ids.get(i)));
+                }
+            }
+
+            previous.values().forEach(stale::addAll);
+            if (!stale.isEmpty()) {
+                knowledgeBase.remove(stale);
+            }
+
+            manifest.replace(chunks);
+            meterRegistry.counter("embedding.sync.chunks", "result", "unchanged").increment(unchanged);
+            meterRegistry.counter("embedding.sync.chunks", "result", "moved").increment(moved);
+            meterRegistry.counter("embedding.sync.chunks", "result", "embedded").increment(changed.size());
+            meterRegistry.counter("embedding.sync.chunks", "result", "removed").increment(stale.size() - moved);
+            log.info("Synced document {} v{}: {} chunks, {} unchanged, {} moved, {} embedded, {} removed",
+                    documentId, manifest.getVersion(), chunks.size(), unchanged, moved, changed.size(),
+                    stale.size() - moved);
+
+            return new SyncResult(documentId, manifest.getVersion(), chunks.size(), unchanged, moved, changed.size(),
+                    stale.size() - moved);
+        }
+    }
+
+    /**
+     * Remove every chunk of a synced document from the store
+     */
+    public Optional<SyncResult> removeDocument(String documentId) {
+        Optional<KnowledgeBase> knowledgeBase = knowledgeBases.currentIfExists();
+        DocumentManifest manifest = knowledgeBase.map(kb -> kb.getManifests().remove(documentId)).orElse(null);
+        if (manifest == null) {
+            return Optional.empty();
+        }
+        synchronized (manifest) {
+            List<String> ids = manifest.embeddingIds();
+            if (!ids.isEmpty()) {
+                knowledgeBase.get().remove(ids);
+            }
+            log.info("Removed document {} ({} chunks)", documentId, ids.size());
+            return Optional.of(new SyncResult(documentId, manifest.getVersion(), 0, 0, 0, 0, ids.size()));
+        }
+    }
+
     /**
      * Get embedding for a text (useful for debugging)
      */
@@ -104,4 +282,36 @@ public class EmbeddingService {
         Embedding embedding = embeddingModel.embed(text).content();
         return embedding.vector();
     }
+
+    /**
+     * Reserve quota for the segments, then add them to the namespace's store
+     */
+    private List<String> addAll(KnowledgeBase knowledgeBase, List<Embedding> embeddings, List<TextSegment> segments) {
+        reserveCapacity(knowledgeBase, embeddings, segments);
+        return knowledgeBase.add(embeddings, segments);
+    }
+
+    /**
+     * Reject the insert with QuotaExceededException before it can push the namespace over its quota
+     * or all namespaces together over memory.quota.embedding-store
+     */
+    private void reserveCapacity(KnowledgeBase knowledgeBase, List<Embedding> embeddings, List<TextSegment> segments) {
+        long bytes = 0;
+        for (int i = 0; i < embeddings.size(); i++) {
+            bytes += FlatEmbeddingStore.estimateRowBytes(embeddings.get(i).dimension(), segments.get(i));
+        }
+        knowledgeBase.reserve(bytes);
+        memoryAccountant.reserve(MemoryAccountant.EMBEDDING_STORE, bytes);
+    }
+
+    /**
+     * A matched text with its relevance score
+     */
+    public record ScoredText(String text, double score) {}
+
+    /**
+     * Outcome of a document sync: how many chunks were kept, moved without re-embedding, (re-)embedded and removed
+     */
+    public record SyncResult(String documentId, int version, int totalChunks,
+                             int unchanged, int moved, int embedded, int removed) {}
 }
@@ -1,123 +1,191 @@
 package org.jarvis.langchain4jdemo.service;
 
 import dev.langchain4j.data.embedding.Embedding;
-import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingMatch;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.deadline.RequestDeadline;
+import org.jarvis.langchain4jdemo.generation.ChatModelProvider;
+import org.jarvis.langchain4jdemo.job.LlmScheduler;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBase;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.jarvis.langchain4jdemo.retrieval.AdaptiveRetriever;
+import org.jarvis.langchain4jdemo.retrieval.SessionWorkingSet;
+import org.jarvis.langchain4jdemo.tracing.RequestTracing;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 /**
  * Service demonstrating RAG (Retrieval Augmented Generation)
  * Feature: Answer questions based on custom knowledge base
+ * Context is retrieved from the caller's namespace only (see KnowledgeBases)
+ * Prompts send the fixed instructions first as a system message, followed by the varying context and question,
+ * so the model server can reuse its cached prompt prefix across requests
+ * Conversations retrieve through {@link #retrieveInSession}, which tries the session's working set first
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class RagService {
 
-    private final ChatLanguageModel chatLanguageModel;
+    static final SystemMessage ANSWER_INSTRUCTIONS = SystemMessage.from("""
+            Answer the question using the context provided with it.
+            If the answer is not in the context, say "I don't know based on the provided information."
+            """);
+
+    private static final SystemMessage SOURCES_INSTRUCTIONS = SystemMessage.from(
+            "Answer the question using the context provided with it.");
+
+    private final ChatModelProvider chatModelProvider;
     private final EmbeddingModel embeddingModel;
-    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final KnowledgeBases knowledgeBases;
+    private final LlmScheduler llmScheduler;
+    private final AdaptiveRetriever adaptiveRetriever;
+    private final SessionWorkingSet sessionWorkingSet;
 
     /**
      * Answer a question using RAG
-     * 1. Find relevant context from embedding store
+     * 1. Find relevant context from embedding store (adaptive k, capped by maxResults when given)
      * 2. Create prompt with context
      * 3. Generate answer using LLM
      */
-    public String answerWithContext(String question, int maxResults) {
-        log.info("RAG query: {}", question);
+    public RagResponse answerWithContext(String question, Integer maxResults) {
+        log.debug("RAG query: {} chars", question == null ? 0 : question.length());
 
         // Step 1: Find relevant context
-        Embedding questionEmbedding = embeddingModel.embed(question).content();
-        List<EmbeddingMatch<TextSegment>> relevantMatches =
-            embeddingStore.findRelevant(questionEmbedding, maxResults);
+        AdaptiveRetriever.Retrieval retrieval = retrieve(question, maxResults);
 
-        if (relevantMatches.isEmpty()) {
+        if (retrieval.matches().isEmpty()) {
             log.warn("No relevant context found for question");
-            return "I don't have enough information to answer this question. Please add relevant documents first.";
+            return new RagResponse(
+                "I don't have enough information to answer this question. Please add relevant documents first.",
+                List.of(), 0, List.of()
+            );
         }
 
-        // Step 2: Build context from relevant segments
-        String context = relevantMatches.stream()
-                .map(match -> match.embedded().text())
-                .collect(Collectors.joining("\n\n"));
-
-        log.info("Found {} relevant segments", relevantMatches.size());
-        log.debug("Context: {}", context.substring(0, Math.min(200, context.length())));
+        UserMessage prompt;
+        try (RequestTracing.Scope ignored = RequestTracing.span("prompt")) {
+            // Step 2: Build context from relevant segments
+            String context = String.join("\n\n", texts(retrieval));
 
-        // Step 3: Create prompt with context
-        String prompt = String.format("""
-                Based on the following context, answer the question.
-                If the answer is not in the context, say "I don't know based on the provided information."
-
-                Context:
-                %s
-
-                Question: %s
+            log.info("Found {} relevant segments", retrieval.k());
+            log.debug("Context: {} chars", context.length());
 
-                Answer:
-                """, context, question);
+            // Step 3: Create prompt: fixed instructions first, then the varying context and question
+            prompt = contextAndQuestion(context, question);
+        }
 
         // Step 4: Generate answer
-        String answer = chatLanguageModel.generate(prompt);
+        String answer = llmScheduler.execute(() -> chatModelProvider.forEndpoint("rag")
+                .generate(ANSWER_INSTRUCTIONS, prompt).content().text());
         log.info("RAG answer generated successfully");
 
-        return answer;
+        return new RagResponse(answer, List.of(), retrieval.k(), retrieval.scores());
     }
 
     /**
      * Answer with context and show sources
      */
-    public RagResponse answerWithSources(String question, int maxResults) {
-        log.info("RAG query with sources: {}", question);
+    public RagResponse answerWithSources(String question, Integer maxResults) {
+        log.debug("RAG query with sources: {} chars", question == null ? 0 : question.length());
 
         // Find relevant context
-        Embedding questionEmbedding = embeddingModel.embed(question).content();
-        List<EmbeddingMatch<TextSegment>> relevantMatches =
-            embeddingStore.findRelevant(questionEmbedding, maxResults);
+        AdaptiveRetriever.Retrieval retrieval = retrieve(question, maxResults);
 
-        if (relevantMatches.isEmpty()) {
+        if (retrieval.matches().isEmpty()) {
             return new RagResponse(
                 "I don't have enough information to answer this question.",
-                List.of()
+                List.of(), 0, List.of()
             );
         }
 
-        // Extract context and sources
-        List<String> sources = relevantMatches.stream()
-                .map(match -> match.embedded().text())
-                .toList();
+        List<String> sources;
+        UserMessage prompt;
+        try (RequestTracing.Scope ignored = RequestTracing.span("prompt")) {
+            // Extract context and sources
+            sources = texts(retrieval);
+
+            String context = String.join("\n\n", sources);
+
+            // Create prompt
+            prompt = contextAndQuestion(context, question);
+        }
+
+        // Generate answer
+        String answer = llmScheduler.execute(() -> chatModelProvider.forEndpoint("rag-sources")
+                .generate(SOURCES_INSTRUCTIONS, prompt).content().text());
+
+        return new RagResponse(answer, sources, retrieval.k(), retrieval.scores());
+    }
 
-        String context = String.join("\n\n", sources);
+    /**
+     * Retrieve context for a turn of a conversation in the caller's namespace; the question is still embedded,
+     * but a follow-up close to the session's recent context is answered from its working set without a search
+     */
+    public SessionWorkingSet.Lookup retrieveInSession(String sessionId, String question, Integer maxResults) {
+        Optional<KnowledgeBase> knowledgeBase = knowledgeBases.currentIfExists();
+        if (knowledgeBase.isEmpty()) {
+            return new SessionWorkingSet.Lookup(new AdaptiveRetriever.Retrieval(List.of(), 0, "no-namespace"), false);
+        }
+        knowledgeBase.get().recordQuery();
+        Embedding questionEmbedding = embed(question);
+        RequestDeadline.check("retrieve");
+        try (RequestTracing.Scope ignored = RequestTracing.span("retrieve")) {
+            return sessionWorkingSet.retrieve(knowledgeBase.get().getName(), sessionId, questionEmbedding, maxResults,
+                    () -> adaptiveRetriever.retrieve(knowledgeBase.get().getStore(), questionEmbedding, maxResults));
+        }
+    }
 
-        // Create prompt
-        String prompt = String.format("""
-                Based on the following context, answer the question.
+    /**
+     * Forget the working set of a session in the caller's namespace
+     */
+    public void forgetSession(String sessionId) {
+        sessionWorkingSet.forget(KnowledgeBases.currentNamespace(), sessionId);
+    }
 
+    private AdaptiveRetriever.Retrieval retrieve(String question, Integer maxResults) {
+        Optional<KnowledgeBase> knowledgeBase = knowledgeBases.currentIfExists();
+        if (knowledgeBase.isEmpty()) {
+            return new AdaptiveRetriever.Retrieval(List.of(), 0, "no-namespace");
+        }
+        knowledgeBase.get().recordQuery();
+        Embedding questionEmbedding = embed(question);
+        RequestDeadline.check("retrieve");
+        try (RequestTracing.Scope ignored = RequestTracing.span("retrieve")) {
+            return adaptiveRetriever.retrieve(knowledgeBase.get().getStore(), questionEmbedding, maxResults);
+        }
+    }
+
+    private Embedding embed(String question) {
+        RequestDeadline.check("embed");
+        try (RequestTracing.Scope ignored = RequestTracing.span("embed")) {
+            return embeddingModel.embed(question).content();
+        }
+    }
+
+    static UserMessage contextAndQuestion(String context, String question) {
+        return UserMessage.from(String.format("""
                 Context:
                 %s
 
                 Question: %s
 
                 Answer:
-                """, context, question);
-
-        // Generate answer
-        String answer = chatLanguageModel.generate(prompt);
+                """, context, question));
+    }
 
-        return new RagResponse(answer, sources);
+    static List<String> texts(AdaptiveRetriever.Retrieval retrieval) {
+        return retrieval.matches().stream()
+                .map(match -> match.embedded().text())
+                .toList();
     }
 
     /**
-     * Response object containing answer and sources
+     * Response object containing answer, sources, and the retrieval depth chosen with its scores
      */
-    public record RagResponse(String answer, List<String> sources) {}
+    public record RagResponse(String answer, List<String> sources, int k, List<Double> scores) {}
 }
@@ -1,14 +1,20 @@
 package org.jarvis.langchain4jdemo.service;
 
 import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.output.Response;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.audit.LlmAuditLog;
+import org.jarvis.langchain4jdemo.generation.ModelWarmup;
+import org.jarvis.langchain4jdemo.job.LlmScheduler;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Service demonstrating streaming responses from LLM
@@ -20,39 +26,62 @@ import java.util.concurrent.CompletableFuture;
 public class StreamingChatService {
 
     private final StreamingChatLanguageModel streamingChatModel;
+    private final LlmScheduler llmScheduler;
+    private final LlmAuditLog auditLog;
+    private final ModelWarmup modelWarmup;
 
     /**
      * Stream response - useful for long responses
      * Returns a CompletableFuture that completes when streaming is done
      */
     public CompletableFuture<String> streamChat(String message, StreamingResponseCallback handler) {
-        log.info("Streaming chat request: {}", message);
+        log.debug("Streaming chat request of {} chars", message.length());
 
         CompletableFuture<String> future = new CompletableFuture<>();
         StringBuilder fullResponse = new StringBuilder();
+        long start = System.nanoTime();
 
-        streamingChatModel.generate(message, new StreamingResponseHandler<AiMessage>() {
-            @Override
-            public void onNext(String token) {
-                fullResponse.append(token);
-                handler.onToken(token);
-            }
+        // The slot is held until the stream completes or fails, not just until generate() returns
+        LlmScheduler.Permit permit = llmScheduler.acquire();
+        boolean warm = modelWarmup.isWarm();
+        long sent = System.nanoTime();
+        AtomicBoolean awaitingFirstToken = new AtomicBoolean(true);
+        try {
+            streamingChatModel.generate(message, new StreamingResponseHandler<AiMessage>() {
+                @Override
+                public void onNext(String token) {
+                    if (awaitingFirstToken.compareAndSet(true, false)) {
+                        modelWarmup.recordCall("streaming", warm, System.nanoTime() - sent);
+                    }
+                    fullResponse.append(token);
+                    handler.onToken(token);
+                }
 
-            @Override
-            public void onComplete(Response<AiMessage> response) {
-                log.info("Streaming completed. Total length: {}", fullResponse.length());
-                String completeText = fullResponse.toString();
-                handler.onComplete(completeText);
-                future.complete(completeText);
-            }
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    permit.close();
+                    log.info("Streaming completed. Total length: {}", fullResponse.length());
+                    String completeText = fullResponse.toString();
+                    auditLog.record("streaming", List.of(UserMessage.from(message)), completeText,
+                            System.nanoTime() - start, "success");
+                    handler.onComplete(completeText);
+                    future.complete(completeText);
+                }
 
-            @Override
-            public void onError(Throwable error) {
-                log.error("Streaming error: {}", error.getMessage(), error);
-                handler.onError(error);
-                future.completeExceptionally(error);
-            }
-        });
+                @Override
+                public void onError(Throwable error) {
+                    permit.close();
+                    log.error("Streaming error: {}", error.getMessage(), error);
+                    auditLog.record("streaming", List.of(UserMessage.from(message)), error.getMessage(),
+                            System.nanoTime() - start, "error");
+                    handler.onError(error);
+                    future.completeExceptionally(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
 
         return future;
     }
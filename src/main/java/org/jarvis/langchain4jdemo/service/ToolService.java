@@ -1,51 +1,185 @@
 package org.jarvis.langchain4jdemo.service;
 
 import dev.langchain4j.agent.tool.Tool;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.service.AiServices;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.document.WordPieceTokenCounter;
+import org.jarvis.langchain4jdemo.job.LlmScheduler;
+import org.jarvis.langchain4jdemo.kv.InMemoryKeyValueStore;
+import org.jarvis.langchain4jdemo.kv.KeyValueStore;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.quota.QuotaExceededException;
+import org.jarvis.langchain4jdemo.tool.ParallelToolExecutor;
+import org.jarvis.langchain4jdemo.tool.ToolBox;
+import org.jarvis.langchain4jdemo.tool.ToolRegistry;
+import org.jarvis.langchain4jdemo.tracing.RequestTracing;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service demonstrating Tools/Function Calling
  * Feature: LLM can call Java methods to perform actions
+ * Tool calls requested together in one assistant turn run concurrently (see ParallelToolExecutor)
+ *
+ * Each session keeps its conversation in the chat memory store under its own memory id. A turn holds its session's
+ * lock from the user message to the final reply, so tool requests stay next to their results; other sessions
+ * run in parallel.
  */
 @Service
 @Slf4j
 public class ToolService {
 
-    private final Assistant assistant;
-    private final Map<String, String> dataStore = new HashMap<>();
+    public static final String DEFAULT_SESSION = "default";
 
-    public ToolService(ChatLanguageModel chatLanguageModel) {
-        this.assistant = AiServices.builder(Assistant.class)
-                .chatLanguageModel(chatLanguageModel)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
-                .tools(new CalculatorTool(), new WeatherTool(), new DataStoreTool(dataStore))
-                .build();
+    /**
+     * Prefix of the chat memory ids of tool sessions, keeping them apart from conversational chat sessions
+     */
+    private static final String MEMORY_ID_PREFIX = "tools:";
+
+    private final ChatLanguageModel chatLanguageModel;
+    private final ChatMemoryProvider chatMemoryProvider;
+    private final LlmScheduler llmScheduler;
+    private final ParallelToolExecutor toolExecutor;
+    private final ToolBox toolBox;
+    private final ToolRegistry toolRegistry;
+    private final DistributionSummary selectedTools;
+    private final DistributionSummary tokensSaved;
+    private final int maxToolRounds;
+    private final ConcurrentMap<String, SessionLock> sessionLocks = new ConcurrentHashMap<>();
+
+    public ToolService(ChatLanguageModel chatLanguageModel, ChatMemoryProvider chatMemoryProvider,
+                       LlmScheduler llmScheduler, KeyValueStore dataStore,
+                       MemoryAccountant memoryAccountant, ParallelToolExecutor toolExecutor,
+                       EmbeddingModel embeddingModel, MeterRegistry meterRegistry,
+                       @Value("${tools.execution.max-rounds:10}") int maxToolRounds,
+                       @Value("${tools.selection.max-tools:5}") int maxSelectedTools) {
+        this.chatLanguageModel = chatLanguageModel;
+        this.chatMemoryProvider = chatMemoryProvider;
+        this.llmScheduler = llmScheduler;
+        this.toolExecutor = toolExecutor;
+        this.maxToolRounds = maxToolRounds;
+        this.toolBox = toolExecutor.toolBox(new CalculatorTool(), new WeatherTool(), new DataStoreTool(dataStore, memoryAccountant));
+        this.toolRegistry = new ToolRegistry(toolBox, embeddingModel, WordPieceTokenCounter.miniLm(), maxSelectedTools);
+        this.selectedTools = DistributionSummary.builder("llm.tool.selected")
+                .description("Tool schemas sent to the model per message")
+                .register(meterRegistry);
+        this.tokensSaved = DistributionSummary.builder("llm.tool.tokens.saved")
+                .description("Estimated prompt tokens of tool schemas left out per message")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Chat with assistant that has access to tools, in the default session
+     */
+    public ToolChatResponse chatWithTools(String message) {
+        return chatWithTools(DEFAULT_SESSION, message);
+    }
+
+    /**
+     * Chat with assistant that has access to tools, continuing the given session
+     * Only the tools most relevant to the message are offered (tools.selection.max-tools, see ToolRegistry);
+     * calls to other tools named in earlier turns still execute.
+     * Each model call holds a scheduler slot; the slot is released while tools run
+     */
+    public ToolChatResponse chatWithTools(String sessionId, String message) {
+        log.debug("Tool-enabled chat - session {}, message of {} chars", sessionId, length(message));
+        ToolRegistry.Selection selection;
+        try (RequestTracing.Scope ignored = RequestTracing.span("tool-selection")) {
+            selection = toolRegistry.select(message);
+        }
+        selectedTools.record(selection.names().size());
+        tokensSaved.record(selection.tokensSaved());
+        log.info("Offering tools {} of {} (~{} schema tokens saved)", selection.names(), toolRegistry.size(),
+                selection.tokensSaved());
+        String memoryId = MEMORY_ID_PREFIX + sessionId;
+        SessionLock lock = lock(sessionId);
+        try {
+            ChatMemory chatMemory = chatMemoryProvider.get(memoryId);
+            chatMemory.add(UserMessage.from(message));
+            for (int round = 0; round < maxToolRounds; round++) {
+                AiMessage reply = llmScheduler.execute(() ->
+                        chatLanguageModel.generate(chatMemory.messages(), selection.specifications()).content());
+                chatMemory.add(reply);
+                if (!reply.hasToolExecutionRequests()) {
+                    return new ToolChatResponse(reply.text(), selection.names(), selection.schemaTokens(),
+                            selection.tokensSaved());
+                }
+                toolExecutor.executeAll(toolBox, reply.toolExecutionRequests(), memoryId).forEach(chatMemory::add);
+            }
+        } finally {
+            unlock(sessionId, lock);
+        }
+        throw new IllegalStateException("Tool calling did not finish within " + maxToolRounds + " rounds");
+    }
+
+    /**
+     * Clear the tool conversation of a session
+     */
+    public void clearMemory(String sessionId) {
+        log.info("Clearing tool conversation of session {}", sessionId);
+        SessionLock lock = lock(sessionId);
+        try {
+            chatMemoryProvider.get(MEMORY_ID_PREFIX + sessionId).clear();
+        } finally {
+            unlock(sessionId, lock);
+        }
     }
 
     /**
-     * Chat with assistant that has access to tools
+     * Take the session's lock, creating it for the first waiter; the holder count is only changed inside compute
      */
-    public String chatWithTools(String message) {
-        log.info("Tool-enabled chat: {}", message);
-        return assistant.chat(message);
+    private SessionLock lock(String sessionId) {
+        SessionLock lock = sessionLocks.compute(sessionId, (id, existing) -> {
+            SessionLock held = existing == null ? new SessionLock() : existing;
+            held.holders++;
+            return held;
+        });
+        lock.lock();
+        return lock;
     }
 
     /**
-     * Assistant interface with tools
+     * Release the session's lock, forgetting it once no turn holds or waits for it
      */
-    interface Assistant {
-        String chat(String message);
+    private void unlock(String sessionId, SessionLock lock) {
+        lock.unlock();
+        sessionLocks.computeIfPresent(sessionId, (id, held) -> --held.holders == 0 ? null : held);
     }
 
+    /**
+     * A session's lock with the number of turns holding or waiting for it
+     */
+    private static final class SessionLock extends ReentrantLock {
+        private int holders;
+    }
+
+    /**
+     * Length of a model- or user-supplied argument, which is logged instead of its value
+     */
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * The reply with the tools offered for it and the estimated prompt tokens of their schemas and of those left out
+     */
+    public record ToolChatResponse(String response, List<String> tools, int toolSchemaTokens,
+                                   int toolSchemaTokensSaved) {}
+
     /**
      * Calculator Tool - performs mathematical calculations
      */
@@ -53,25 +187,25 @@ public class ToolService {
 
         @Tool("Adds two numbers")
         public double add(double a, double b) {
-            log.info("Tool called: add({}, {})", a, b);
+            log.debug("Tool called: add");
             return a + b;
         }
 
         @Tool("Subtracts second number from first")
         public double subtract(double a, double b) {
-            log.info("Tool called: subtract({}, {})", a, b);
+            log.debug("Tool called: subtract");
             return a - b;
         }
 
         @Tool("Multiplies two numbers")
         public double multiply(double a, double b) {
-            log.info("Tool called: multiply({}, {})", a, b);
+            log.debug("Tool called: multiply");
             return a * b;
         }
 
         @Tool("Divides first number by second")
         public double divide(double a, double b) {
-            log.info("Tool called: divide({}, {})", a, b);
+            log.debug("Tool called: divide");
             if (b == 0) {
                 throw new IllegalArgumentException("Cannot divide by zero");
             }
@@ -80,7 +214,7 @@ public class ToolService {
 
         @Tool("Calculates the square root of a number")
         public double sqrt(double number) {
-            log.info("Tool called: sqrt({})", number);
+            log.debug("Tool called: sqrt");
             return Math.sqrt(number);
         }
     }
@@ -92,47 +226,75 @@ public class ToolService {
 
         @Tool("Gets the current weather for a city")
         public String getCurrentWeather(String city) {
-            log.info("Tool called: getCurrentWeather({})", city);
+            log.debug("Tool called: getCurrentWeather({} chars)", length(city));
             // Simulated weather data
             return String.format("Weather in %s: Sunny, 22°C, Humidity 65%%", city);
         }
 
         @Tool("Gets the current date and time")
         public String getCurrentDateTime() {
-            log.info("Tool called: getCurrentDateTime()");
+            log.debug("Tool called: getCurrentDateTime");
             return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         }
     }
 
     /**
      * Data Store Tool - stores and retrieves data
+     * Backed by a shared KeyValueStore; key listings are paged so large stores never produce unbounded output
      */
     public static class DataStoreTool {
 
-        private final Map<String, String> store;
+        static final int PAGE_SIZE = 50;
+
+        private final KeyValueStore store;
+        private final MemoryAccountant memoryAccountant;
 
-        public DataStoreTool(Map<String, String> store) {
+        public DataStoreTool(KeyValueStore store, MemoryAccountant memoryAccountant) {
             this.store = store;
+            this.memoryAccountant = memoryAccountant;
         }
 
         @Tool("Stores a value with a key")
         public String store(String key, String value) {
-            log.info("Tool called: store({}, {})", key, value);
+            log.debug("Tool called: store({} chars, {} chars)", length(key), length(value));
+            try {
+                memoryAccountant.reserve(MemoryAccountant.DATA_STORE, InMemoryKeyValueStore.entryBytes(key, value));
+            } catch (QuotaExceededException e) {
+                log.warn("Data store write rejected: {}", e.getMessage());
+                return "Not stored, the data store is full: " + key;
+            }
             store.put(key, value);
             return "Stored successfully: " + key;
         }
 
         @Tool("Retrieves a value by key")
         public String retrieve(String key) {
-            log.info("Tool called: retrieve({})", key);
-            String value = store.get(key);
-            return value != null ? value : "Key not found: " + key;
+            log.debug("Tool called: retrieve({} chars)", length(key));
+            return store.get(key).orElse("Key not found: " + key);
+        }
+
+        @Tool("Deletes a value by key")
+        public String delete(String key) {
+            log.debug("Tool called: delete({} chars)", length(key));
+            return store.delete(key) ? "Deleted: " + key : "Key not found: " + key;
         }
 
-        @Tool("Lists all stored keys")
+        @Tool("Lists stored keys (first page)")
         public String listKeys() {
-            log.info("Tool called: listKeys()");
-            return "Stored keys: " + String.join(", ", store.keySet());
+            log.debug("Tool called: listKeys");
+            return formatPage(store.list("", null, PAGE_SIZE));
+        }
+
+        @Tool("Lists stored keys starting with a prefix; pass the last key of the previous page as afterKey, or an empty string for the first page")
+        public String listKeysWithPrefix(String prefix, String afterKey) {
+            log.debug("Tool called: listKeysWithPrefix({} chars, {} chars)", length(prefix), length(afterKey));
+            String after = afterKey == null || afterKey.isBlank() ? null : afterKey;
+            return formatPage(store.list(prefix == null ? "" : prefix, after, PAGE_SIZE));
+        }
+
+        private String formatPage(KeyValueStore.KeyPage page) {
+            String keys = "Stored keys: " + String.join(", ", page.keys());
+            return page.nextCursor() == null ? keys : keys + " (more keys after: " + page.nextCursor() + ")";
         }
     }
 }
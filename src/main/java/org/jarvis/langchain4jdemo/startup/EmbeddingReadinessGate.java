@@ -0,0 +1,77 @@
+package org.jarvis.langchain4jdemo.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.embedding.LazyEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the application out of rotation (readiness REFUSING_TRAFFIC) until the embedding model has been
+ * warmed up in the background, when embedding.startup-mode=background
+ *
+ * Both transitions check and publish under the gate's monitor, so a warm-up that completes while the application
+ * becomes ready cannot be followed by a stale REFUSING_TRAFFIC. Readiness events are delivered on the publishing
+ * thread, which already holds the (reentrant) monitor.
+ */
+@Component
+@Slf4j
+public class EmbeddingReadinessGate {
+
+    private final LazyEmbeddingModel embeddingModel;
+    private final ApplicationContext applicationContext;
+    private final StartupPhaseReporter startupPhaseReporter;
+    private final boolean enabled;
+
+    private boolean warm;
+    private boolean applicationReady;
+
+    public EmbeddingReadinessGate(LazyEmbeddingModel embeddingModel,
+                                  ApplicationContext applicationContext,
+                                  StartupPhaseReporter startupPhaseReporter,
+                                  @Value("${embedding.startup-mode:background}") String startupMode) {
+        this.embeddingModel = embeddingModel;
+        this.applicationContext = applicationContext;
+        this.startupPhaseReporter = startupPhaseReporter;
+        this.enabled = "background".equalsIgnoreCase(startupMode);
+        this.warm = !enabled;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void startWarmUp() {
+        if (!enabled) {
+            startupPhaseReporter.embeddingModelReady(embeddingModel.getLoadTime());
+            return;
+        }
+        log.info("Warming up embedding model in the background; readiness is held until it completes");
+        embeddingModel.warmUpAsync().whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("Embedding model warm-up failed; it will be loaded on first use", error);
+            }
+            startupPhaseReporter.embeddingModelReady(embeddingModel.getLoadTime());
+            synchronized (this) {
+                warm = true;
+                if (applicationReady) {
+                    AvailabilityChangeEvent.publish(applicationContext, ReadinessState.ACCEPTING_TRAFFIC);
+                }
+            }
+        });
+    }
+
+    @EventListener
+    public synchronized void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return;
+        }
+        applicationReady = true;
+        if (!warm) {
+            AvailabilityChangeEvent.publish(applicationContext, ReadinessState.REFUSING_TRAFFIC);
+        } else {
+            startupPhaseReporter.acceptingTraffic();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.jarvis.langchain4jdemo.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports how long each startup phase took, as startup.phase metrics and one log line per phase
+ * Phases: jvm (JVM start to main), context (main to context refreshed), runners (refreshed to ready),
+ * embedding-model (ONNX model load), traffic (JVM start to accepting traffic)
+ */
+@Component
+@Slf4j
+public class StartupPhaseReporter {
+
+    private static volatile long mainEnteredAtMillis;
+
+    private final MeterRegistry meterRegistry;
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final Map<String, Duration> phases = new LinkedHashMap<>();
+    private volatile long refreshedAtMillis;
+    private volatile boolean acceptingTrafficReported;
+
+    public StartupPhaseReporter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Called first thing in main() so JVM boot time can be separated from Spring startup
+     */
+    public static void markMainEntered() {
+        mainEnteredAtMillis = System.currentTimeMillis();
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void contextRefreshed() {
+        if (refreshedAtMillis != 0) {
+            return;
+        }
+        refreshedAtMillis = System.currentTimeMillis();
+        long mainEntered = mainEnteredAtMillis != 0 ? mainEnteredAtMillis : jvmStartMillis;
+        record("jvm", Duration.ofMillis(mainEntered - jvmStartMillis));
+        record("context", Duration.ofMillis(refreshedAtMillis - mainEntered));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void applicationReady() {
+        record("runners", Duration.ofMillis(System.currentTimeMillis() - refreshedAtMillis));
+        record("ready", Duration.ofMillis(System.currentTimeMillis() - jvmStartMillis));
+    }
+
+    public void embeddingModelReady(Duration loadTime) {
+        if (loadTime != null) {
+            record("embedding-model", loadTime);
+        }
+    }
+
+    public synchronized void acceptingTraffic() {
+        if (!acceptingTrafficReported) {
+            acceptingTrafficReported = true;
+            record("traffic", Duration.ofMillis(System.currentTimeMillis() - jvmStartMillis));
+        }
+    }
+
+    /**
+     * Durations recorded so far, in the order the phases completed
+     */
+    public synchronized Map<String, Duration> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    private synchronized void record(String phase, Duration duration) {
+        if (phases.putIfAbsent(phase, duration) == null) {
+            TimeGauge.builder("startup.phase", () -> phases.get(phase).toMillis(), TimeUnit.MILLISECONDS)
+                    .tag("phase", phase)
+                    .description("Duration of a startup phase")
+                    .register(meterRegistry);
+            log.info("Startup phase '{}' took {} ms", phase, duration.toMillis());
+        }
+    }
+}
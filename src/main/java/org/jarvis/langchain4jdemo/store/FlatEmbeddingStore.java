@@ -0,0 +1,650 @@
+package org.jarvis.langchain4jdemo.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+import org.jarvis.langchain4jdemo.quota.MemoryEstimates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory embedding store that keeps all vectors in one contiguous, row-major float matrix
+ *
+ * Rows are L2-normalized on insert so cosine similarity is a plain dot product. Single-query search scans
+ * the matrix row by row; {@link #searchBatch} scores many queries in cache-sized query x corpus tiles so each
+ * corpus tile is pulled from memory once per block of queries instead of once per query.
+ * Scores follow InMemoryEmbeddingStore: relevance = (cosine + 1) / 2.
+ *
+ * With a {@link Projection}, single-query search runs in two stages: a scan of a second, reduced-dimension
+ * matrix shortlists maxResults x rescoreFactor rows, which are then rescored exactly with their full vectors.
+ * The first pass reads projection.dimension() / dimension of the bytes a full scan reads; the full vectors
+ * stay in memory for rescoring. Until the projection is ready (e.g. a PCA not yet fitted) search is exact,
+ * as is {@link #searchBatch}. A projection that has to be fitted is fitted, and the rows projected, on a copy
+ * of the matrix outside the lock by the add that reaches its fit rows; the result is swapped in under the
+ * write lock, so searches keep running meanwhile.
+ *
+ * With a {@link SegmentTextStore}, segment texts are kept compressed off-heap and only metadata stays on the
+ * heap for filters. Texts are decoded for the matches a search returns, or, with
+ * {@link #search(EmbeddingSearchRequest, boolean)} and {@link #withText}, only for the matches finally used.
+ */
+public class FlatEmbeddingStore implements EmbeddingStore<TextSegment>, MemoryAccounted {
+
+    /** Corpus rows per tile; 128 x 384 floats is ~192 KB, which stays resident in L2 while queries sweep it */
+    private static final int ROW_TILE = 128;
+    /** Queries scored together against each row (register blocking in {@link VectorMath#dot4}) */
+    private static final int QUERY_BLOCK = 4;
+    private static final int UUID_LENGTH = 36;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> rowsById = new HashMap<>();
+    private final Projection projection;
+    private final int rescoreFactor;
+    private final SegmentTextStore texts;
+
+    private int dimension = -1;
+    private float[] matrix = new float[0];
+    private String[] ids = new String[0];
+    /** Segments of the rows without a text store; with one, metadata and textHandles hold them instead */
+    private TextSegment[] segments = new TextSegment[0];
+    private Metadata[] metadata = new Metadata[0];
+    private long[] textHandles = new long[0];
+    private int size;
+    /** Estimated heap of the ids, segments (or metadata) and id index entries of live rows, maintained on every change */
+    private long rowPayloadBytes;
+    /** Projected rows, row-major with projection.dimension() columns; empty until the projection is ready */
+    private float[] reduced = new float[0];
+    private boolean projected;
+    /** Set while an add fits the projection outside the lock, so only one does */
+    private boolean fitting;
+    /** Incremented on every change to the rows, so a projection computed outside the lock can tell it is stale */
+    private long changes;
+    /** Incremented by removeAll(), which discards a fit in progress */
+    private long clears;
+
+    public FlatEmbeddingStore() {
+        this(null, 1, null);
+    }
+
+    public FlatEmbeddingStore(Projection projection, int rescoreFactor) {
+        this(projection, rescoreFactor, null);
+    }
+
+    /**
+     * @param projection    reduced-dimension first pass, or null for exact search only
+     * @param rescoreFactor shortlist size of the first pass as a multiple of maxResults
+     * @param texts         compressed storage for segment texts, or null to keep segments on the heap
+     */
+    public FlatEmbeddingStore(Projection projection, int rescoreFactor, SegmentTextStore texts) {
+        this.projection = projection;
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+        this.texts = texts;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), segment == null ? null : List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        List<String> newIds = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            newIds.add(UUID.randomUUID().toString());
+        }
+        addAll(newIds, embeddings, embedded);
+        return newIds;
+    }
+
+    /**
+     * Add (or replace) entries under caller-chosen ids
+     */
+    public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (newIds.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and segments must have the same size");
+        }
+        FitSample sample = null;
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                put(newIds.get(i), embeddings.get(i).vector(), embedded != null ? embedded.get(i) : null);
+            }
+            if (projection != null && !projected && dimension > projection.dimension()) {
+                if (projection.isReady()) {
+                    projectAll();
+                } else if (!fitting && size >= projection.fitRows()) {
+                    fitting = true;
+                    sample = new FitSample(Arrays.copyOf(matrix, size * dimension), size, dimension, changes, clears);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (sample != null) {
+            fit(sample);
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            idsToRemove.forEach(this::removeRow);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        lock.writeLock().lock();
+        try {
+            for (int row = size - 1; row >= 0; row--) {
+                Metadata rowMetadata = metadataOf(row);
+                if (rowMetadata != null && filter.test(rowMetadata)) {
+                    removeRow(ids[row]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            rowsById.clear();
+            Arrays.fill(ids, 0, size, null);
+            Arrays.fill(segments, 0, Math.min(size, segments.length), null);
+            Arrays.fill(metadata, 0, Math.min(size, metadata.length), null);
+            if (texts != null) {
+                texts.clear();
+            }
+            size = 0;
+            rowPayloadBytes = 0;
+            if (projection != null) {
+                projection.reset();
+                reduced = new float[0];
+                projected = false;
+            }
+            changes++;
+            clears++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return search(request, true);
+    }
+
+    /**
+     * Search, leaving embedded null in the matches unless withText; resolve the ones kept with {@link #withText}
+     */
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request, boolean withText) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            float[] query = normalizedQuery(request.queryEmbedding());
+            float minCosine = (float) (2 * request.minScore() - 1);
+            Filter filter = request.filter();
+            if (projected && (long) request.maxResults() * rescoreFactor < size) {
+                return new EmbeddingSearchResult<>(toMatches(twoStageSearch(query, minCosine, filter,
+                        request.maxResults()), withText));
+            }
+            TopK top = new TopK(request.maxResults());
+            for (int row = 0; row < size; row++) {
+                if (filter != null && !matches(filter, row)) {
+                    continue;
+                }
+                float cosine = VectorMath.dot(query, 0, matrix, row * dimension, dimension);
+                if (cosine >= minCosine && cosine > top.threshold()) {
+                    top.offer(cosine, row);
+                }
+            }
+            return new EmbeddingSearchResult<>(toMatches(top, withText));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The given matches with their segments filled in; matches whose row was removed since are dropped
+     */
+    public List<EmbeddingMatch<TextSegment>> withText(List<EmbeddingMatch<TextSegment>> matches) {
+        lock.readLock().lock();
+        try {
+            List<EmbeddingMatch<TextSegment>> resolved = new ArrayList<>(matches.size());
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                Integer row = rowsById.get(match.embeddingId());
+                if (row != null) {
+                    resolved.add(new EmbeddingMatch<>(match.score(), match.embeddingId(), match.embedding(),
+                            segmentOf(row)));
+                }
+            }
+            return resolved;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Shortlist by the projected rows, then rescore the shortlist with the full vectors
+     */
+    private TopK twoStageSearch(float[] query, float minCosine, Filter filter, int maxResults) {
+        int reducedDimension = projection.dimension();
+        float[] reducedQuery = new float[reducedDimension];
+        projection.project(query, 0, dimension, reducedQuery, 0);
+        TopK shortlist = new TopK(maxResults * rescoreFactor);
+        for (int row = 0; row < size; row++) {
+            if (filter != null && !matches(filter, row)) {
+                continue;
+            }
+            float approximate = VectorMath.dot(reducedQuery, 0, reduced, row * reducedDimension, reducedDimension);
+            if (approximate > shortlist.threshold()) {
+                shortlist.offer(approximate, row);
+            }
+        }
+        int[] candidates = shortlist.sortedRows(new float[shortlist.size()]);
+        TopK top = new TopK(maxResults);
+        for (int row : candidates) {
+            float cosine = VectorMath.dot(query, 0, matrix, row * dimension, dimension);
+            if (cosine >= minCosine && cosine > top.threshold()) {
+                top.offer(cosine, row);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Top-k matches for every query, scored in query x corpus tiles
+     */
+    public List<List<EmbeddingMatch<TextSegment>>> searchBatch(List<Embedding> queryEmbeddings, int maxResults, double minScore) {
+        lock.readLock().lock();
+        try {
+            int queryCount = queryEmbeddings.size();
+            List<List<EmbeddingMatch<TextSegment>>> results = new ArrayList<>(queryCount);
+            if (size == 0 || queryCount == 0) {
+                queryEmbeddings.forEach(q -> results.add(List.of()));
+                return results;
+            }
+
+            // Pad the query matrix to a multiple of QUERY_BLOCK; padded rows are zero and never reported
+            int paddedCount = (queryCount + QUERY_BLOCK - 1) / QUERY_BLOCK * QUERY_BLOCK;
+            float[] queries = new float[paddedCount * dimension];
+            for (int q = 0; q < queryCount; q++) {
+                System.arraycopy(normalizedQuery(queryEmbeddings.get(q)), 0, queries, q * dimension, dimension);
+            }
+
+            float minCosine = (float) (2 * minScore - 1);
+            TopK[] tops = new TopK[queryCount];
+            for (int q = 0; q < queryCount; q++) {
+                tops[q] = new TopK(maxResults);
+            }
+
+            float[] scores = new float[QUERY_BLOCK];
+            for (int tileStart = 0; tileStart < size; tileStart += ROW_TILE) {
+                int tileEnd = Math.min(size, tileStart + ROW_TILE);
+                for (int qb = 0; qb < paddedCount; qb += QUERY_BLOCK) {
+                    for (int row = tileStart; row < tileEnd; row++) {
+                        VectorMath.dot4(queries, qb * dimension, (qb + 1) * dimension, (qb + 2) * dimension,
+                                (qb + 3) * dimension, matrix, row * dimension, dimension, scores);
+                        for (int j = 0; j < QUERY_BLOCK && qb + j < queryCount; j++) {
+                            float cosine = scores[j];
+                            if (cosine >= minCosine && cosine > tops[qb + j].threshold()) {
+                                tops[qb + j].offer(cosine, row);
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (TopK top : tops) {
+                results.add(toMatches(top, true));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stored (normalized) vector of an entry, if present
+     */
+    public Optional<Embedding> embedding(String id) {
+        lock.readLock().lock();
+        try {
+            Integer row = rowsById.get(id);
+            return row == null ? Optional.empty()
+                    : Optional.of(Embedding.from(Arrays.copyOfRange(matrix, row * dimension, (row + 1) * dimension)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Visit every row under the read lock, so the visitor sees a consistent view; it must not call back
+     * into this store
+     */
+    public void forEachRow(RowVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < size; row++) {
+                visitor.visit(ids[row], matrix, row * dimension, dimension, segmentOf(row));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Allocated matrix and row arrays (including spare capacity) plus the estimated size of live rows and
+     * the compressed texts, off-heap pages included
+     */
+    @Override
+    public long approximateBytes() {
+        lock.readLock().lock();
+        try {
+            return 4L * (matrix.length + reduced.length) + 8L * textHandles.length
+                    + (long) MemoryEstimates.REFERENCE * (ids.length + segments.length + metadata.length)
+                    + rowPayloadBytes + (texts != null ? texts.bytes() : 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Live compressed texts and their bytes, or zeros without a text store
+     */
+    public TextStats textStats() {
+        lock.readLock().lock();
+        try {
+            return texts == null ? new TextStats(0, 0, 0) : new TextStats(texts.size(), texts.bytes(), texts.rawBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimated heap one new row of the given dimension adds, for quota checks before inserting
+     */
+    public static long estimateRowBytes(int dimension, TextSegment segment) {
+        return 4L * dimension + rowBytes(UUID_LENGTH, segment);
+    }
+
+    private static long rowBytes(int idLength, TextSegment segment) {
+        // id string, its HashMap entry and boxed row number, and the segment
+        return MemoryEstimates.STRING_OVERHEAD + 2L * idLength + MemoryEstimates.MAP_ENTRY
+                + MemoryEstimates.OBJECT_HEADER + MemoryEstimates.of(segment);
+    }
+
+    /**
+     * Heap estimate of a stored row's id and segment; with a text store only its metadata is on the heap
+     */
+    private long storedRowBytes(int row) {
+        return texts == null ? rowBytes(ids[row].length(), segments[row])
+                : rowBytes(ids[row].length(), null) + MemoryEstimates.of(metadata[row]);
+    }
+
+    private void put(String id, float[] vector, TextSegment segment) {
+        if (dimension < 0) {
+            dimension = vector.length;
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        changes++;
+        Integer existing = rowsById.get(id);
+        int row = existing != null ? existing : size;
+        if (existing == null) {
+            ensureCapacity(size + 1);
+            size++;
+            rowsById.put(id, row);
+        } else {
+            rowPayloadBytes -= storedRowBytes(row);
+            releaseText(row);
+        }
+        System.arraycopy(vector, 0, matrix, row * dimension, dimension);
+        VectorMath.normalize(matrix, row * dimension, dimension);
+        if (projected) {
+            projection.project(matrix, row * dimension, dimension, reduced, row * projection.dimension());
+        }
+        ids[row] = id;
+        if (texts == null) {
+            segments[row] = segment;
+        } else {
+            metadata[row] = segment != null ? segment.metadata() : null;
+            textHandles[row] = segment != null ? texts.append(segment.text()) : SegmentTextStore.NO_TEXT;
+        }
+        rowPayloadBytes += storedRowBytes(row);
+    }
+
+    /**
+     * Remove a row by moving the last row into its slot, keeping the matrix dense
+     */
+    private void removeRow(String id) {
+        Integer row = rowsById.remove(id);
+        if (row == null) {
+            return;
+        }
+        changes++;
+        rowPayloadBytes -= storedRowBytes(row);
+        releaseText(row);
+        int last = size - 1;
+        if (row != last) {
+            System.arraycopy(matrix, last * dimension, matrix, row * dimension, dimension);
+            if (projected) {
+                int reducedDimension = projection.dimension();
+                System.arraycopy(reduced, last * reducedDimension, reduced, row * reducedDimension, reducedDimension);
+            }
+            ids[row] = ids[last];
+            if (texts == null) {
+                segments[row] = segments[last];
+            } else {
+                metadata[row] = metadata[last];
+                textHandles[row] = textHandles[last];
+            }
+            rowsById.put(ids[row], row);
+        }
+        ids[last] = null;
+        if (texts == null) {
+            segments[last] = null;
+        } else {
+            metadata[last] = null;
+        }
+        size--;
+    }
+
+    private void releaseText(int row) {
+        if (texts != null && textHandles[row] != SegmentTextStore.NO_TEXT) {
+            texts.remove(textHandles[row]);
+        }
+    }
+
+    private Metadata metadataOf(int row) {
+        if (texts != null) {
+            return metadata[row];
+        }
+        return segments[row] != null ? segments[row].metadata() : null;
+    }
+
+    /**
+     * The row's segment, decoding its text when it is compressed
+     */
+    private TextSegment segmentOf(int row) {
+        if (texts == null) {
+            return segments[row];
+        }
+        long handle = textHandles[row];
+        return handle == SegmentTextStore.NO_TEXT ? null : TextSegment.from(texts.text(handle), metadata[row]);
+    }
+
+    private boolean matches(Filter filter, int row) {
+        Metadata rowMetadata = metadataOf(row);
+        return rowMetadata != null && filter.test(rowMetadata);
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(rows, Math.max(16, ids.length + (ids.length >> 1)));
+        matrix = Arrays.copyOf(matrix, capacity * dimension);
+        if (projected) {
+            reduced = Arrays.copyOf(reduced, capacity * projection.dimension());
+        }
+        ids = Arrays.copyOf(ids, capacity);
+        if (texts == null) {
+            segments = Arrays.copyOf(segments, capacity);
+        } else {
+            metadata = Arrays.copyOf(metadata, capacity);
+            textHandles = Arrays.copyOf(textHandles, capacity);
+        }
+    }
+
+    /**
+     * Start using the ready projection: project every row; called under the write lock
+     */
+    private void projectAll() {
+        reduced = project(matrix, size, dimension, ids.length);
+        projected = true;
+    }
+
+    /**
+     * Project rows of a row-major matrix into a new reduced matrix with room for capacity rows
+     */
+    private float[] project(float[] source, int rows, int sourceDimension, int capacity) {
+        int reducedDimension = projection.dimension();
+        float[] projectedRows = new float[capacity * reducedDimension];
+        for (int row = 0; row < rows; row++) {
+            projection.project(source, row * sourceDimension, sourceDimension, projectedRows, row * reducedDimension);
+        }
+        return projectedRows;
+    }
+
+    /**
+     * Fit the projection on a copy of the rows and project them, without the lock; then swap the result in,
+     * or project the current rows again if they changed meanwhile. A removeAll() in between discards the fit.
+     */
+    private void fit(FitSample sample) {
+        boolean ready = false;
+        float[] projectedRows = null;
+        try {
+            ready = projection.fit(sample.matrix(), sample.rows(), sample.dimension());
+            if (ready) {
+                projectedRows = project(sample.matrix(), sample.rows(), sample.dimension(), sample.rows());
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                fitting = false;
+                if (sample.clears() != clears) {
+                    projection.reset();
+                } else if (ready && !projected) {
+                    if (sample.changes() == changes) {
+                        reduced = Arrays.copyOf(projectedRows, ids.length * projection.dimension());
+                        projected = true;
+                    } else {
+                        projectAll();
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private float[] normalizedQuery(Embedding embedding) {
+        float[] query = embedding.vector().clone();
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + query.length);
+        }
+        VectorMath.normalize(query, 0, dimension);
+        return query;
+    }
+
+    private List<EmbeddingMatch<TextSegment>> toMatches(TopK top, boolean withText) {
+        float[] scores = new float[top.size()];
+        int[] rows = top.sortedRows(scores);
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            int row = rows[i];
+            float[] vector = Arrays.copyOfRange(matrix, row * dimension, (row + 1) * dimension);
+            matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(scores[i]), ids[row],
+                    Embedding.from(vector), withText ? segmentOf(row) : null));
+        }
+        return matches;
+    }
+
+    /**
+     * A copy of the rows to fit the projection on, with the change counters it was taken at
+     */
+    private record FitSample(float[] matrix, int rows, int dimension, long changes, long clears) {}
+
+    /**
+     * rawBytes counts the UTF-8 texts before compression
+     */
+    public record TextStats(int segments, long bytes, long rawBytes) {}
+
+    /**
+     * Receives one row: its normalized vector is matrix[offset, offset + dimension); segment may be null
+     */
+    @FunctionalInterface
+    public interface RowVisitor {
+        void visit(String id, float[] matrix, int offset, int dimension, TextSegment segment);
+    }
+}
@@ -0,0 +1,152 @@
+package org.jarvis.langchain4jdemo.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.SplittableRandom;
+
+/**
+ * Projection onto the top principal directions of the corpus, learned once it holds fitRows rows
+ *
+ * The directions are the leading eigenvectors of the uncentered second-moment matrix X^T X / n, found by
+ * subspace iteration; without centering, dot products of projections approximate the full dot products
+ * rather than those of mean-shifted vectors. Rows beyond fitRows do not refine the fit.
+ */
+@Slf4j
+public class PcaProjection implements Projection {
+
+    private static final int ITERATIONS = 30;
+
+    private final int dimension;
+    private final int fitRows;
+    /** dimension x inputDimension, row-major: component c is components[c * inputDimension, ...) */
+    private volatile float[] components;
+
+    public PcaProjection(int dimension, int fitRows) {
+        this.dimension = dimension;
+        this.fitRows = fitRows;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public boolean isReady() {
+        return components != null;
+    }
+
+    @Override
+    public int fitRows() {
+        return fitRows;
+    }
+
+    @Override
+    public boolean fit(float[] matrix, int rows, int inputDimension) {
+        if (components != null) {
+            return true;
+        }
+        if (rows < fitRows || inputDimension <= dimension) {
+            return false;
+        }
+        long start = System.nanoTime();
+        double[] moment = secondMoment(matrix, rows, inputDimension);
+        double[] basis = topEigenvectors(moment, inputDimension, dimension);
+        float[] fitted = new float[dimension * inputDimension];
+        for (int i = 0; i < fitted.length; i++) {
+            fitted[i] = (float) basis[i];
+        }
+        this.components = fitted;
+        log.info("Fitted {}-dimension PCA projection on {} rows in {} ms", dimension, rows,
+                (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        components = null;
+    }
+
+    @Override
+    public void project(float[] source, int sourceOffset, int inputDimension, float[] target, int targetOffset) {
+        float[] basis = components;
+        for (int c = 0; c < dimension; c++) {
+            target[targetOffset + c] = VectorMath.dot(basis, c * inputDimension, source, sourceOffset, inputDimension);
+        }
+    }
+
+    private static double[] secondMoment(float[] matrix, int rows, int d) {
+        double[] moment = new double[d * d];
+        for (int row = 0; row < rows; row++) {
+            int offset = row * d;
+            for (int i = 0; i < d; i++) {
+                double xi = matrix[offset + i];
+                for (int j = i; j < d; j++) {
+                    moment[i * d + j] += xi * matrix[offset + j];
+                }
+            }
+        }
+        for (int i = 0; i < d; i++) {
+            for (int j = i; j < d; j++) {
+                moment[i * d + j] /= rows;
+                moment[j * d + i] = moment[i * d + j];
+            }
+        }
+        return moment;
+    }
+
+    /**
+     * Subspace iteration: repeatedly multiply a basis by the symmetric matrix and re-orthonormalize it
+     * Returns k orthonormal vectors of length d, row-major
+     */
+    private static double[] topEigenvectors(double[] matrix, int d, int k) {
+        SplittableRandom random = new SplittableRandom(42);
+        double[] basis = new double[k * d];
+        for (int i = 0; i < basis.length; i++) {
+            basis[i] = random.nextGaussian();
+        }
+        orthonormalize(basis, k, d);
+        double[] next = new double[k * d];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (int c = 0; c < k; c++) {
+                for (int i = 0; i < d; i++) {
+                    double sum = 0;
+                    for (int j = 0; j < d; j++) {
+                        sum += matrix[i * d + j] * basis[c * d + j];
+                    }
+                    next[c * d + i] = sum;
+                }
+            }
+            orthonormalize(next, k, d);
+            double[] swap = basis;
+            basis = next;
+            next = swap;
+        }
+        return basis;
+    }
+
+    /**
+     * Modified Gram-Schmidt over the k rows of length d
+     */
+    private static void orthonormalize(double[] vectors, int k, int d) {
+        for (int c = 0; c < k; c++) {
+            for (int p = 0; p < c; p++) {
+                double dot = 0;
+                for (int i = 0; i < d; i++) {
+                    dot += vectors[c * d + i] * vectors[p * d + i];
+                }
+                for (int i = 0; i < d; i++) {
+                    vectors[c * d + i] -= dot * vectors[p * d + i];
+                }
+            }
+            double norm = 0;
+            for (int i = 0; i < d; i++) {
+                norm += vectors[c * d + i] * vectors[c * d + i];
+            }
+            norm = Math.sqrt(norm);
+            for (int i = 0; i < d; i++) {
+                vectors[c * d + i] = norm > 0 ? vectors[c * d + i] / norm : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.jarvis.langchain4jdemo.store;
+
+/**
+ * Keeps the first dimensions of each vector (Matryoshka-style truncation); needs no fitting, but only models
+ * trained for truncation concentrate their signal in the leading dimensions
+ */
+public class PrefixProjection implements Projection {
+
+    private final int dimension;
+
+    public PrefixProjection(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public int fitRows() {
+        return 0;
+    }
+
+    @Override
+    public boolean fit(float[] matrix, int rows, int inputDimension) {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void project(float[] source, int sourceOffset, int inputDimension, float[] target, int targetOffset) {
+        System.arraycopy(source, sourceOffset, target, targetOffset, Math.min(dimension, inputDimension));
+    }
+}
@@ -0,0 +1,39 @@
+package org.jarvis.langchain4jdemo.store;
+
+/**
+ * Linear map of normalized embeddings to fewer dimensions whose dot products approximate the full ones,
+ * used by {@link FlatEmbeddingStore} for its first-pass scan
+ */
+public interface Projection {
+
+    /**
+     * Output dimension
+     */
+    int dimension();
+
+    /**
+     * Whether {@link #project} may be called; a projection that learns from the corpus is not ready until fitted
+     */
+    boolean isReady();
+
+    /**
+     * Rows the store must hold before {@link #fit} can make the projection ready
+     */
+    int fitRows();
+
+    /**
+     * Offer the store's current rows (row-major, normalized); returns whether the projection is ready afterwards
+     * Called without the store's lock, on a copy of its rows
+     */
+    boolean fit(float[] matrix, int rows, int inputDimension);
+
+    /**
+     * Forget what was learned from the corpus, e.g. when the store is emptied
+     */
+    void reset();
+
+    /**
+     * Write the projection of source[sourceOffset, sourceOffset + inputDimension) to target[targetOffset, ...)
+     */
+    void project(float[] source, int sourceOffset, int inputDimension, float[] target, int targetOffset);
+}
@@ -0,0 +1,214 @@
+package org.jarvis.langchain4jdemo.store;
+
+import io.micrometer.core.instrument.Timer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Segment texts kept compressed in off-heap pages and decoded one text at a time, on demand
+ *
+ * Texts are appended to an on-heap open block as UTF-8; once it reaches blockBytes it is deflated into its own
+ * direct ByteBuffer page. Every page of a store is compressed against one preset dictionary taken from its
+ * first block, so even short chunks compress well: chunks of one corpus repeat its vocabulary and boilerplate.
+ * A text is addressed by a handle (page << 32 | entry); decoding inflates its page only up to the end of that
+ * entry. A page is released once all its entries are removed; space of removed entries in a page that still
+ * has live ones is not reclaimed. Direct memory is bounded by -XX:MaxDirectMemorySize (default: max heap).
+ *
+ * Not thread-safe for writes: the owning store appends and removes under its write lock, while any number of
+ * readers may decode concurrently.
+ */
+public class SegmentTextStore {
+
+    public static final long NO_TEXT = -1;
+
+    /** Deflate only uses the last 32 KB of a preset dictionary */
+    private static final int MAX_DICTIONARY_BYTES = 32 * 1024;
+
+    private final int blockBytes;
+    private final int dictionaryBytes;
+    private final Timer decodeTimer;
+    /** Sealed pages by index; null once all their entries are removed */
+    private final List<Page> pages = new ArrayList<>();
+
+    private byte[] dictionary;
+    private byte[] open = new byte[0];
+    private int openLength;
+    /** End offset in the open block of each entry */
+    private int[] openEnds = new int[16];
+    private int openCount;
+    private int openLive;
+    private long pageBytes;
+    private long rawBytes;
+    private int live;
+
+    /**
+     * @param decodeTimer records the latency of each decode, or null
+     */
+    public SegmentTextStore(int blockBytes, int dictionaryBytes, Timer decodeTimer) {
+        this.blockBytes = Math.max(1024, blockBytes);
+        this.dictionaryBytes = Math.clamp(dictionaryBytes, 0, MAX_DICTIONARY_BYTES);
+        this.decodeTimer = decodeTimer;
+    }
+
+    public long append(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (openLength > 0 && openLength + bytes.length > blockBytes) {
+            seal();
+        }
+        if (openLength + bytes.length > open.length) {
+            open = Arrays.copyOf(open, Math.max(openLength + bytes.length, Math.min(blockBytes, 2 * open.length + 1024)));
+        }
+        if (openCount == openEnds.length) {
+            openEnds = Arrays.copyOf(openEnds, 2 * openCount);
+        }
+        System.arraycopy(bytes, 0, open, openLength, bytes.length);
+        openLength += bytes.length;
+        openEnds[openCount] = openLength;
+        rawBytes += bytes.length;
+        live++;
+        openLive++;
+        return ((long) pages.size() << 32) | openCount++;
+    }
+
+    public String text(long handle) {
+        int pageIndex = (int) (handle >>> 32);
+        int entry = (int) handle;
+        if (pageIndex == pages.size()) {
+            int start = entry == 0 ? 0 : openEnds[entry - 1];
+            return new String(open, start, openEnds[entry] - start, StandardCharsets.UTF_8);
+        }
+        long startNanos = System.nanoTime();
+        Page page = pages.get(pageIndex);
+        int start = entry == 0 ? 0 : page.ends[entry - 1];
+        int end = page.ends[entry];
+        byte[] raw = new byte[end];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(page.data.duplicate());
+            int inflated = 0;
+            while (inflated < end) {
+                int read = inflater.inflate(raw, inflated, end - inflated);
+                if (read == 0) {
+                    if (!inflater.needsDictionary()) {
+                        throw new IllegalStateException("Text page " + pageIndex + " ended early");
+                    }
+                    inflater.setDictionary(dictionary);
+                }
+                inflated += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt text page " + pageIndex, e);
+        } finally {
+            inflater.end();
+        }
+        String text = new String(raw, start, end - start, StandardCharsets.UTF_8);
+        if (decodeTimer != null) {
+            decodeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+        return text;
+    }
+
+    public void remove(long handle) {
+        int pageIndex = (int) (handle >>> 32);
+        live--;
+        if (pageIndex == pages.size()) {
+            if (--openLive == 0) {
+                openLength = 0;
+                openCount = 0;
+            }
+            return;
+        }
+        Page page = pages.get(pageIndex);
+        if (--page.live == 0) {
+            pages.set(pageIndex, null);
+            pageBytes -= page.data.capacity() + 4L * page.ends.length;
+        }
+    }
+
+    public void clear() {
+        pages.clear();
+        open = new byte[0];
+        openLength = 0;
+        openCount = 0;
+        openLive = 0;
+        pageBytes = 0;
+        rawBytes = 0;
+        live = 0;
+    }
+
+    /**
+     * Live texts
+     */
+    public int size() {
+        return live;
+    }
+
+    /**
+     * Off-heap pages plus the on-heap open block and entry offsets
+     */
+    public long bytes() {
+        return pageBytes + open.length + 4L * openEnds.length;
+    }
+
+    /**
+     * UTF-8 bytes of all texts ever appended since the last clear, before compression
+     */
+    public long rawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Deflate the open block into a new page; the first block also becomes the dictionary
+     */
+    private void seal() {
+        if (dictionary == null) {
+            dictionary = Arrays.copyOf(open, Math.min(dictionaryBytes, openLength));
+        }
+        Deflater deflater = new Deflater();
+        byte[] compressed = new byte[openLength + openLength / 100 + 64];
+        int length = 0;
+        try {
+            if (dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(open, 0, openLength);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+        } finally {
+            deflater.end();
+        }
+        ByteBuffer data = ByteBuffer.allocateDirect(length).put(compressed, 0, length).flip();
+        Page page = new Page(data.asReadOnlyBuffer(), Arrays.copyOf(openEnds, openCount), openLive);
+        pages.add(page);
+        pageBytes += length + 4L * page.ends.length;
+        openLength = 0;
+        openCount = 0;
+        openLive = 0;
+    }
+
+    private static final class Page {
+
+        private final ByteBuffer data;
+        private final int[] ends;
+        private int live;
+
+        private Page(ByteBuffer data, int[] ends, int live) {
+            this.data = data;
+            this.ends = ends;
+            this.live = live;
+        }
+    }
+}
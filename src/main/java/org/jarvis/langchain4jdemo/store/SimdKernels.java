@@ -0,0 +1,64 @@
+package org.jarvis.langchain4jdemo.store;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels; only loaded when {@link VectorMath#SIMD} is true
+ */
+final class SimdKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private SimdKernels() {
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static void dot4(float[] queries, int q0, int q1, int q2, int q3,
+                     float[] matrix, int rowOffset, int length, float[] out) {
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        FloatVector acc2 = FloatVector.zero(SPECIES);
+        FloatVector acc3 = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector m = FloatVector.fromArray(SPECIES, matrix, rowOffset + i);
+            acc0 = FloatVector.fromArray(SPECIES, queries, q0 + i).fma(m, acc0);
+            acc1 = FloatVector.fromArray(SPECIES, queries, q1 + i).fma(m, acc1);
+            acc2 = FloatVector.fromArray(SPECIES, queries, q2 + i).fma(m, acc2);
+            acc3 = FloatVector.fromArray(SPECIES, queries, q3 + i).fma(m, acc3);
+        }
+        float s0 = acc0.reduceLanes(VectorOperators.ADD);
+        float s1 = acc1.reduceLanes(VectorOperators.ADD);
+        float s2 = acc2.reduceLanes(VectorOperators.ADD);
+        float s3 = acc3.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float m = matrix[rowOffset + i];
+            s0 += queries[q0 + i] * m;
+            s1 += queries[q1 + i] * m;
+            s2 += queries[q2 + i] * m;
+            s3 += queries[q3 + i] * m;
+        }
+        out[0] = s0;
+        out[1] = s1;
+        out[2] = s2;
+        out[3] = s3;
+    }
+}
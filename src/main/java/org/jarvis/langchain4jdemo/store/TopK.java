@@ -0,0 +1,104 @@
+package org.jarvis.langchain4jdemo.store;
+
+/**
+ * Fixed-capacity min-heap of (score, row) pairs keeping the k best scores seen, without boxing
+ * k &lt;= 0 keeps nothing
+ */
+final class TopK {
+
+    private final float[] scores;
+    private final int[] rows;
+    private int size;
+
+    TopK(int k) {
+        this.scores = new float[Math.max(0, k)];
+        this.rows = new int[Math.max(0, k)];
+    }
+
+    /**
+     * Lowest score a new candidate must beat to enter, -infinity while the heap is not full, or +infinity when
+     * it keeps nothing
+     */
+    float threshold() {
+        if (scores.length == 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return size < scores.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    void offer(float score, int row) {
+        if (scores.length == 0) {
+            return;
+        }
+        if (size < scores.length) {
+            scores[size] = score;
+            rows[size] = row;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            scores[0] = score;
+            rows[0] = row;
+            siftDown(0);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Rows ordered by descending score; scoresOut receives the matching scores
+     */
+    int[] sortedRows(float[] scoresOut) {
+        int n = size;
+        float[] heapScores = scores.clone();
+        int[] heapRows = rows.clone();
+        int[] result = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            result[i] = heapRows[0];
+            scoresOut[i] = heapScores[0];
+            heapScores[0] = heapScores[i];
+            heapRows[0] = heapRows[i];
+            siftDown(heapScores, heapRows, 0, i);
+        }
+        return result;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                break;
+            }
+            swap(scores, rows, parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        siftDown(scores, rows, index, size);
+    }
+
+    private static void siftDown(float[] scores, int[] rows, int index, int size) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[index] <= scores[smallest]) {
+                return;
+            }
+            swap(scores, rows, index, smallest);
+            index = smallest;
+        }
+    }
+
+    private static void swap(float[] scores, int[] rows, int a, int b) {
+        float s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+        int r = rows[a];
+        rows[a] = rows[b];
+        rows[b] = r;
+    }
+}
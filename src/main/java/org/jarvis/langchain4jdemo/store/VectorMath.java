@@ -0,0 +1,60 @@
+package org.jarvis.langchain4jdemo.store;
+
+/**
+ * Dot-product kernels over row-major float matrices
+ * Uses the Vector API (jdk.incubator.vector) when the module is present at runtime, scalar loops otherwise
+ */
+final class VectorMath {
+
+    static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorMath() {
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return SIMD ? SimdKernels.dot(a, aOffset, b, bOffset, length) : scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Score one matrix row against four query rows at once, so the row is read from memory a single time
+     */
+    static void dot4(float[] queries, int q0, int q1, int q2, int q3,
+                     float[] matrix, int rowOffset, int length, float[] out) {
+        if (SIMD) {
+            SimdKernels.dot4(queries, q0, q1, q2, q3, matrix, rowOffset, length, out);
+            return;
+        }
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        for (int i = 0; i < length; i++) {
+            float m = matrix[rowOffset + i];
+            s0 += queries[q0 + i] * m;
+            s1 += queries[q1 + i] * m;
+            s2 += queries[q2 + i] * m;
+            s3 += queries[q3 + i] * m;
+        }
+        out[0] = s0;
+        out[1] = s1;
+        out[2] = s2;
+        out[3] = s3;
+    }
+
+    static float scalarDot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Normalize a vector to unit length in place so cosine similarity becomes a dot product
+     */
+    static void normalize(float[] vector, int offset, int length) {
+        float norm = (float) Math.sqrt(scalarDot(vector, offset, vector, offset, length));
+        if (norm > 0) {
+            for (int i = 0; i < length; i++) {
+                vector[offset + i] /= norm;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.jarvis.langchain4jdemo.tool;
+
+import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.agent.tool.ToolSpecifications;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.service.tool.DefaultToolExecutor;
+import dev.langchain4j.service.tool.ToolExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.deadline.RequestDeadline;
+import org.jarvis.langchain4jdemo.tracing.RequestTracing;
+import org.jarvis.langchain4jdemo.tracing.Span;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executes the tool calls the model requests in one assistant turn concurrently, one virtual thread per call
+ *
+ * Each call has its own timeout (tools.execution.timeouts.&lt;toolName&gt;, falling back to tools.execution.timeout)
+ * measured from the start of the turn, so a turn takes about as long as its slowest tool rather than the sum.
+ * Waits also end at the request deadline (see RequestDeadline).
+ * Failures and timeouts are returned to the model as tool results instead of failing the whole turn.
+ * Latency is recorded per tool as llm.tool.duration{tool, outcome}.
+ */
+@Component
+@Slf4j
+public class ParallelToolExecutor implements AutoCloseable {
+
+    private static final String TIMEOUT_PROPERTY_PREFIX = "tools.execution.timeouts.";
+
+    private final Duration defaultTimeout;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tool-", 0).factory());
+    private final Timer turnTimer;
+
+    public ParallelToolExecutor(@Value("${tools.execution.timeout:10s}") Duration defaultTimeout,
+                                Environment environment, MeterRegistry meterRegistry) {
+        this.defaultTimeout = defaultTimeout;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.turnTimer = Timer.builder("llm.tool.turn")
+                .description("Wall-clock time to execute all tool calls of one assistant turn")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Collect the @Tool methods of the given objects together with their specifications and timeouts
+     */
+    public ToolBox toolBox(Object... toolObjects) {
+        List<ToolSpecification> specifications = new ArrayList<>();
+        Map<String, ToolBox.Binding> bindings = new LinkedHashMap<>();
+        for (Object toolObject : toolObjects) {
+            for (Method method : toolObject.getClass().getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(Tool.class)) {
+                    continue;
+                }
+                ToolSpecification specification = ToolSpecifications.toolSpecificationFrom(method);
+                String name = specification.name();
+                if (bindings.containsKey(name)) {
+                    throw new IllegalArgumentException("Duplicate tool name: " + name);
+                }
+                Duration timeout = environment.getProperty(TIMEOUT_PROPERTY_PREFIX + name, Duration.class, defaultTimeout);
+                specifications.add(specification);
+                bindings.put(name, new ToolBox.Binding(new DefaultToolExecutor(toolObject, method), timeout));
+            }
+        }
+        return new ToolBox(List.copyOf(specifications), Map.copyOf(bindings));
+    }
+
+    /**
+     * Run all requests concurrently and return their results in request order
+     */
+    public List<ToolExecutionResultMessage> executeAll(ToolBox toolBox, List<ToolExecutionRequest> requests, Object memoryId) {
+        long turnStart = System.nanoTime();
+        RequestDeadline.check("tools");
+        try (RequestTracing.Scope ignored = RequestTracing.span("tools")) {
+            // Tool threads attach their spans to this turn's span explicitly
+            Span turnSpan = RequestTracing.current();
+            List<Future<String>> futures = new ArrayList<>(requests.size());
+            for (ToolExecutionRequest request : requests) {
+                ToolBox.Binding binding = toolBox.binding(request.name());
+                futures.add(binding == null ? null : executor.submit(() ->
+                        timed(turnSpan, request.name(), binding.executor(), request, memoryId)));
+            }
+            return awaitAll(toolBox, requests, futures, turnStart);
+        }
+    }
+
+    private List<ToolExecutionResultMessage> awaitAll(ToolBox toolBox, List<ToolExecutionRequest> requests,
+                                                      List<Future<String>> futures, long turnStart) {
+        RequestDeadline deadline = RequestDeadline.current();
+        if (requests.size() > 1) {
+            log.info("Executing {} tool calls concurrently", requests.size());
+        }
+
+        List<ToolExecutionResultMessage> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            ToolExecutionRequest request = requests.get(i);
+            Future<String> future = futures.get(i);
+            String result = future == null
+                    ? "Unknown tool: " + request.name()
+                    : await(request.name(), future, toolBox.binding(request.name()).timeout(), turnStart, deadline);
+            results.add(ToolExecutionResultMessage.from(request, result));
+        }
+        turnTimer.record(System.nanoTime() - turnStart, TimeUnit.NANOSECONDS);
+        return results;
+    }
+
+    private String timed(Span parent, String tool, ToolExecutor toolExecutor, ToolExecutionRequest request, Object memoryId) {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try (RequestTracing.Scope ignored = RequestTracing.spanIn(parent, "tool." + tool)) {
+            return toolExecutor.execute(request, memoryId);
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            toolTimer(tool, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String await(String tool, Future<String> future, Duration timeout, long turnStart,
+                         RequestDeadline deadline) {
+        long remaining = turnStart + timeout.toNanos() - System.nanoTime();
+        if (deadline != null) {
+            remaining = Math.min(remaining, deadline.remainingNanos());
+        }
+        try {
+            return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            toolTimer(tool, "timeout").record(timeout);
+            log.warn("Tool {} timed out after {}", tool, timeout);
+            return "Tool " + tool + " timed out after " + timeout.toMillis() + " ms";
+        } catch (ExecutionException e) {
+            log.warn("Tool {} failed: {}", tool, e.getCause().getMessage());
+            return "Tool " + tool + " failed: " + e.getCause().getMessage();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tool " + tool, e);
+        }
+    }
+
+    private Timer toolTimer(String tool, String outcome) {
+        return Timer.builder("llm.tool.duration")
+                .description("Latency of individual tool invocations")
+                .tag("tool", tool)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
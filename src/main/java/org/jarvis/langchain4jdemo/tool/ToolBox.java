@@ -0,0 +1,20 @@
+package org.jarvis.langchain4jdemo.tool;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.service.tool.ToolExecutor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of tools offered to the model: specifications to send, and executors bound by tool name
+ */
+public record ToolBox(List<ToolSpecification> specifications, Map<String, Binding> bindings) {
+
+    public Binding binding(String toolName) {
+        return bindings.get(toolName);
+    }
+
+    public record Binding(ToolExecutor executor, Duration timeout) {}
+}
@@ -0,0 +1,121 @@
+package org.jarvis.langchain4jdemo.tool;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.jarvis.langchain4jdemo.document.TokenCounter;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.springframework.util.function.SingletonSupplier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the tools relevant to a user message, so a turn sends a few tool schemas instead of the whole catalogue
+ *
+ * Each tool's name and description are embedded once, on first use, into a {@link FlatEmbeddingStore}; a message
+ * then gets the maxTools tools whose descriptions are most similar to it. The prompt tokens of each full schema
+ * (with parameters) are estimated with the given counter, to report how many were left out. A catalogue of at most maxTools
+ * tools is sent whole without embedding anything.
+ */
+@Slf4j
+public class ToolRegistry {
+
+    private final ToolBox toolBox;
+    private final EmbeddingModel embeddingModel;
+    private final int maxTools;
+    /** Estimated prompt tokens per tool schema, counted on first use to keep the tokenizer off the startup path */
+    private final SingletonSupplier<Map<String, Integer>> schemaTokens;
+    private volatile FlatEmbeddingStore index;
+
+    public ToolRegistry(ToolBox toolBox, EmbeddingModel embeddingModel, TokenCounter tokenCounter, int maxTools) {
+        this.toolBox = toolBox;
+        this.embeddingModel = embeddingModel;
+        this.maxTools = maxTools;
+        this.schemaTokens = SingletonSupplier.of(() -> {
+            Map<String, Integer> tokens = new HashMap<>();
+            toolBox.specifications().forEach(specification ->
+                    tokens.put(specification.name(), tokenCounter.count(schemaText(specification))));
+            return Map.copyOf(tokens);
+        });
+    }
+
+    /**
+     * The tools to offer for a message, in decreasing relevance
+     */
+    public Selection select(String message) {
+        List<ToolSpecification> all = toolBox.specifications();
+        Map<String, Integer> tokensByTool = schemaTokens.obtain();
+        int totalTokens = tokensByTool.values().stream().mapToInt(Integer::intValue).sum();
+        if (maxTools <= 0 || all.size() <= maxTools) {
+            return new Selection(all, names(all), totalTokens, 0);
+        }
+        Embedding query = embeddingModel.embed(message).content();
+        List<EmbeddingMatch<TextSegment>> matches = index().search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(maxTools)
+                .build()).matches();
+        Map<String, ToolSpecification> byName = new LinkedHashMap<>();
+        all.forEach(specification -> byName.put(specification.name(), specification));
+        List<ToolSpecification> selected = new ArrayList<>(matches.size());
+        int tokens = 0;
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            selected.add(byName.get(match.embeddingId()));
+            tokens += tokensByTool.get(match.embeddingId());
+        }
+        return new Selection(List.copyOf(selected), names(selected), tokens, totalTokens - tokens);
+    }
+
+    public int size() {
+        return toolBox.specifications().size();
+    }
+
+    private FlatEmbeddingStore index() {
+        FlatEmbeddingStore current = index;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (index == null) {
+                List<ToolSpecification> specifications = toolBox.specifications();
+                List<TextSegment> texts = specifications.stream()
+                        .map(specification -> TextSegment.from(descriptionText(specification)))
+                        .toList();
+                FlatEmbeddingStore store = new FlatEmbeddingStore();
+                store.addAll(names(specifications), embeddingModel.embedAll(texts).content(), texts);
+                index = store;
+                log.info("Indexed {} tool descriptions for selection", specifications.size());
+            }
+            return index;
+        }
+    }
+
+    private static String descriptionText(ToolSpecification specification) {
+        return specification.description() != null
+                ? specification.name() + ": " + specification.description()
+                : specification.name();
+    }
+
+    private static String schemaText(ToolSpecification specification) {
+        return specification.parameters() != null
+                ? descriptionText(specification) + " " + specification.parameters()
+                : descriptionText(specification);
+    }
+
+    private static List<String> names(List<ToolSpecification> specifications) {
+        return specifications.stream().map(ToolSpecification::name).toList();
+    }
+
+    /**
+     * schemaTokens is the estimated prompt size of the selected schemas; tokensSaved that of the tools left out
+     */
+    public record Selection(List<ToolSpecification> specifications, List<String> names, int schemaTokens,
+                            int tokensSaved) {}
+}
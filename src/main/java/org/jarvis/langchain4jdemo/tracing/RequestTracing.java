@@ -0,0 +1,75 @@
+package org.jarvis.langchain4jdemo.tracing;
+
+/**
+ * Per-thread request trace: {@link TracingFilter} opens a root span, code under it opens child spans with
+ * {@link #span(String)}; outside a traced request every call is a no-op
+ */
+public final class RequestTracing {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final Scope NOOP = () -> {
+    };
+
+    private RequestTracing() {
+    }
+
+    /**
+     * Innermost open span of the calling thread, or null outside a traced request
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Open a child of the current span until the returned scope is closed
+     */
+    public static Scope span(String name) {
+        return spanIn(CURRENT.get(), name);
+    }
+
+    /**
+     * Open a child of an explicit parent, e.g. one captured before handing work to another thread
+     */
+    public static Scope spanIn(Span parent, String name) {
+        if (parent == null) {
+            return NOOP;
+        }
+        Span child = parent.child(name);
+        if (child == null) {
+            return NOOP;
+        }
+        Span previous = CURRENT.get();
+        CURRENT.set(child);
+        return () -> {
+            child.end();
+            restore(previous);
+        };
+    }
+
+    static Span begin(String name) {
+        Span root = Span.root(name);
+        CURRENT.set(root);
+        return root;
+    }
+
+    static void end(Span root) {
+        root.end();
+        CURRENT.remove();
+    }
+
+    private static void restore(Span previous) {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Ends the span and restores the previous one when closed
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
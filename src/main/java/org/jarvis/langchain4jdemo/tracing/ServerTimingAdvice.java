@@ -0,0 +1,61 @@
+package org.jarvis.langchain4jdemo.tracing;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.Locale;
+
+/**
+ * Adds a Server-Timing header with every span of the request trace, written just before the body
+ *
+ * Each finished span becomes one entry ("llm.rag;dur=812.4"); "total" is the time up to serialization.
+ */
+@ControllerAdvice
+public class ServerTimingAdvice implements ResponseBodyAdvice<Object> {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        Span current = RequestTracing.current();
+        if (current != null) {
+            Span root = current.root();
+            StringBuilder header = new StringBuilder();
+            append(header, root);
+            if (!header.isEmpty()) {
+                header.append(", ");
+            }
+            header.append("total;dur=").append(format(root.durationNanos()));
+            response.getHeaders().add(SERVER_TIMING_HEADER, header.toString());
+        }
+        return body;
+    }
+
+    private static void append(StringBuilder header, Span span) {
+        for (Span child : span.children()) {
+            if (child.isEnded()) {
+                if (!header.isEmpty()) {
+                    header.append(", ");
+                }
+                header.append(child.name()).append(";dur=").append(format(child.durationNanos()));
+            }
+            append(header, child);
+        }
+    }
+
+    private static String format(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,79 @@
+package org.jarvis.langchain4jdemo.tracing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring buffer of the span trees of requests slower than tracing.slow-request-threshold
+ */
+@Component
+public class SlowRequestLog {
+
+    private final long thresholdNanos;
+    private final AtomicReferenceArray<SlowRequest> entries;
+    private final AtomicLong written = new AtomicLong();
+
+    public SlowRequestLog(@Value("${tracing.slow-request-threshold:2s}") Duration threshold,
+                          @Value("${tracing.slow-request-capacity:100}") int capacity) {
+        this.thresholdNanos = threshold.toNanos();
+        this.entries = new AtomicReferenceArray<>(Math.max(1, capacity));
+    }
+
+    public boolean isSlow(Span root) {
+        return root.durationNanos() >= thresholdNanos;
+    }
+
+    public void record(String method, String path, int status, Span root) {
+        SlowRequest request = new SlowRequest(method, path, status, Instant.now(),
+                millis(root.durationNanos()), view(root, root.startNanos()));
+        long slot = written.getAndIncrement();
+        entries.set((int) (slot % entries.length()), request);
+    }
+
+    /**
+     * Captured requests, newest first
+     */
+    public List<SlowRequest> recent() {
+        long end = written.get();
+        long start = Math.max(0, end - entries.length());
+        List<SlowRequest> recent = new ArrayList<>((int) (end - start));
+        for (long i = end - 1; i >= start; i--) {
+            SlowRequest request = entries.get((int) (i % entries.length()));
+            if (request != null) {
+                recent.add(request);
+            }
+        }
+        return recent;
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+    }
+
+    private static SpanView view(Span span, long traceStart) {
+        List<SpanView> children = new ArrayList<>(span.children().size());
+        for (Span child : span.children()) {
+            children.add(view(child, traceStart));
+        }
+        return new SpanView(span.name(), millis(span.startNanos() - traceStart), millis(span.durationNanos()),
+                span.isEnded(), children);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    public record SlowRequest(String method, String path, int status, Instant completedAt, double durationMs,
+                              SpanView trace) {}
+
+    public record SpanView(String name, double offsetMs, double durationMs, boolean ended, List<SpanView> children) {}
+}
@@ -0,0 +1,78 @@
+package org.jarvis.langchain4jdemo.tracing;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timed unit of work within a request; children may be added from other threads (e.g. parallel tool calls)
+ */
+public final class Span {
+
+    /** Upper bound on spans per request so a runaway loop cannot grow a trace without limit */
+    static final int MAX_SPANS_PER_TRACE = 512;
+
+    private final String name;
+    private final long startNanos;
+    private final Span root;
+    private final AtomicInteger spanCount;
+    private final List<Span> children = new CopyOnWriteArrayList<>();
+    private volatile long endNanos = -1;
+
+    private Span(String name, Span root, AtomicInteger spanCount) {
+        this.name = name;
+        this.startNanos = System.nanoTime();
+        this.root = root != null ? root : this;
+        this.spanCount = spanCount;
+    }
+
+    static Span root(String name) {
+        return new Span(name, null, new AtomicInteger(1));
+    }
+
+    /**
+     * Start a child span, or return null once the trace has reached its span limit
+     */
+    Span child(String childName) {
+        if (spanCount.incrementAndGet() > MAX_SPANS_PER_TRACE) {
+            return null;
+        }
+        Span child = new Span(childName, root, spanCount);
+        children.add(child);
+        return child;
+    }
+
+    void end() {
+        if (endNanos < 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Span root() {
+        return root;
+    }
+
+    public boolean isEnded() {
+        return endNanos >= 0;
+    }
+
+    public long startNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Duration so far for spans still running
+     */
+    public long durationNanos() {
+        long end = endNanos;
+        return (end >= 0 ? end : System.nanoTime()) - startNanos;
+    }
+
+    public List<Span> children() {
+        return children;
+    }
+}
@@ -0,0 +1,45 @@
+package org.jarvis.langchain4jdemo.tracing;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Opens a request trace for every /api call and hands slow ones to the {@link SlowRequestLog}
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TracingFilter extends OncePerRequestFilter {
+
+    private final SlowRequestLog slowRequestLog;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !path.startsWith("/api/") || path.startsWith("/api/admin/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Span root = RequestTracing.begin(request.getMethod() + " " + request.getRequestURI());
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestTracing.end(root);
+            if (slowRequestLog.isSlow(root)) {
+                log.warn("Slow request {} {} took {} ms", request.getMethod(), request.getRequestURI(),
+                        root.durationNanos() / 1_000_000);
+                slowRequestLog.record(request.getMethod(), request.getRequestURI(), response.getStatus(), root);
+            }
+        }
+    }
+}
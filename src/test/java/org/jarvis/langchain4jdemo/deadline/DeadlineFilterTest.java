@@ -0,0 +1,37 @@
+package org.jarvis.langchain4jdemo.deadline;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DeadlineFilterTest {
+
+    @Test
+    void parsesMillisecondsSecondsAndMinutes() {
+        assertEquals(Duration.ofMillis(1500), DeadlineFilter.parse("1500"));
+        assertEquals(Duration.ofMillis(1500), DeadlineFilter.parse("1500ms"));
+        assertEquals(Duration.ofSeconds(30), DeadlineFilter.parse(" 30 s "));
+        assertEquals(Duration.ofMinutes(2), DeadlineFilter.parse("2m"));
+    }
+
+    @Test
+    void malformedHeaderIsIgnored() {
+        assertNull(DeadlineFilter.parse(null));
+        assertNull(DeadlineFilter.parse("soon"));
+        assertNull(DeadlineFilter.parse("-5s"));
+        assertNull(DeadlineFilter.parse("1.5s"));
+    }
+
+    @Test
+    void headerTooLargeToRepresentIsIgnored() {
+        // Overflows a long
+        assertNull(DeadlineFilter.parse("99999999999999999999"));
+        // Fits a long, but not as seconds of a Duration
+        assertNull(DeadlineFilter.parse(Long.MAX_VALUE + "m"));
+        // Representable; the filter then caps it at the endpoint default
+        assertEquals(Duration.ofSeconds(Long.MAX_VALUE), DeadlineFilter.parse(Long.MAX_VALUE + "s"));
+    }
+}
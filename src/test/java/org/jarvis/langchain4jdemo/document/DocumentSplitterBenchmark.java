@@ -0,0 +1,86 @@
+package org.jarvis.langchain4jdemo.document;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Throughput and allocation benchmark: DocumentSplitters.recursive(300, 50) vs TokenAwareDocumentSplitter
+ *
+ * Run from the IDE or with:
+ * ./mvnw test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.jarvis.langchain4jdemo.document.DocumentSplitterBenchmark -Dbench.mb=4
+ */
+public class DocumentSplitterBenchmark {
+
+    private static final String[] WORDS = {
+            "embedding", "retrieval", "language", "model", "vector", "store", "segment", "token", "the", "of",
+            "and", "a", "to", "in", "is", "that", "for", "on", "with", "as", "Java", "Spring", "Ollama",
+            "document", "context", "question", "answer", "generation", "augmented", "semantic", "similarity",
+            "throughput", "latency", "allocation", "e.g.", "approximately", "configuration", "2024", "v1.2"
+    };
+
+    public static void main(String[] args) {
+        int megabytes = Integer.getInteger("bench.mb", 4);
+        int iterations = Integer.getInteger("bench.iterations", 10);
+        Document document = Document.from(syntheticText(megabytes * 1024 * 1024, new Random(42)));
+
+        DocumentSplitter recursive = DocumentSplitters.recursive(300, 50);
+        DocumentSplitter tokenAware = new TokenAwareDocumentSplitter(WordPieceTokenCounter.miniLm(), 200, 30);
+
+        System.out.printf("Input: %d chars, %d iterations%n", document.text().length(), iterations);
+        System.out.printf("%-28s %12s %12s %16s %10s%n", "splitter", "MB/s", "ms/op", "alloc MB/op", "segments");
+        run("recursive(300, 50) chars", recursive, document, iterations);
+        run("token-aware(200, 30) tokens", tokenAware, document, iterations);
+    }
+
+    private static void run(String name, DocumentSplitter splitter, Document document, int iterations) {
+        // Warm-up so the JIT has compiled the hot loops before measuring
+        for (int i = 0; i < Math.max(3, iterations / 2); i++) {
+            splitter.split(document);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int segments = 0;
+        for (int i = 0; i < iterations; i++) {
+            segments = splitter.split(document).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        double seconds = elapsed / 1e9;
+        double megabytes = document.text().length() * 2.0 * iterations / (1024 * 1024);
+        System.out.printf("%-28s %12.1f %12.1f %16.1f %10d%n", name, megabytes / seconds,
+                elapsed / 1e6 / iterations, allocated / (1024.0 * 1024) / iterations, segments);
+    }
+
+    private static String syntheticText(int chars, Random random) {
+        StringBuilder text = new StringBuilder(chars + 256);
+        while (text.length() < chars) {
+            int sentences = 2 + random.nextInt(6);
+            for (int s = 0; s < sentences; s++) {
+                int words = 6 + random.nextInt(20);
+                for (int w = 0; w < words; w++) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    if (w == 0) {
+                        text.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                    } else {
+                        text.append(' ').append(word);
+                    }
+                    if (w > 0 && w < words - 1 && random.nextInt(12) == 0) {
+                        text.append(',');
+                    }
+                }
+                text.append(random.nextInt(10) == 0 ? "? " : ". ");
+            }
+            text.append("\n\n");
+        }
+        return text.toString();
+    }
+}
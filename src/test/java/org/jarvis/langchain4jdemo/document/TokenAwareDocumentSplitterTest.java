@@ -0,0 +1,131 @@
+package org.jarvis.langchain4jdemo.document;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * With the small test vocabulary every word below is one token (an unknown word is one [UNK]), as is each
+ * punctuation mark, so "Alpha beta gamma." is four tokens
+ */
+class TokenAwareDocumentSplitterTest {
+
+    private static final String S1 = "Alpha beta gamma.";
+    private static final String S2 = "Delta epsilon zeta.";
+    private static final String S3 = "Eta theta iota.";
+    private static final String S4 = "Kappa lambda mu.";
+    private static final String S5 = "Nu xi omicron.";
+
+    private final WordPieceTokenCounter counter = new WordPieceTokenCounter("test-wordpiece-tokenizer.json");
+
+    @Test
+    void sentencesArePackedUpToMaxTokens() {
+        List<TextSegment> segments = splitter(10, 0).split(document(S1, S2, S3, S4, S5));
+
+        assertEquals(List.of(S1 + " " + S2, S3 + " " + S4, S5), texts(segments));
+        for (int i = 0; i < segments.size(); i++) {
+            assertEquals(String.valueOf(i), segments.get(i).metadata().getString("index"));
+            assertEquals("guide.md", segments.get(i).metadata().getString("source"));
+        }
+    }
+
+    @Test
+    void consecutiveSegmentsShareTrailingSentencesWithinTheOverlap() {
+        assertEquals(List.of(S1 + " " + S2, S2 + " " + S3, S3 + " " + S4, S4 + " " + S5),
+                texts(splitter(10, 4).split(document(S1, S2, S3, S4, S5))));
+
+        // A sentence larger than the overlap is not repeated
+        assertEquals(List.of(S1 + " " + S2, S3 + " " + S4, S5),
+                texts(splitter(10, 3).split(document(S1, S2, S3, S4, S5))));
+    }
+
+    @Test
+    void segmentsPreferToEndAtAParagraph() {
+        String text = S1 + " " + S2 + "\n\n" + S3 + " " + S4 + " " + S5;
+
+        // S1 S2 S3 fits in 12 tokens, but the paragraph ending after S2 fills more than half of the budget
+        assertEquals(List.of(S1 + " " + S2, S3 + " " + S4 + " " + S5),
+                texts(splitter(12, 0).split(Document.from(text))));
+        // Without a paragraph break the segment is filled
+        assertEquals(List.of(S1 + " " + S2 + " " + S3, S4 + " " + S5),
+                texts(splitter(12, 0).split(document(S1, S2, S3, S4, S5))));
+    }
+
+    @Test
+    void abbreviationsDoNotEndASentence() {
+        String sentence = "Use one e.g. this.";
+        assertEquals(List.of(sentence, S1),
+                texts(splitter(8, 0).split(Document.from(sentence + " " + S1))));
+    }
+
+    @Test
+    void sentenceLongerThanMaxTokensIsCutAtWordBoundaries() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            text.append(i == 0 ? "" : " ").append("word").append(i);
+        }
+        text.append('.');
+
+        List<TextSegment> segments = splitter(10, 0).split(Document.from(text.toString()));
+
+        assertEquals(3, segments.size());
+        for (TextSegment segment : segments) {
+            assertTrue(counter.count(segment.text()) <= 10, segment.text());
+        }
+        assertEquals(text.toString(), String.join(" ", texts(segments)));
+        assertTrue(segments.get(1).text().startsWith("word10 "));
+    }
+
+    @Test
+    void anchoredSegmentsNeverCrossAParagraph() {
+        String text = S1 + "\n\n" + S2 + " " + S3 + " " + S4 + "\n\n" + S5;
+
+        assertEquals(List.of(S1, S2 + " " + S3, S3 + " " + S4, S5),
+                texts(splitter(10, 4).splitAnchored(Document.from(text))));
+        // Unanchored, short paragraphs are packed together and overlap across the break
+        assertEquals(List.of(S1 + "\n\n" + S2, S2 + " " + S3, S3 + " " + S4, S4 + "\n\n" + S5),
+                texts(splitter(10, 4).split(Document.from(text))));
+    }
+
+    @Test
+    void editingOneParagraphLeavesTheOtherAnchoredSegmentsUnchanged() {
+        TokenAwareDocumentSplitter splitter = splitter(10, 4);
+        List<String> before = texts(splitter.splitAnchored(Document.from(
+                S1 + " " + S2 + "\n\n" + S3 + "\n\n" + S4 + " " + S5)));
+        List<String> after = texts(splitter.splitAnchored(Document.from(
+                S1 + " " + S2 + "\n\n" + "Eta theta iota kappa rho sigma." + "\n\n" + S4 + " " + S5)));
+
+        assertEquals(3, before.size());
+        assertEquals(3, after.size());
+        assertEquals(before.get(0), after.get(0));
+        assertEquals(before.get(2), after.get(2));
+        assertEquals("Eta theta iota kappa rho sigma.", after.get(1));
+    }
+
+    @Test
+    void overlapMustBeSmallerThanMaxTokens() {
+        assertThrows(IllegalArgumentException.class, () -> splitter(10, 10));
+        assertThrows(IllegalArgumentException.class, () -> splitter(0, 0));
+    }
+
+    private TokenAwareDocumentSplitter splitter(int maxTokens, int overlapTokens) {
+        return new TokenAwareDocumentSplitter(counter, maxTokens, overlapTokens);
+    }
+
+    private static Document document(String... sentences) {
+        return Document.from(String.join(" ", sentences),
+                Metadata.from(Map.of("source", "guide.md")));
+    }
+
+    private static List<String> texts(List<TextSegment> segments) {
+        return segments.stream().map(TextSegment::text).toList();
+    }
+}
@@ -0,0 +1,53 @@
+package org.jarvis.langchain4jdemo.document;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WordPieceTokenCounterTest {
+
+    private final WordPieceTokenCounter counter = new WordPieceTokenCounter("test-wordpiece-tokenizer.json");
+
+    @Test
+    void splitsWordsIntoLongestMatchingPieces() {
+        assertEquals(3, counter.count("unaffable")); // un ##aff ##able
+        assertEquals(1, counter.count("the")); // not th ##e
+        assertEquals(1, counter.count("HELLO"));
+    }
+
+    @Test
+    void wordWithAnUnmatchablePieceIsOneUnknownToken() {
+        assertEquals(1, counter.count("xyz"));
+        assertEquals(1, counter.count("unxyz"));
+        assertEquals(1, counter.count("a".repeat(101)));
+    }
+
+    @Test
+    void punctuationAndCjkCharactersAreTokensOfTheirOwn() {
+        assertEquals(4, counter.count("Hello, world!"));
+        assertEquals(2, counter.count("你好"));
+        assertEquals(0, counter.count(" \t\n "));
+    }
+
+    @Test
+    void countsOnlyTheGivenRange() {
+        String text = "hello unaffable world";
+        assertEquals(3, counter.count(text, 6, 15));
+        assertEquals(1, counter.count(text, 16, text.length()));
+        assertEquals(0, counter.count(text, 5, 5));
+    }
+
+    @Test
+    void vocabularyKeysAreUnescaped() {
+        // Keys after an escaped quote still parse, and unicode escapes are decoded
+        assertEquals(1, counter.count("été"));
+        assertEquals(1, counter.count("the"));
+    }
+
+    @Test
+    void missingResourceFailsOnFirstCount() {
+        WordPieceTokenCounter missing = new WordPieceTokenCounter("no-such-tokenizer.json");
+        assertThrows(IllegalStateException.class, () -> missing.count("hello"));
+    }
+}
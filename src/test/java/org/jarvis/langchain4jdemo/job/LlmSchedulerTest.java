@@ -0,0 +1,177 @@
+package org.jarvis.langchain4jdemo.job;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jarvis.langchain4jdemo.deadline.DeadlineExceededException;
+import org.jarvis.langchain4jdemo.deadline.RequestDeadline;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Waiters are queued one at a time, each after the previous one is seen in the queue, so the arrival order is
+ * known; a waiter records its label when granted and releases its slot right away, so the labels are recorded
+ * in grant order
+ */
+class LlmSchedulerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> granted = new CopyOnWriteArrayList<>();
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+    private final List<Thread> waiters = new ArrayList<>();
+    private LlmScheduler scheduler;
+
+    @Test
+    void interactiveWaitersAreGrantedBeforeBatchWaiters() throws Exception {
+        scheduler = new LlmScheduler(1, 1, 16, registry);
+        LlmScheduler.Permit held = scheduler.acquire("acme", JobPriority.INTERACTIVE);
+        queue("batch-1", "acme", JobPriority.BATCH);
+        queue("batch-2", "acme", JobPriority.BATCH);
+        queue("interactive-1", "acme", JobPriority.INTERACTIVE);
+        queue("interactive-2", "other", JobPriority.INTERACTIVE);
+
+        held.close();
+        joinWaiters();
+
+        assertEquals(List.of("interactive-1", "interactive-2", "batch-1", "batch-2"), granted);
+    }
+
+    @Test
+    void batchCallsWaitAtTheBatchCapWhileInteractiveCallsFindHeadroom() throws Exception {
+        // A batch cap of 5 is lowered to keep one of the three slots for interactive calls
+        scheduler = new LlmScheduler(3, 5, 16, registry);
+        LlmScheduler.Permit batch1 = scheduler.acquire("acme", JobPriority.BATCH);
+        LlmScheduler.Permit batch2 = scheduler.acquire("acme", JobPriority.BATCH);
+        queue("batch-3", "acme", JobPriority.BATCH);
+
+        LlmScheduler.Permit interactive = scheduler.acquire("acme", JobPriority.INTERACTIVE);
+        assertEquals(1.0, queued());
+        assertTrue(granted.isEmpty());
+
+        // The interactive slot does not go to batch work
+        interactive.close();
+        assertEquals(1.0, queued());
+
+        batch1.close();
+        joinWaiters();
+        assertEquals(List.of("batch-3"), granted);
+        batch2.close();
+        assertEquals(0.0, running(JobPriority.BATCH));
+    }
+
+    @Test
+    void tenantsAreServedRoundRobinWithinAPriority() throws Exception {
+        scheduler = new LlmScheduler(1, 1, 16, registry);
+        LlmScheduler.Permit held = scheduler.acquire("acme", JobPriority.INTERACTIVE);
+        queue("a1", "a", JobPriority.INTERACTIVE);
+        queue("a2", "a", JobPriority.INTERACTIVE);
+        queue("a3", "a", JobPriority.INTERACTIVE);
+        queue("b1", "b", JobPriority.INTERACTIVE);
+        queue("c1", "c", JobPriority.INTERACTIVE);
+        queue("b2", "b", JobPriority.INTERACTIVE);
+
+        held.close();
+        joinWaiters();
+
+        assertEquals(List.of("a1", "b1", "c1", "a2", "b2", "a3"), granted);
+    }
+
+    @Test
+    void waiterLeavesTheQueueWhenItsDeadlinePasses() throws Exception {
+        scheduler = new LlmScheduler(1, 1, 16, registry);
+        LlmScheduler.Permit held = scheduler.acquire("acme", JobPriority.INTERACTIVE);
+        Thread waiter = queue("late", "acme", JobPriority.INTERACTIVE, Duration.ofMillis(200));
+
+        waiter.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(waiter.isAlive());
+        assertEquals(1, failures.size());
+        assertInstanceOf(DeadlineExceededException.class, failures.get(0));
+        assertEquals(0.0, queued());
+
+        held.close();
+        assertSlotIsFree();
+        assertTrue(granted.isEmpty());
+    }
+
+    @Test
+    void interruptedWaiterLeavesTheQueue() throws Exception {
+        scheduler = new LlmScheduler(1, 1, 16, registry);
+        LlmScheduler.Permit held = scheduler.acquire("acme", JobPriority.INTERACTIVE);
+        Thread waiter = queue("interrupted", "acme", JobPriority.INTERACTIVE);
+
+        waiter.interrupt();
+        waiter.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(waiter.isAlive());
+        assertEquals(1, failures.size());
+        assertInstanceOf(InterruptedException.class, failures.get(0));
+        assertEquals(0.0, queued());
+
+        held.close();
+        assertSlotIsFree();
+        assertTrue(granted.isEmpty());
+    }
+
+    private Thread queue(String label, String tenant, JobPriority priority) throws InterruptedException {
+        return queue(label, tenant, priority, null);
+    }
+
+    /**
+     * Start a thread that waits for a slot, and return once it is queued
+     */
+    private Thread queue(String label, String tenant, JobPriority priority, Duration timeout)
+            throws InterruptedException {
+        double before = queued();
+        Thread thread = new Thread(() -> {
+            try (RequestDeadline.Scope ignored = timeout != null ? RequestDeadline.open(timeout) : () -> {};
+                 LlmScheduler.Permit permit = scheduler.acquire(tenant, priority)) {
+                granted.add(label);
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        }, label);
+        thread.start();
+        waiters.add(thread);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queued() < before + 1) {
+            assertTrue(System.nanoTime() < deadline, label + " was not queued");
+            Thread.sleep(1);
+        }
+        return thread;
+    }
+
+    private void joinWaiters() throws InterruptedException {
+        for (Thread waiter : waiters) {
+            waiter.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(waiter.isAlive(), waiter.getName() + " was never granted a slot");
+        }
+        assertEquals(List.of(), failures);
+    }
+
+    /**
+     * Nothing runs or waits, and a new call is admitted at once rather than running into its deadline
+     */
+    private void assertSlotIsFree() throws InterruptedException {
+        assertEquals(0.0, queued());
+        assertEquals(0.0, running(JobPriority.INTERACTIVE));
+        try (RequestDeadline.Scope ignored = RequestDeadline.open(Duration.ofSeconds(5));
+             LlmScheduler.Permit permit = scheduler.acquire("acme", JobPriority.INTERACTIVE)) {
+            assertEquals(1.0, running(JobPriority.INTERACTIVE));
+        }
+    }
+
+    private double queued() {
+        return registry.get("llm.scheduler.queued").gauge().value();
+    }
+
+    private double running(JobPriority priority) {
+        return registry.get("llm.scheduler.running").tag("priority", priority.name().toLowerCase()).gauge().value();
+    }
+}
@@ -0,0 +1,142 @@
+package org.jarvis.langchain4jdemo.kv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent get/put throughput: synchronized HashMap (the old DataStoreTool store) vs the KeyValueStore backends
+ *
+ * Run from the IDE or with:
+ * ./mvnw test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.jarvis.langchain4jdemo.kv.KeyValueStoreBenchmark -Dbench.threads=8 -Dbench.write-percent=10
+ */
+public class KeyValueStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("bench.threads", Runtime.getRuntime().availableProcessors());
+        int keys = Integer.getInteger("bench.keys", 100_000);
+        int writePercent = Integer.getInteger("bench.write-percent", 10);
+        long millis = Long.getLong("bench.millis", 3000);
+
+        System.out.printf("Threads: %d, keys: %d, writes: %d%%, %d ms per run%n", threads, keys, writePercent, millis);
+        System.out.printf("%-24s %16s%n", "store", "ops/s");
+
+        run("synchronized HashMap", new SynchronizedMapStore(), threads, keys, writePercent, millis);
+        run("in-memory (skip list)", new InMemoryKeyValueStore(), threads, keys, writePercent, millis);
+
+        Path directory = Files.createTempDirectory("kv-bench");
+        Path logFile = directory.resolve("bench.log");
+        try (LogStructuredKeyValueStore store = new LogStructuredKeyValueStore(logFile, 64L << 20, 0.5, 1L << 20, false)) {
+            run("log-structured (mmap)", store, threads, keys, writePercent, millis);
+            System.out.printf("Log size after run: %.1f MB%n", store.logBytes() / (1024.0 * 1024));
+        } finally {
+            deleteQuietly(directory.resolve("bench.log.compact"));
+            deleteQuietly(logFile);
+            deleteQuietly(directory);
+        }
+    }
+
+    private static void run(String name, KeyValueStore store, int threads, int keys, int writePercent, long millis)
+            throws InterruptedException {
+        String value = "v".repeat(64);
+        for (int i = 0; i < keys; i++) {
+            store.put(key(i), value);
+        }
+        // Warm-up so the JIT has compiled the hot paths before measuring
+        measure(store, threads, keys, writePercent, Math.max(500, millis / 3), value);
+        long ops = measure(store, threads, keys, writePercent, millis, value);
+        System.out.printf("%-24s %,16.0f%n", name, ops * 1000.0 / millis);
+    }
+
+    private static long measure(KeyValueStore store, int threads, int keys, int writePercent, long millis, String value)
+            throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        for (int t = 0; t < threads; t++) {
+            Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long local = 0;
+                    while ((local & 1023) != 0 || System.nanoTime() < deadline) {
+                        String key = key(random.nextInt(keys));
+                        if (random.nextInt(100) < writePercent) {
+                            store.put(key, value);
+                        } else {
+                            store.get(key);
+                        }
+                        local++;
+                    }
+                    ops.add(local);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        done.await();
+        return ops.sum();
+    }
+
+    private static String key(int i) {
+        return "key-" + i;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // best effort cleanup of the temp directory
+        }
+    }
+
+    /**
+     * Baseline matching the previous DataStoreTool storage, made thread-safe the simplest way
+     */
+    private static final class SynchronizedMapStore implements KeyValueStore {
+
+        private final Map<String, String> map = Collections.synchronizedMap(new HashMap<>());
+
+        @Override
+        public Optional<String> get(String key) {
+            return Optional.ofNullable(map.get(key));
+        }
+
+        @Override
+        public void put(String key, String value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public boolean delete(String key) {
+            return map.remove(key) != null;
+        }
+
+        @Override
+        public KeyPage list(String prefix, String after, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long size() {
+            return map.size();
+        }
+
+        @Override
+        public long approximateBytes() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.jarvis.langchain4jdemo.kv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogStructuredKeyValueStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void entriesSurviveReopen() {
+        Path path = dir.resolve("store.log");
+        try (LogStructuredKeyValueStore store = open(path, 0.5)) {
+            store.put("a", "1");
+            store.put("b", "2");
+            store.put("a", "3");
+            store.put("ü-key", "värde ✓");
+            assertTrue(store.delete("b"));
+            assertFalse(store.delete("missing"));
+        }
+
+        try (LogStructuredKeyValueStore store = open(path, 0.5)) {
+            assertEquals(Optional.of("3"), store.get("a"));
+            assertEquals(Optional.empty(), store.get("b"));
+            assertEquals(Optional.of("värde ✓"), store.get("ü-key"));
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    void replayStopsAtCorruptRecordAndAppendsAfterIt() throws IOException {
+        Path path = dir.resolve("store.log");
+        try (LogStructuredKeyValueStore store = open(path, 0.5)) {
+            store.put("first", "kept");
+            store.put("second", "lost");
+        }
+        // Flip the last payload byte of the second record so its checksum no longer matches
+        long secondRecord = 4 + recordSize("first", "kept");
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long lastByte = secondRecord + recordSize("second", "lost") - 1;
+            file.seek(lastByte);
+            int value = file.read();
+            file.seek(lastByte);
+            file.write(value ^ 0xFF);
+        }
+
+        try (LogStructuredKeyValueStore store = open(path, 0.5)) {
+            assertEquals(Optional.of("kept"), store.get("first"));
+            assertEquals(Optional.empty(), store.get("second"));
+            assertEquals(4 + recordSize("first", "kept"), store.logBytes());
+            store.put("third", "written over the corrupt tail");
+        }
+
+        try (LogStructuredKeyValueStore store = open(path, 0.5)) {
+            assertEquals(Optional.of("written over the corrupt tail"), store.get("third"));
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    void compactionKeepsLiveEntries() throws InterruptedException {
+        Path path = dir.resolve("store.log");
+        try (LogStructuredKeyValueStore store = open(path, 0.5)) {
+            for (int i = 0; i < 1000; i++) {
+                store.put("counter", String.valueOf(i));
+                store.put("key-" + (i % 10), "value-" + i);
+            }
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (store.logBytes() > 4 * 1024 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(store.logBytes() < 4 * 1024, "log was not compacted: " + store.logBytes() + " bytes");
+            store.put("after", "compaction");
+        }
+
+        try (LogStructuredKeyValueStore store = open(path, 0.5)) {
+            assertEquals(Optional.of("999"), store.get("counter"));
+            assertEquals(Optional.of("value-995"), store.get("key-5"));
+            assertEquals(Optional.of("compaction"), store.get("after"));
+            assertEquals(12, store.size());
+        }
+    }
+
+    @Test
+    void utf8LengthMatchesEncoding() {
+        for (String value : new String[] {"", "ascii", "é", "✓", "😀", "mixed é✓😀"}) {
+            assertEquals(value.getBytes(StandardCharsets.UTF_8).length, LogStructuredKeyValueStore.utf8Length(value));
+        }
+    }
+
+    private static LogStructuredKeyValueStore open(Path path, double compactionRatio) {
+        return new LogStructuredKeyValueStore(path, 4096, compactionRatio, 0, false);
+    }
+
+    /**
+     * [int length][int crc][byte op, int keyLength, key, int valueLength, value]
+     */
+    private static long recordSize(String key, String value) {
+        return 8 + 1 + 4 + key.getBytes(StandardCharsets.UTF_8).length + 4 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,154 @@
+package org.jarvis.langchain4jdemo.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogStructuredChatMemoryStoreTest {
+
+    private static final int WINDOW = 6;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sessionsSurviveReopen() {
+        Map<String, List<ChatMessage>> expected = new LinkedHashMap<>();
+        try (LogStructuredChatMemoryStore store = open(100)) {
+            converse(store, expected, 5, 12, 20);
+            store.deleteMessages("session-3");
+            expected.put("session-3", List.of());
+            assertSessions(store, expected);
+        }
+
+        try (LogStructuredChatMemoryStore store = open(100)) {
+            assertSessions(store, expected);
+        }
+    }
+
+    @Test
+    void sealedSegmentsAreIndexedAndResealedAfterACrash() throws IOException {
+        Map<String, List<ChatMessage>> expected = new LinkedHashMap<>();
+        try (LogStructuredChatMemoryStore store = open(100)) {
+            converse(store, expected, 40, 10, 1000);
+            assertSessions(store, expected);
+        }
+        List<Path> indexes = files(".idx");
+        assertTrue(indexes.size() >= 3, "expected several sealed segments, got " + indexes.size());
+
+        // As if the process died after rolling to a new segment but before writing the old one's index
+        Files.delete(indexes.get(indexes.size() - 1));
+        try (LogStructuredChatMemoryStore store = open(100)) {
+            assertSessions(store, expected);
+        }
+        assertEquals(indexes.size(), files(".idx").size());
+    }
+
+    @Test
+    void compactionKeepsLiveSessions() throws InterruptedException {
+        Map<String, List<ChatMessage>> expected = new LinkedHashMap<>();
+        try (LogStructuredChatMemoryStore store = open(2)) {
+            converse(store, expected, 40, 10, 1000);
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (files(".idx").size() > 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(files(".idx").size() <= 2, "segments were not compacted: " + files(".idx").size());
+            assertSessions(store, expected);
+        }
+
+        try (LogStructuredChatMemoryStore store = open(2)) {
+            assertSessions(store, expected);
+        }
+    }
+
+    @Test
+    void replayStopsAtCorruptRecord() throws IOException {
+        List<ChatMessage> first = List.of(UserMessage.from("hello"));
+        try (LogStructuredChatMemoryStore store = open(100)) {
+            store.updateMessages("s", first);
+            store.updateMessages("s", List.of(UserMessage.from("hello"), AiMessage.from("lost reply")));
+        }
+        // The active segment is pre-sized, so the last record ends at its last non-zero byte
+        Path log = files(".log").get(0);
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            long last = file.length() - 1;
+            file.seek(last);
+            while (file.read() == 0) {
+                file.seek(--last);
+            }
+            file.seek(last);
+            int value = file.read();
+            file.seek(last);
+            file.write(value ^ 0xFF);
+        }
+
+        List<ChatMessage> second = List.of(UserMessage.from("hello"), AiMessage.from("written over the tail"));
+        try (LogStructuredChatMemoryStore store = open(100)) {
+            assertEquals(first, store.getMessages("s"));
+            store.updateMessages("s", second);
+        }
+
+        try (LogStructuredChatMemoryStore store = open(100)) {
+            assertEquals(second, store.getMessages("s"));
+        }
+    }
+
+    /**
+     * Alternate user and assistant messages across sessions, keeping the last WINDOW of each like MessageWindowChatMemory
+     */
+    private static void converse(LogStructuredChatMemoryStore store, Map<String, List<ChatMessage>> expected,
+                                 int sessions, int turns, int messageChars) {
+        String filler = "x".repeat(messageChars);
+        for (int turn = 0; turn < turns; turn++) {
+            for (int session = 0; session < sessions; session++) {
+                String sessionId = "session-" + session;
+                for (ChatMessage message : List.<ChatMessage>of(
+                        UserMessage.from("question " + turn + " " + filler),
+                        AiMessage.from("answer " + turn + " " + filler))) {
+                    List<ChatMessage> window = new ArrayList<>(expected.getOrDefault(sessionId, List.of()));
+                    window.add(message);
+                    if (window.size() > WINDOW) {
+                        window.removeFirst();
+                    }
+                    store.updateMessages(sessionId, window);
+                    expected.put(sessionId, List.copyOf(window));
+                }
+            }
+        }
+    }
+
+    private static void assertSessions(LogStructuredChatMemoryStore store, Map<String, List<ChatMessage>> expected) {
+        expected.forEach((sessionId, messages) -> assertEquals(messages, store.getMessages(sessionId), sessionId));
+    }
+
+    /**
+     * No cached sessions, so every read and write replays the log
+     */
+    private LogStructuredChatMemoryStore open(int maxSealedSegments) {
+        return new LogStructuredChatMemoryStore(dir, 64 * 1024, 4, maxSealedSegments, 0, 0);
+    }
+
+    private List<Path> files(String suffix) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(suffix)).sorted().toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
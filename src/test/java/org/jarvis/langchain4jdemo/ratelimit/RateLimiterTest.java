@@ -0,0 +1,138 @@
+package org.jarvis.langchain4jdemo.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * One request per second with a burst of two, ten LLM tokens per second with a burst of 100; times are explicit
+ * nanoTime values
+ */
+class RateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000;
+    private static final long T = 42 * SECOND;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void requestsBeyondTheBurstAreRejectedUntilRefilled() {
+        RateLimiter limiter = limiter(10);
+
+        assertTrue(limiter.admit("key:a", T).admitted());
+        assertTrue(limiter.admit("key:a", T).admitted());
+        RateLimiter.Decision rejected = limiter.admit("key:a", T);
+        assertFalse(rejected.admitted());
+        assertEquals(RateLimiter.REQUESTS, rejected.limit());
+        assertEquals(SECOND, rejected.retryAfterNanos());
+        // Each client has its own buckets
+        assertTrue(limiter.admit("key:b", T).admitted());
+
+        assertTrue(limiter.admit("key:a", T + SECOND).admitted());
+        assertEquals(1.0, registry.get("ratelimit.requests").tag("outcome", "rejected").tag("limit", "requests")
+                .counter().count());
+    }
+
+    @Test
+    void chargedTokensBlockTheClientUntilPaidBack() {
+        RateLimiter limiter = limiter(10);
+        RateLimiter.Decision first = limiter.admit("key:a", T);
+        try (RateLimiter.Scope ignored = RateLimiter.bind(first.client())) {
+            // 250 tokens against a burst of 100: overdrawn by 150, 15 seconds at 10 per second
+            RateLimiter.chargeTokens(250, T);
+        }
+
+        RateLimiter.Decision rejected = limiter.admit("key:a", T + SECOND);
+        assertFalse(rejected.admitted());
+        assertEquals(RateLimiter.TOKENS, rejected.limit());
+        assertEquals(14 * SECOND, rejected.retryAfterNanos());
+        assertEquals(-150, limiter.usage(10, T).get(0).availableTokens());
+
+        assertTrue(limiter.admit("key:a", T + 15 * SECOND).admitted());
+        // Outside a bound request nothing is charged
+        RateLimiter.chargeTokens(1_000, T);
+        assertEquals(250, limiter.usage(10, T).get(0).tokens());
+    }
+
+    @Test
+    void retryAfterIsRoundedUpToWholeSeconds() {
+        assertEquals(1, retryAfterSeconds(1));
+        assertEquals(1, retryAfterSeconds(SECOND));
+        assertEquals(2, retryAfterSeconds(SECOND + 1));
+        assertEquals(15, retryAfterSeconds(14 * SECOND + SECOND / 2));
+
+        // 0.4 requests per second: the third request waits 2.5 seconds
+        RateLimiter limiter = new RateLimiter(registry, true, 0.4, 2, 10, 100, 10);
+        limiter.admit("key:a", T);
+        limiter.admit("key:a", T);
+        assertEquals(3, limiter.admit("key:a", T).retryAfterSeconds());
+    }
+
+    @Test
+    void usageListsHeaviestTokenUsersFirstWithMaskedKeys() {
+        RateLimiter limiter = limiter(10);
+        charge(limiter, "key:secret-light", 10, T);
+        charge(limiter, "key:secret-heavy", 60, T);
+        limiter.admit("ip:10.0.0.1", T);
+
+        List<RateLimiter.ClientUsage> usage = limiter.usage(10, T);
+        assertEquals(List.of("key:...eavy", "key:...ight", "ip:10.0.0.1"),
+                usage.stream().map(RateLimiter.ClientUsage::key).toList());
+        assertEquals(new RateLimiter.ClientUsage("key:...eavy", 1, 0, 60, 1, 40), usage.get(0));
+        assertEquals(2, limiter.usage(2, T).size());
+    }
+
+    @Test
+    void evictionDropsLeastRecentlySeenClientsDownToNineTenths() {
+        RateLimiter limiter = limiter(10);
+        for (int i = 0; i < 10; i++) {
+            limiter.admit("client-" + i, T + i);
+        }
+
+        // No bucket has refilled, so the pass drops the one client seen longest ago to get to 9
+        limiter.admit("client-10", T + 10);
+        List<String> keys = keys(limiter);
+        assertEquals(10, keys.size());
+        assertFalse(keys.contains("client-0"));
+        assertTrue(keys.contains("client-1"));
+        assertTrue(keys.contains("client-10"));
+    }
+
+    @Test
+    void evictionDropsIdleClientsFirst() {
+        RateLimiter limiter = limiter(10);
+        // Seen first, but overdrawn on tokens for 100 seconds
+        charge(limiter, "busy", 1_100, T);
+        for (int i = 1; i < 10; i++) {
+            limiter.admit("idle-" + i, T + i);
+        }
+
+        // Ten seconds later the idle clients' buckets are full again and they all go
+        limiter.admit("new", T + 10 * SECOND);
+        assertEquals(List.of("busy", "new"), keys(limiter).stream().sorted().toList());
+    }
+
+    private RateLimiter limiter(int maxClients) {
+        return new RateLimiter(registry, true, 1, 2, 10, 100, maxClients);
+    }
+
+    private static void charge(RateLimiter limiter, String key, long tokens, long now) {
+        RateLimiter.Decision decision = limiter.admit(key, now);
+        try (RateLimiter.Scope ignored = RateLimiter.bind(decision.client())) {
+            RateLimiter.chargeTokens(tokens, now);
+        }
+    }
+
+    private static List<String> keys(RateLimiter limiter) {
+        return limiter.usage(Integer.MAX_VALUE, T).stream().map(RateLimiter.ClientUsage::key).toList();
+    }
+
+    private static long retryAfterSeconds(long nanos) {
+        return new RateLimiter.Decision(null, false, RateLimiter.REQUESTS, nanos).retryAfterSeconds();
+    }
+}
@@ -0,0 +1,92 @@
+package org.jarvis.langchain4jdemo.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ten units per second is one unit every 100 ms; times are explicit nanoTime values, negative ones included
+ * since System.nanoTime may return them
+ */
+class TokenBucketTest {
+
+    private static final long MS = 1_000_000;
+    private static final long T = -5_000 * MS;
+
+    @Test
+    void fullBucketAdmitsABurstThenReportsTheWait() {
+        TokenBucket bucket = new TokenBucket(10, 5, T);
+        assertTrue(bucket.isFull(T));
+        assertEquals(5, bucket.available(T));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire(1, T));
+        }
+        assertEquals(0, bucket.available(T));
+        assertFalse(bucket.isFull(T));
+        assertEquals(100 * MS, bucket.tryAcquire(1, T));
+        assertEquals(300 * MS, bucket.tryAcquire(3, T));
+        // Rejections take nothing
+        assertEquals(0, bucket.available(T));
+    }
+
+    @Test
+    void bucketRefillsOneUnitPerInterval() {
+        TokenBucket bucket = new TokenBucket(10, 5, T);
+        assertEquals(0, bucket.tryAcquire(5, T));
+
+        assertEquals(1, bucket.available(T + 100 * MS));
+        assertEquals(1, bucket.available(T + 199 * MS));
+        assertEquals(0, bucket.tryAcquire(1, T + 100 * MS));
+        assertEquals(MS, bucket.tryAcquire(1, T + 199 * MS));
+        assertEquals(0, bucket.tryAcquire(1, T + 200 * MS));
+
+        // Refill stops at the burst
+        assertTrue(bucket.isFull(T + 700 * MS));
+        assertEquals(5, bucket.available(T + 10_000 * MS));
+        assertEquals(0, bucket.tryAcquire(5, T + 10_000 * MS));
+        assertEquals(100 * MS, bucket.tryAcquire(1, T + 10_000 * MS));
+    }
+
+    @Test
+    void costAboveTheBurstNeverFits() {
+        TokenBucket bucket = new TokenBucket(10, 5, T);
+        assertEquals(100 * MS, bucket.tryAcquire(6, T));
+        assertEquals(100 * MS, bucket.tryAcquire(6, T + 60_000 * MS));
+        assertEquals(5, bucket.available(T));
+    }
+
+    @Test
+    void chargeOverdrawsTheBucketUntilItIsPaidBack() {
+        TokenBucket bucket = new TokenBucket(10, 5, T);
+        assertEquals(0, bucket.waitNanos(T));
+
+        bucket.charge(20, T);
+        assertEquals(-15, bucket.available(T));
+        assertEquals(1_500 * MS, bucket.waitNanos(T));
+        assertEquals(1_600 * MS, bucket.tryAcquire(1, T));
+
+        // No longer overdrawn, but still empty
+        assertEquals(0, bucket.waitNanos(T + 1_500 * MS));
+        assertEquals(0, bucket.available(T + 1_500 * MS));
+        assertEquals(100 * MS, bucket.tryAcquire(1, T + 1_500 * MS));
+        assertEquals(0, bucket.tryAcquire(1, T + 1_600 * MS));
+
+        // A charge on a bucket that has refilled starts from now, not from its last use
+        bucket.charge(7, T + 60_000 * MS);
+        assertEquals(200 * MS, bucket.waitNanos(T + 60_000 * MS));
+    }
+
+    @Test
+    void intervalIsRoundedToWholeNanosecondsAndAtLeastOne() {
+        TokenBucket thirds = new TokenBucket(3, 1, T);
+        assertEquals(0, thirds.tryAcquire(1, T));
+        assertEquals(333_333_333, thirds.tryAcquire(1, T));
+
+        TokenBucket fast = new TokenBucket(1e12, 2, T);
+        assertEquals(0, fast.tryAcquire(2, T));
+        assertEquals(1, fast.tryAcquire(1, T));
+    }
+}
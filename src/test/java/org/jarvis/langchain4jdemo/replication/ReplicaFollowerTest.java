@@ -0,0 +1,171 @@
+package org.jarvis.langchain4jdemo.replication;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBase;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaFollowerTest {
+
+    private KnowledgeBases primary;
+    private ReplicationPublisher publisher;
+    private KnowledgeBases replica;
+    private ReplicaFollower follower;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        primary = new KnowledgeBases(FlatEmbeddingStore::new, name -> -1, 100);
+        publisher = new ReplicationPublisher(primary, new MemoryAccountant(new MockEnvironment(), registry, 0.9),
+                "primary", DataSize.ofMegabytes(16));
+        replica = new KnowledgeBases(FlatEmbeddingStore::new, name -> -1, 100);
+        follower = new ReplicaFollower(replica, registry, "replica", "http://localhost:1", DataSize.ofMegabytes(4));
+    }
+
+    @Test
+    void snapshotPlusLogReproducesPrimary() throws IOException {
+        KnowledgeBase acme = primary.create("acme", 1L << 20);
+        List<String> first = acme.add(embeddings(3, 1), segments("a", 3));
+        primary.create("gone", null).add(embeddings(2, 2), segments("g", 2));
+        long snapshotSequence = publisher.sequence();
+        follower.loadSnapshot(snapshot(snapshotSequence));
+
+        acme.remove(first.subList(0, 1));
+        acme.add(embeddings(2, 3), segments("b", 2));
+        primary.drop("gone");
+        primary.create("beta", 4096L).add(embeddings(1, 4), segments("c", 1));
+        follower.applyBatch(publisher.readLog(follower.appliedSequence(), Long.MAX_VALUE));
+
+        assertEquals(publisher.sequence(), follower.appliedSequence());
+        assertSameContent();
+        assertEquals(4096L, replica.find("beta").orElseThrow().getMaxBytes());
+        assertTrue(replica.find("gone").isEmpty());
+    }
+
+    @Test
+    void addToNamespaceDroppedLaterIsSkipped() throws IOException {
+        primary.create("acme", 2048L);
+        long afterCreate = publisher.sequence();
+        primary.find("acme").orElseThrow().add(embeddings(2, 5), segments("a", 2));
+        primary.drop("acme");
+
+        // Labelled before the add, taken after the drop: replaying the add must not bring the namespace back
+        follower.loadSnapshot(snapshot(afterCreate));
+        assertEquals(1, follower.applyBatch(publisher.readLog(afterCreate, 1)));
+        assertTrue(replica.all().isEmpty());
+
+        follower.applyBatch(publisher.readLog(follower.appliedSequence(), Long.MAX_VALUE));
+        assertTrue(replica.all().isEmpty());
+    }
+
+    @Test
+    void snapshotReplacesContentOnlyOnceComplete() throws IOException {
+        primary.create("old", null).add(embeddings(2, 6), segments("o", 2));
+        follower.loadSnapshot(snapshot(publisher.sequence()));
+        primary.drop("old");
+        primary.create("new", null).add(embeddings(3, 7), segments("n", 3));
+
+        byte[] complete = snapshotBytes(publisher.sequence());
+        byte[] truncated = Arrays.copyOf(complete, complete.length - 1);
+        assertThrows(EOFException.class, () -> follower.loadSnapshot(input(truncated)));
+        assertEquals(List.of("old"), replica.all().stream().map(KnowledgeBase::getName).toList());
+        assertEquals(2, store(replica.find("old")).size());
+
+        follower.loadSnapshot(input(complete));
+        assertSameContent();
+    }
+
+    @Test
+    void writesAfterDropAreNotPublished() {
+        KnowledgeBase stale = primary.create("acme", null);
+        primary.drop("acme");
+        long sequence = publisher.sequence();
+
+        stale.add(embeddings(1, 8), segments("s", 1));
+
+        assertEquals(sequence, publisher.sequence());
+    }
+
+    private void assertSameContent() {
+        Map<String, Map<String, Row>> expected = content(primary);
+        Map<String, Map<String, Row>> actual = content(replica);
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((namespace, rows) -> {
+            assertEquals(rows.keySet(), actual.get(namespace).keySet(), namespace);
+            rows.forEach((id, row) -> {
+                Row replicated = actual.get(namespace).get(id);
+                assertArrayEquals(row.vector(), replicated.vector(), 1e-6f, id);
+                assertEquals(row.segment(), replicated.segment(), id);
+            });
+            assertEquals(primary.find(namespace).orElseThrow().getMaxBytes(),
+                    replica.find(namespace).orElseThrow().getMaxBytes(), namespace);
+        });
+    }
+
+    private static Map<String, Map<String, Row>> content(KnowledgeBases knowledgeBases) {
+        Map<String, Map<String, Row>> content = new TreeMap<>();
+        for (KnowledgeBase knowledgeBase : knowledgeBases.all()) {
+            Map<String, Row> rows = new TreeMap<>();
+            store(Optional.of(knowledgeBase)).forEachRow((id, matrix, offset, dimension, segment) ->
+                    rows.put(id, new Row(Arrays.copyOfRange(matrix, offset, offset + dimension), segment)));
+            content.put(knowledgeBase.getName(), rows);
+        }
+        return content;
+    }
+
+    private static FlatEmbeddingStore store(Optional<KnowledgeBase> knowledgeBase) {
+        return (FlatEmbeddingStore) knowledgeBase.orElseThrow().getStore();
+    }
+
+    private DataInputStream snapshot(long sequence) throws IOException {
+        return input(snapshotBytes(sequence));
+    }
+
+    private byte[] snapshotBytes(long sequence) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        publisher.writeSnapshot(sequence, out);
+        return out.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static List<Embedding> embeddings(int count, int seed) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> Embedding.from(new float[] {seed, i + 1, seed - i, 1}))
+                .toList();
+    }
+
+    private static List<TextSegment> segments(String prefix, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> TextSegment.from(prefix + "-" + i))
+                .toList();
+    }
+
+    private record Row(float[] vector, TextSegment segment) {}
+}
@@ -0,0 +1,83 @@
+package org.jarvis.langchain4jdemo.replication;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReplicationCodecTest {
+
+    @Test
+    void addRoundTripsRowsWithTypedMetadata() throws IOException {
+        Metadata metadata = Metadata.from(Map.of(
+                "source", "guide.md",
+                "chunk", 3,
+                "version", 7L,
+                "weight", 0.5f,
+                "score", 0.25,
+                "documentId", UUID.fromString("3f1c2a9e-0b7d-4c1e-9f6a-2d8e5b4a7c10")));
+        List<String> ids = List.of("a", "b");
+        List<Embedding> embeddings = List.of(Embedding.from(new float[] {0.1f, -0.2f, 0.3f}),
+                Embedding.from(new float[] {1f, 0f, -1f}));
+        List<TextSegment> segments = Arrays.asList(TextSegment.from("Grüße ✓", metadata), null);
+
+        DataInputStream in = input(ReplicationCodec.add("tenant-ä", ids, embeddings, segments));
+        assertEquals(ReplicationCodec.ADD, in.readByte());
+        assertEquals("tenant-ä", ReplicationCodec.readString(in));
+        int count = in.readInt();
+        List<String> readIds = new ArrayList<>();
+        List<Embedding> readEmbeddings = new ArrayList<>();
+        List<TextSegment> readSegments = new ArrayList<>();
+        ReplicationCodec.readRows(in, count, readIds, readEmbeddings, readSegments);
+
+        assertEquals(ids, readIds);
+        for (int i = 0; i < ids.size(); i++) {
+            assertArrayEquals(embeddings.get(i).vector(), readEmbeddings.get(i).vector());
+        }
+        assertEquals(segments.get(0).text(), readSegments.get(0).text());
+        assertEquals(metadata.toMap(), readSegments.get(0).metadata().toMap());
+        assertNull(readSegments.get(1));
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void createDropAndRemoveRoundTrip() throws IOException {
+        DataInputStream create = input(ReplicationCodec.create("acme", 1024));
+        assertEquals(ReplicationCodec.CREATE, create.readByte());
+        assertEquals("acme", ReplicationCodec.readString(create));
+        assertEquals(1024, create.readLong());
+
+        DataInputStream drop = input(ReplicationCodec.drop("acme"));
+        assertEquals(ReplicationCodec.DROP, drop.readByte());
+        assertEquals("acme", ReplicationCodec.readString(drop));
+
+        DataInputStream remove = input(ReplicationCodec.remove("acme", List.of("x", "y")));
+        assertEquals(ReplicationCodec.REMOVE, remove.readByte());
+        assertEquals("acme", ReplicationCodec.readString(remove));
+        assertEquals(List.of("x", "y"), ReplicationCodec.readIds(remove));
+        assertEquals(0, remove.available());
+    }
+
+    @Test
+    void nullStringRoundTrips() throws IOException {
+        DataInputStream in = input(ReplicationCodec.encode(out -> ReplicationCodec.writeString(out, null)));
+        assertNull(ReplicationCodec.readString(in));
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,395 @@
+package org.jarvis.langchain4jdemo.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.jarvis.langchain4jdemo.quota.MemoryAccounted;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.jarvis.langchain4jdemo.store.PcaProjection;
+import org.jarvis.langchain4jdemo.store.PrefixProjection;
+import org.jarvis.langchain4jdemo.store.Projection;
+import org.jarvis.langchain4jdemo.store.SegmentTextStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * End-to-end retrieval benchmark over synthetic corpora: ingest throughput, recall@k against exact search,
+ * p50/p99 query latency and heap held, for every embedding.store.type and each reduced-dimension projection
+ * (bench.projections, e.g. pca:48,prefix:96), written as JSON for comparison
+ *
+ * bench.embedder=synthetic (default) draws clustered vectors directly, which scales to millions of segments;
+ * bench.embedder=minilm embeds the generated texts with the ONNX model instead (keep sizes small).
+ * Run from the IDE or with:
+ * ./mvnw test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.jarvis.langchain4jdemo.retrieval.RetrievalBenchmark \
+ *     -Dbench.sizes=10000,100000,1000000 -Dbench.output=target/retrieval-benchmark.json
+ */
+public class RetrievalBenchmark {
+
+    private static final String[] WORDS = {
+            "embedding", "retrieval", "language", "model", "vector", "store", "segment", "token", "Java", "Spring",
+            "Ollama", "document", "context", "question", "answer", "generation", "semantic", "similarity",
+            "throughput", "latency", "allocation", "configuration", "cluster", "replica", "snapshot", "index",
+            "quota", "tenant", "namespace", "memory", "cache", "scheduler", "prompt", "stream", "batch", "tool"
+    };
+
+    private static final int INGEST_BATCH = 1000;
+    /** Metadata key holding a segment's corpus row, to match results against exact search */
+    private static final String ROW = "row";
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = Arrays.stream(System.getProperty("bench.sizes", "10000,100000").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        String embedder = System.getProperty("bench.embedder", "synthetic");
+        int dimension = Integer.getInteger("bench.dimension", 384);
+        int topics = Integer.getInteger("bench.topics", 256);
+        int queryCount = Integer.getInteger("bench.queries", 1000);
+        int recallQueries = Integer.getInteger("bench.recall-queries", 100);
+        int k = Integer.getInteger("bench.k", 8);
+        long seed = Long.getLong("bench.seed", 42);
+        Path output = Path.of(System.getProperty("bench.output", "target/retrieval-benchmark.json"));
+        Map<String, Supplier<EmbeddingStore<TextSegment>>> stores = stores(
+                System.getProperty("bench.projections", "pca:48,pca:96,prefix:96"),
+                Integer.getInteger("bench.rescore-factor", 8), Integer.getInteger("bench.fit-rows", 2000));
+
+        System.out.printf("Embedder: %s, queries: %d (recall on %d), k: %d%n", embedder, queryCount, recallQueries, k);
+        System.out.printf("%-16s %10s %14s %10s %10s %10s %12s%n",
+                "store", "segments", "ingest seg/s", "recall@k", "p50 us", "p99 us", "heap MB");
+
+        EmbeddingModel model = "minilm".equals(embedder) ? new AllMiniLmL6V2EmbeddingModel() : null;
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int size : sizes) {
+            Corpus corpus = model != null
+                    ? Corpus.embedded(model, size, queryCount, topics, seed)
+                    : Corpus.synthetic(size, queryCount, dimension, topics, seed);
+            List<Set<Integer>> exact = exactTopK(corpus, Math.min(recallQueries, queryCount), k);
+            for (Map.Entry<String, Supplier<EmbeddingStore<TextSegment>>> store : stores.entrySet()) {
+                Map<String, Object> result = run(store.getKey(), store.getValue().get(), corpus, exact, k);
+                if (corpus.embedNanos > 0) {
+                    result.put("embedSegmentsPerSecond", corpus.size * 1e9 / corpus.embedNanos);
+                }
+                results.add(result);
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        report.put("embedder", embedder);
+        report.put("queries", queryCount);
+        report.put("recallQueries", Math.min(recallQueries, queryCount));
+        report.put("k", k);
+        report.put("seed", seed);
+        report.put("results", results);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.writeString(output, toJson(report) + System.lineSeparator());
+        System.out.printf("Results written to %s%n", output.toAbsolutePath());
+    }
+
+    /**
+     * Every embedding.store.type, the flat store with compressed texts and with each projection given as type:dimension
+     */
+    private static Map<String, Supplier<EmbeddingStore<TextSegment>>> stores(String projections, int rescoreFactor,
+                                                                            int fitRows) {
+        Map<String, Supplier<EmbeddingStore<TextSegment>>> stores = new LinkedHashMap<>();
+        stores.put("flat", FlatEmbeddingStore::new);
+        stores.put("in-memory", InMemoryEmbeddingStore::new);
+        stores.put("flat-compressed", () -> new FlatEmbeddingStore(null, 1, new SegmentTextStore(16 * 1024, 16 * 1024, null)));
+        for (String projection : projections.split(",")) {
+            if (projection.isBlank()) {
+                continue;
+            }
+            String[] parts = projection.trim().split(":");
+            int dimension = Integer.parseInt(parts[1]);
+            Supplier<Projection> factory = switch (parts[0]) {
+                case "pca" -> () -> new PcaProjection(dimension, fitRows);
+                case "prefix" -> () -> new PrefixProjection(dimension);
+                default -> throw new IllegalArgumentException("Unknown projection: " + parts[0]);
+            };
+            stores.put("flat-" + parts[0] + "-" + dimension, () -> new FlatEmbeddingStore(factory.get(), rescoreFactor));
+        }
+        return stores;
+    }
+
+    private static Map<String, Object> run(String name, EmbeddingStore<TextSegment> store, Corpus corpus,
+                                           List<Set<Integer>> exact, int k) {
+        long heapBefore = usedHeapAfterGc();
+        long start = System.nanoTime();
+        for (int from = 0; from < corpus.size; from += INGEST_BATCH) {
+            int to = Math.min(corpus.size, from + INGEST_BATCH);
+            List<Embedding> embeddings = new ArrayList<>(to - from);
+            List<TextSegment> segments = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                embeddings.add(Embedding.from(corpus.vector(i)));
+                segments.add(corpus.segment(i));
+            }
+            store.addAll(embeddings, segments);
+        }
+        long ingestNanos = System.nanoTime() - start;
+        long heapBytes = usedHeapAfterGc() - heapBefore;
+
+        // One pass to warm up the JIT, then measure each query on its own
+        for (int q = 0; q < corpus.queries.length; q++) {
+            search(store, corpus.queries[q], k);
+        }
+        long[] latencies = new long[corpus.queries.length];
+        int hits = 0;
+        for (int q = 0; q < corpus.queries.length; q++) {
+            long queryStart = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> matches = search(store, corpus.queries[q], k);
+            latencies[q] = System.nanoTime() - queryStart;
+            if (q < exact.size()) {
+                for (EmbeddingMatch<TextSegment> match : matches) {
+                    if (exact.get(q).contains(match.embedded().metadata().getInteger(ROW))) {
+                        hits++;
+                    }
+                }
+            }
+        }
+        Arrays.sort(latencies);
+        double recall = exact.isEmpty() ? Double.NaN : hits / (double) (exact.size() * k);
+        double ingestRate = corpus.size * 1e9 / ingestNanos;
+        double p50 = percentile(latencies, 0.50) / 1000.0;
+        double p99 = percentile(latencies, 0.99) / 1000.0;
+        System.out.printf("%-16s %10d %,14.0f %10.4f %10.1f %10.1f %12.1f%n",
+                name, corpus.size, ingestRate, recall, p50, p99, heapBytes / (1024.0 * 1024));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("store", name);
+        result.put("segments", corpus.size);
+        result.put("dimension", corpus.dimension);
+        result.put("ingestSegmentsPerSecond", ingestRate);
+        result.put("recallAtK", recall);
+        result.put("p50Micros", p50);
+        result.put("p99Micros", p99);
+        result.put("heapBytes", heapBytes);
+        if (store instanceof MemoryAccounted accounted) {
+            result.put("approximateBytes", accounted.approximateBytes());
+        }
+        if (store instanceof FlatEmbeddingStore flatStore && flatStore.textStats().segments() > 0) {
+            FlatEmbeddingStore.TextStats textStats = flatStore.textStats();
+            result.put("textBytesPerSegment", (double) textStats.bytes() / textStats.segments());
+            result.put("textRawBytesPerSegment", (double) textStats.rawBytes() / textStats.segments());
+        }
+        return result;
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(EmbeddingStore<TextSegment> store, float[] query, int k) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(query))
+                .maxResults(k)
+                .minScore(0.0)
+                .build()).matches();
+    }
+
+    /**
+     * Rows of the exact top-k by cosine similarity for the first queries, by brute force in double precision
+     */
+    private static List<Set<Integer>> exactTopK(Corpus corpus, int queries, int k) {
+        float[][] normalizedQueries = new float[queries][];
+        for (int q = 0; q < queries; q++) {
+            normalizedQueries[q] = normalized(corpus.queries[q]);
+        }
+        return IntStream.range(0, queries).parallel().mapToObj(q -> {
+            int[] rows = new int[k];
+            double[] scores = new double[k];
+            Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+            for (int i = 0; i < corpus.size; i++) {
+                double score = dot(normalizedQueries[q], normalized(corpus.vector(i)));
+                if (score > scores[k - 1]) {
+                    int j = k - 1;
+                    while (j > 0 && scores[j - 1] < score) {
+                        scores[j] = scores[j - 1];
+                        rows[j] = rows[j - 1];
+                        j--;
+                    }
+                    scores[j] = score;
+                    rows[j] = i;
+                }
+            }
+            Set<Integer> top = new HashSet<>();
+            for (int row : rows) {
+                top.add(row);
+            }
+            return top;
+        }).toList();
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += (double) a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String toJson(Object value) {
+        return switch (value) {
+            case null -> "null";
+            case String text -> "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            case Double number when number.isNaN() || number.isInfinite() -> "null";
+            case Number number -> number.toString();
+            case Map<?, ?> map -> {
+                StringBuilder json = new StringBuilder("{");
+                map.forEach((key, item) -> json.append(json.length() > 1 ? "," : "")
+                        .append(toJson(key.toString())).append(':').append(toJson(item)));
+                yield json.append('}').toString();
+            }
+            case List<?> list -> {
+                StringBuilder json = new StringBuilder("[");
+                list.forEach(item -> json.append(json.length() > 1 ? "," : "").append(toJson(item)));
+                yield json.append(']').toString();
+            }
+            default -> toJson(value.toString());
+        };
+    }
+
+    /**
+     * Deterministic corpus: segment i belongs to topic i % topics and its text and vector are derived from the
+     * seed, so synthetic vectors are regenerated on demand instead of held in memory; queries are noisy copies
+     * of random segments
+     */
+    private static final class Corpus {
+
+        private final int size;
+        private final int dimension;
+        private final int topics;
+        private final long seed;
+        private final float[][] centroids;
+        /** Only for embedded corpora; synthetic vectors are regenerated */
+        private final float[][] vectors;
+        private final float[][] queries;
+        private long embedNanos;
+
+        private Corpus(int size, int dimension, int topics, long seed, float[][] vectors, int queryCount) {
+            this.size = size;
+            this.dimension = dimension;
+            this.topics = topics;
+            this.seed = seed;
+            this.vectors = vectors;
+            this.centroids = new float[topics][dimension];
+            SplittableRandom random = new SplittableRandom(seed);
+            for (float[] centroid : centroids) {
+                for (int d = 0; d < dimension; d++) {
+                    centroid[d] = (float) random.nextGaussian();
+                }
+            }
+            this.queries = new float[queryCount][];
+        }
+
+        static Corpus synthetic(int size, int queryCount, int dimension, int topics, long seed) {
+            Corpus corpus = new Corpus(size, dimension, topics, seed, null, queryCount);
+            SplittableRandom random = new SplittableRandom(seed + 1);
+            for (int q = 0; q < queryCount; q++) {
+                float[] query = corpus.vector(random.nextInt(size)).clone();
+                for (int d = 0; d < dimension; d++) {
+                    query[d] += (float) (0.5 * random.nextGaussian());
+                }
+                corpus.queries[q] = query;
+            }
+            return corpus;
+        }
+
+        static Corpus embedded(EmbeddingModel model, int size, int queryCount, int topics, long seed) {
+            Corpus texts = new Corpus(size, 1, topics, seed, null, 0);
+            float[][] vectors = new float[size][];
+            long start = System.nanoTime();
+            for (int from = 0; from < size; from += INGEST_BATCH) {
+                int to = Math.min(size, from + INGEST_BATCH);
+                List<TextSegment> batch = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    batch.add(texts.segment(i));
+                }
+                List<Embedding> embeddings = model.embedAll(batch).content();
+                for (int i = from; i < to; i++) {
+                    vectors[i] = embeddings.get(i - from).vector();
+                }
+            }
+            long embedNanos = System.nanoTime() - start;
+            Corpus corpus = new Corpus(size, vectors[0].length, topics, seed, vectors, queryCount);
+            corpus.embedNanos = embedNanos;
+            SplittableRandom random = new SplittableRandom(seed + 1);
+            for (int q = 0; q < queryCount; q++) {
+                int topic = random.nextInt(topics);
+                corpus.queries[q] = model.embed(sentence(random, topic, topics, 8)).content().vector();
+            }
+            return corpus;
+        }
+
+        float[] vector(int i) {
+            if (vectors != null) {
+                return vectors[i];
+            }
+            SplittableRandom random = new SplittableRandom(seed * 31 + i);
+            float[] centroid = centroids[i % topics];
+            float[] vector = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = centroid[d] + (float) (0.8 * random.nextGaussian());
+            }
+            return vector;
+        }
+
+        TextSegment segment(int i) {
+            return TextSegment.from(sentence(new SplittableRandom(seed * 17 + i), i % topics, topics, 24),
+                    new Metadata().put(ROW, i));
+        }
+
+        /**
+         * Words mostly from the topic's slice of the vocabulary, so texts of one topic embed close together
+         */
+        private static String sentence(SplittableRandom random, int topic, int topics, int words) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                int word = random.nextInt(4) == 0
+                        ? random.nextInt(WORDS.length)
+                        : (topic * 7 + random.nextInt(5)) % WORDS.length;
+                text.append(w == 0 ? "" : " ").append(WORDS[word]);
+            }
+            return text.append(" topic").append(topic % topics).append('.').toString();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.jarvis.langchain4jdemo.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionWorkingSetTest {
+
+    private static final Embedding X = Embedding.from(new float[] {1, 0, 0});
+    private static final Embedding NEAR_X = Embedding.from(new float[] {0.95f, 0.1f, 0});
+    private static final Embedding Y = Embedding.from(new float[] {0, 1, 0});
+    private static final Embedding Z = Embedding.from(new float[] {0, 0, 1});
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final KnowledgeBases knowledgeBases = new KnowledgeBases(FlatEmbeddingStore::new, name -> -1, 10);
+    private final AtomicInteger searches = new AtomicInteger();
+
+    @Test
+    void followUpAboveMinScoreIsAnsweredLocally() {
+        SessionWorkingSet workingSet = workingSet(3, 10);
+
+        assertFalse(workingSet.retrieve("acme", "s", X, null, search("a", X)).local());
+        SessionWorkingSet.Lookup followUp = workingSet.retrieve("acme", "s", NEAR_X, null, search("b", Y));
+        assertTrue(followUp.local());
+        assertEquals(List.of("a"), ids(followUp));
+
+        // Orthogonal to everything remembered: relevance 0.5, below min-score
+        assertFalse(workingSet.retrieve("acme", "s", Y, null, search("b", Y)).local());
+        assertEquals(2, searches.get());
+        assertEquals(1.0, registry.get("rag.working-set.lookups").tag("outcome", "hit").counter().count());
+        assertEquals(2.0, registry.get("rag.working-set.lookups").tag("outcome", "miss").counter().count());
+    }
+
+    @Test
+    void onlyTheLastMaxTurnsAreKept() {
+        SessionWorkingSet workingSet = workingSet(2, 10);
+        workingSet.retrieve("acme", "s", X, null, search("a", X));
+        workingSet.retrieve("acme", "s", Y, null, search("b", Y));
+        workingSet.retrieve("acme", "s", Z, null, search("c", Z));
+
+        assertTrue(workingSet.retrieve("acme", "s", Y, null, search("b", Y)).local());
+        assertFalse(workingSet.retrieve("acme", "s", X, null, search("a", X)).local());
+    }
+
+    @Test
+    void leastRecentlyUsedSessionIsForgottenBeyondMaxSessions() {
+        SessionWorkingSet workingSet = workingSet(3, 2);
+        workingSet.retrieve("acme", "s1", X, null, search("a", X));
+        workingSet.retrieve("acme", "s2", X, null, search("a", X));
+        assertTrue(workingSet.retrieve("acme", "s1", X, null, search("a", X)).local());
+
+        workingSet.retrieve("acme", "s3", X, null, search("a", X));
+
+        assertTrue(workingSet.retrieve("acme", "s1", X, null, search("a", X)).local());
+        assertFalse(workingSet.retrieve("acme", "s2", X, null, search("a", X)).local());
+    }
+
+    @Test
+    void removalFromANamespaceForgetsItsSessions() {
+        SessionWorkingSet workingSet = workingSet(3, 10);
+        workingSet.retrieve("acme", "s", X, null, search("a", X));
+        workingSet.retrieve("other", "s", X, null, search("a", X));
+        long bytes = workingSet.approximateBytes();
+
+        knowledgeBases.create("acme", null).remove(List.of("a"));
+
+        assertTrue(workingSet.approximateBytes() < bytes);
+        assertFalse(workingSet.retrieve("acme", "s", X, null, search("a", X)).local());
+        assertTrue(workingSet.retrieve("other", "s", X, null, search("a", X)).local());
+
+        knowledgeBases.drop("acme");
+        assertFalse(workingSet.retrieve("acme", "s", X, null, search("a", X)).local());
+    }
+
+    @Test
+    void searchOverlappingARemovalIsNotRemembered() {
+        SessionWorkingSet workingSet = workingSet(3, 10);
+        knowledgeBases.create("acme", null);
+        Supplier<AdaptiveRetriever.Retrieval> racingSearch = () -> {
+            AdaptiveRetriever.Retrieval retrieval = search("a", X).get();
+            knowledgeBases.drop("acme");
+            return retrieval;
+        };
+
+        workingSet.retrieve("acme", "s", X, null, racingSearch);
+
+        assertFalse(workingSet.retrieve("acme", "s", X, null, search("a", X)).local());
+    }
+
+    private SessionWorkingSet workingSet(int maxTurns, int maxSessions) {
+        AdaptiveRetriever retriever = new AdaptiveRetriever(0.5, 1, 8, 1.0, 1.0, registry);
+        MemoryAccountant accountant = new MemoryAccountant(new MockEnvironment(), registry, 0.9);
+        return new SessionWorkingSet(retriever, true, 0.9, maxTurns, maxSessions, Duration.ofMinutes(30),
+                registry, accountant, knowledgeBases);
+    }
+
+    /**
+     * A store search that finds one segment, counting calls
+     */
+    private Supplier<AdaptiveRetriever.Retrieval> search(String id, Embedding embedding) {
+        return () -> {
+            searches.incrementAndGet();
+            EmbeddingMatch<TextSegment> match = new EmbeddingMatch<>(1.0, id, embedding, TextSegment.from(id));
+            return new AdaptiveRetriever.Retrieval(List.of(match), 1, "min-score");
+        };
+    }
+
+    private static List<String> ids(SessionWorkingSet.Lookup lookup) {
+        return lookup.retrieval().matches().stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+}
@@ -0,0 +1,191 @@
+package org.jarvis.langchain4jdemo.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jarvis.langchain4jdemo.document.DocumentManifest;
+import org.jarvis.langchain4jdemo.document.TokenAwareDocumentSplitter;
+import org.jarvis.langchain4jdemo.document.WordPieceTokenCounter;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBase;
+import org.jarvis.langchain4jdemo.namespace.KnowledgeBases;
+import org.jarvis.langchain4jdemo.quota.MemoryAccountant;
+import org.jarvis.langchain4jdemo.quota.QuotaExceededException;
+import org.jarvis.langchain4jdemo.service.EmbeddingService.SyncResult;
+import org.jarvis.langchain4jdemo.store.FlatEmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every paragraph below is one sentence of a few tokens, so the anchored splitter makes each paragraph one chunk
+ */
+class EmbeddingServiceTest {
+
+    private static final String P1 = "Alpha beta gamma.";
+    private static final String P2 = "Delta epsilon zeta.";
+    private static final String P3 = "Eta theta iota.";
+    private static final String P4 = "Kappa lambda mu.";
+    private static final String P5 = "Nu xi omicron.";
+    private static final String P2_EDITED = "Delta epsilon zeta eta.";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MockEnvironment environment = new MockEnvironment();
+    private final KnowledgeBases knowledgeBases = new KnowledgeBases(FlatEmbeddingStore::new, name -> -1, 10);
+    private final RecordingEmbeddingModel embeddingModel = new RecordingEmbeddingModel();
+    private final EmbeddingService service;
+
+    EmbeddingServiceTest() {
+        MemoryAccountant accountant = new MemoryAccountant(environment, registry, 0.9);
+        accountant.register(MemoryAccountant.EMBEDDING_STORE, knowledgeBases);
+        TokenAwareDocumentSplitter splitter = new TokenAwareDocumentSplitter(
+                new WordPieceTokenCounter("test-wordpiece-tokenizer.json"), 10, 0);
+        service = new EmbeddingService(embeddingModel, knowledgeBases, splitter, registry, accountant);
+    }
+
+    @Test
+    void unchangedDocumentIsNotReembedded() {
+        assertEquals(new SyncResult("guide", 1, 4, 0, 0, 4, 0), sync(P1, P2, P3, P4));
+        assertEquals(List.of(P1, P2, P3, P4), embeddingModel.embedded);
+        List<String> ids = chunkIds();
+        embeddingModel.embedded.clear();
+
+        assertEquals(new SyncResult("guide", 2, 4, 4, 0, 0, 0), sync(P1, P2, P3, P4));
+        assertEquals(List.of(), embeddingModel.embedded);
+        assertEquals(ids, chunkIds());
+        assertEquals(4, store().size());
+    }
+
+    @Test
+    void editInTheMiddleReembedsOnlyTheEditedChunk() {
+        sync(P1, P2, P3, P4);
+        List<String> ids = chunkIds();
+        embeddingModel.embedded.clear();
+
+        assertEquals(new SyncResult("guide", 2, 4, 3, 0, 1, 1), sync(P1, P2_EDITED, P3, P4));
+        assertEquals(List.of(P2_EDITED), embeddingModel.embedded);
+
+        List<String> newIds = chunkIds();
+        assertEquals(List.of(ids.get(0), ids.get(2), ids.get(3)), List.of(newIds.get(0), newIds.get(2), newIds.get(3)));
+        assertFalse(ids.contains(newIds.get(1)));
+        assertFalse(store().embedding(ids.get(1)).isPresent());
+        assertTrue(store().embedding(newIds.get(1)).isPresent());
+        assertEquals(4, store().size());
+        assertEquals(hashes(P1, P2_EDITED, P3, P4), hashes());
+    }
+
+    @Test
+    void movedChunksKeepTheirVectorsUnderNewIds() {
+        sync(P1, P2, P3);
+        List<String> ids = chunkIds();
+        List<float[]> vectors = ids.stream().map(id -> store().embedding(id).orElseThrow().vector()).toList();
+        embeddingModel.embedded.clear();
+
+        // A new first paragraph moves every other chunk one position down
+        assertEquals(new SyncResult("guide", 2, 4, 0, 3, 1, 0), sync(P5, P1, P2, P3));
+        assertEquals(List.of(P5), embeddingModel.embedded);
+
+        List<String> newIds = chunkIds();
+        for (int i = 0; i < ids.size(); i++) {
+            assertFalse(store().embedding(ids.get(i)).isPresent());
+            assertFalse(ids.contains(newIds.get(i + 1)));
+            assertArrayEquals(vectors.get(i), store().embedding(newIds.get(i + 1)).orElseThrow().vector(), 1e-6f);
+        }
+        assertEquals(4, store().size());
+        assertEquals(hashes(P5, P1, P2, P3), hashes());
+        assertEquals(3.0, registry.get("embedding.sync.chunks").tag("result", "moved").counter().count());
+        assertEquals(4.0, registry.get("embedding.sync.chunks").tag("result", "embedded").counter().count());
+    }
+
+    @Test
+    void shortenedDocumentRemovesTheTrailingChunks() {
+        sync(P1, P2, P3, P4);
+        List<String> ids = chunkIds();
+        embeddingModel.embedded.clear();
+
+        assertEquals(new SyncResult("guide", 2, 2, 2, 0, 0, 2), sync(P1, P2));
+        assertEquals(List.of(), embeddingModel.embedded);
+        assertEquals(ids.subList(0, 2), chunkIds());
+        assertFalse(store().embedding(ids.get(2)).isPresent());
+        assertFalse(store().embedding(ids.get(3)).isPresent());
+        assertEquals(2, store().size());
+    }
+
+    @Test
+    void onlyAddedChunksAreReservedAndARejectedSyncLeavesTheManifest() {
+        sync(P1, P2, P3, P4);
+        List<String> ids = chunkIds();
+        // The store is now exactly at its quota
+        environment.getPropertySources().addFirst(new MapPropertySource("quota", Map.of(
+                "memory.quota." + MemoryAccountant.EMBEDDING_STORE, DataSize.ofBytes(knowledgeBases.approximateBytes()))));
+
+        assertEquals(4, sync(P1, P2, P3, P4).unchanged());
+        assertThrows(QuotaExceededException.class, () -> sync(P1, P2_EDITED, P3, P4));
+
+        assertEquals(2, manifest().getVersion());
+        assertEquals(ids, chunkIds());
+        assertEquals(hashes(P1, P2, P3, P4), hashes());
+        assertTrue(store().embedding(ids.get(1)).isPresent());
+        assertEquals(4, store().size());
+    }
+
+    private SyncResult sync(String... paragraphs) {
+        return service.syncDocument("guide", String.join("\n\n", paragraphs));
+    }
+
+    private KnowledgeBase knowledgeBase() {
+        return knowledgeBases.find(KnowledgeBases.currentNamespace()).orElseThrow();
+    }
+
+    private FlatEmbeddingStore store() {
+        return (FlatEmbeddingStore) knowledgeBase().getStore();
+    }
+
+    private DocumentManifest manifest() {
+        return knowledgeBase().getManifests().get("guide");
+    }
+
+    private List<String> chunkIds() {
+        return manifest().embeddingIds();
+    }
+
+    private List<String> hashes() {
+        return manifest().getChunks().stream().map(DocumentManifest.Chunk::hash).toList();
+    }
+
+    private static List<String> hashes(String... paragraphs) {
+        return Arrays.stream(paragraphs).map(DocumentManifest::hash).toList();
+    }
+
+    /**
+     * Embeds a text as a vector derived from its hash code, recording every text it is asked to embed
+     */
+    private static class RecordingEmbeddingModel implements EmbeddingModel {
+
+        private final List<String> embedded = new ArrayList<>();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            List<Embedding> embeddings = new ArrayList<>(segments.size());
+            for (TextSegment segment : segments) {
+                embedded.add(segment.text());
+                int hash = segment.text().hashCode();
+                embeddings.add(Embedding.from(new float[] {1, hash & 0xff, (hash >>> 8) & 0xff}));
+            }
+            return Response.from(embeddings);
+        }
+    }
+}
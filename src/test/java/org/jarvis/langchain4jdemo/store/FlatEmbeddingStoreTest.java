@@ -0,0 +1,433 @@
+package org.jarvis.langchain4jdemo.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlatEmbeddingStoreTest {
+
+    /** Not a multiple of any SIMD lane count */
+    private static final int DIMENSION = 37;
+
+    private final Random random = new Random(11);
+    /** Raw vectors of the live rows, for brute-force search */
+    private final Map<String, float[]> reference = new LinkedHashMap<>();
+
+    @Test
+    void searchMatchesBruteForce() {
+        FlatEmbeddingStore store = new FlatEmbeddingStore();
+        // 301 rows: two full row tiles and a partial one
+        add(store, 301, "a");
+
+        for (int q = 0; q < 20; q++) {
+            float[] query = randomVector();
+            assertMatches(bruteForce(query, 10, 0), search(store, query, 10, 0));
+        }
+        float[] query = randomVector();
+        assertMatches(bruteForce(query, 500, 0), search(store, query, 500, 0));
+    }
+
+    @Test
+    void searchBatchMatchesBruteForceForPartialQueryBlocks() {
+        FlatEmbeddingStore store = new FlatEmbeddingStore();
+        add(store, 259, "a");
+
+        for (int queryCount : new int[] {1, 3, 4, 5, 9}) {
+            List<float[]> queries = new ArrayList<>();
+            for (int q = 0; q < queryCount; q++) {
+                queries.add(randomVector());
+            }
+            List<List<EmbeddingMatch<TextSegment>>> results = store.searchBatch(
+                    queries.stream().map(Embedding::from).toList(), 7, 0);
+
+            assertEquals(queryCount, results.size());
+            for (int q = 0; q < queryCount; q++) {
+                assertMatches(bruteForce(queries.get(q), 7, 0), results.get(q));
+                assertMatches(results.get(q), search(store, queries.get(q), 7, 0));
+            }
+        }
+    }
+
+    @Test
+    void minScoreDropsMatchesBelowIt() {
+        FlatEmbeddingStore store = new FlatEmbeddingStore();
+        add(store, 200, "a");
+
+        float[] query = randomVector();
+        List<EmbeddingMatch<TextSegment>> expected = bruteForce(query, 50, 0.6);
+        assertTrue(!expected.isEmpty() && expected.size() < 50, "threshold should cut the result short");
+        assertMatches(expected, search(store, query, 50, 0.6));
+        assertMatches(expected, store.searchBatch(List.of(Embedding.from(query)), 50, 0.6).get(0));
+        assertTrue(search(store, query, 50, 1.0).isEmpty());
+    }
+
+    @Test
+    void removalMovesTheLastRowAndReAddingReusesItsSlot() {
+        FlatEmbeddingStore store = new FlatEmbeddingStore();
+        List<String> ids = add(store, 150, "a");
+
+        // The first row, the last row and a run in between
+        List<String> removed = new ArrayList<>(List.of(ids.get(0), ids.get(149)));
+        removed.addAll(ids.subList(60, 90));
+        store.removeAll(removed);
+        removed.forEach(reference::remove);
+        store.remove("no-such-id");
+
+        assertEquals(reference.size(), store.size());
+        assertSearchesMatch(store);
+        removed.forEach(id -> assertTrue(store.embedding(id).isEmpty(), id));
+
+        add(store, 45, "b");
+        assertEquals(reference.size(), store.size());
+        assertSearchesMatch(store);
+        for (Map.Entry<String, float[]> entry : reference.entrySet()) {
+            float[] stored = store.embedding(entry.getKey()).orElseThrow().vector();
+            float[] expected = normalized(entry.getValue());
+            for (int i = 0; i < DIMENSION; i++) {
+                assertEquals(expected[i], stored[i], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    void removeAllByFilterKeepsTheOtherRows() {
+        FlatEmbeddingStore store = new FlatEmbeddingStore();
+        List<String> groupA = add(store, 70, "a");
+        add(store, 70, "b");
+        List<String> groupC = add(store, 70, "c");
+
+        store.removeAll(MetadataFilterBuilder.metadataKey("group").isEqualTo("b"));
+        reference.keySet().removeIf(id -> !groupA.contains(id) && !groupC.contains(id));
+
+        assertEquals(140, store.size());
+        assertSearchesMatch(store);
+
+        float[] query = randomVector();
+        List<EmbeddingMatch<TextSegment>> onlyC = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(query))
+                .maxResults(200)
+                .filter(MetadataFilterBuilder.metadataKey("group").isEqualTo("c"))
+                .build()).matches();
+        assertEquals(70, onlyC.size());
+        onlyC.forEach(match -> assertEquals("c", match.embedded().metadata().getString("group")));
+    }
+
+    @Test
+    void removeAllEmptiesTheStoreForReuse() {
+        FlatEmbeddingStore store = new FlatEmbeddingStore();
+        add(store, 40, "a");
+
+        store.removeAll();
+        reference.clear();
+        assertEquals(0, store.size());
+        assertTrue(search(store, randomVector(), 5, 0).isEmpty());
+
+        add(store, 10, "b");
+        assertSearchesMatch(store);
+    }
+
+    @Test
+    void addingUnderAnExistingIdReplacesTheRow() {
+        FlatEmbeddingStore store = new FlatEmbeddingStore();
+        List<String> ids = add(store, 20, "a");
+
+        float[] replacement = randomVector();
+        store.addAll(List.of(ids.get(5)), List.of(Embedding.from(replacement)),
+                List.of(TextSegment.from("replaced", Metadata.from(Map.of("group", "z")))));
+        reference.put(ids.get(5), replacement);
+
+        assertEquals(20, store.size());
+        List<EmbeddingMatch<TextSegment>> top = search(store, replacement, 1, 0);
+        assertEquals(ids.get(5), top.get(0).embeddingId());
+        assertEquals("replaced", top.get(0).embedded().text());
+        assertSearchesMatch(store);
+    }
+
+    @Test
+    void twoStageSearchOnAFittedPcaStoreMatchesExactSearch() {
+        PcaProjection pca = new PcaProjection(16, 300);
+        FlatEmbeddingStore store = new FlatEmbeddingStore(pca, 8);
+        FlatEmbeddingStore exact = new FlatEmbeddingStore();
+        // Vectors near a 12-dimensional subspace, as embeddings of one corpus are
+        float[] basis = new float[12 * 64];
+        for (int i = 0; i < basis.length; i++) {
+            basis[i] = (float) random.nextGaussian();
+        }
+        for (int batch = 0; batch < 10; batch++) {
+            List<String> ids = new ArrayList<>();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                ids.add(batch + "-" + i);
+                embeddings.add(Embedding.from(nearSubspace(basis)));
+            }
+            store.addAll(ids, embeddings, null);
+            exact.addAll(ids, embeddings, null);
+        }
+        assertTrue(pca.isReady());
+        assertTrue(store.approximateBytes() > exact.approximateBytes(), "expected a reduced matrix");
+
+        int found = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = nearSubspace(basis);
+            List<EmbeddingMatch<TextSegment>> twoStage = search(store, query, 10, 0);
+            Map<String, Double> expected = search(exact, query, 10, 0).stream()
+                    .collect(Collectors.toMap(EmbeddingMatch::embeddingId, EmbeddingMatch::score));
+            for (EmbeddingMatch<TextSegment> match : twoStage) {
+                if (expected.containsKey(match.embeddingId())) {
+                    found++;
+                    // Shortlisted rows are rescored with their full vectors
+                    assertEquals(expected.get(match.embeddingId()), match.score(), 1e-6);
+                }
+            }
+        }
+        assertTrue(found >= 0.98 * 500, "recall@10 " + found / 500.0);
+    }
+
+    @Test
+    void removeAllResetsTheProjection() {
+        PcaProjection pca = new PcaProjection(8, 100);
+        FlatEmbeddingStore store = new FlatEmbeddingStore(pca, 2);
+        add(store, 150, "a");
+        assertTrue(pca.isReady());
+
+        store.removeAll();
+        reference.clear();
+        assertFalse(pca.isReady());
+
+        // Below fit-rows again, so search is exact
+        add(store, 60, "b");
+        assertFalse(pca.isReady());
+        assertSearchesMatch(store);
+    }
+
+    @Test
+    void searchesAndAddsProceedWhileTheProjectionIsFitted() throws Exception {
+        BlockingPrefixProjection projection = new BlockingPrefixProjection();
+        FlatEmbeddingStore store = new FlatEmbeddingStore(projection, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> fittingAdd = executor.submit(() -> addPrefixVectors(store, "a", 60));
+            assertTrue(projection.fitting.await(5, TimeUnit.SECONDS));
+
+            Future<List<EmbeddingMatch<TextSegment>>> search = executor.submit(
+                    () -> search(store, prefixVector(), 100, 0));
+            assertEquals(60, search.get(5, TimeUnit.SECONDS).size());
+            // Rows added during the fit are not in the fitted copy; they are projected when it is swapped in
+            executor.submit(() -> addPrefixVectors(store, "b", 40)).get(5, TimeUnit.SECONDS);
+
+            projection.release.countDown();
+            fittingAdd.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(projection.isReady());
+        // The projection keeps all of these vectors' signal, so the two-stage search is exact
+        for (int q = 0; q < 10; q++) {
+            float[] query = prefixVector();
+            assertMatches(bruteForce(query, 5, 0), search(store, query, 5, 0));
+        }
+    }
+
+    private void addPrefixVectors(FlatEmbeddingStore store, String prefix, int count) {
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] vector = prefixVector();
+            ids.add(prefix + "-" + i);
+            embeddings.add(Embedding.from(vector));
+            synchronized (reference) {
+                reference.put(prefix + "-" + i, vector);
+            }
+        }
+        store.addAll(ids, embeddings, null);
+    }
+
+    /**
+     * A random vector that is zero beyond the dimensions kept by {@link BlockingPrefixProjection}
+     */
+    private synchronized float[] prefixVector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < BlockingPrefixProjection.DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private float[] nearSubspace(float[] basis) {
+        int rank = basis.length / 64;
+        float[] vector = new float[64];
+        for (int c = 0; c < rank; c++) {
+            float weight = (float) random.nextGaussian();
+            for (int i = 0; i < 64; i++) {
+                vector[i] += weight * basis[c * 64 + i];
+            }
+        }
+        for (int i = 0; i < 64; i++) {
+            vector[i] += 0.05f * (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private List<String> add(FlatEmbeddingStore store, int count, String group) {
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] vector = randomVector();
+            vectors.add(vector);
+            embeddings.add(Embedding.from(vector));
+            segments.add(TextSegment.from(group + "-" + i, Metadata.from(Map.of("group", group))));
+        }
+        List<String> ids = store.addAll(embeddings, segments);
+        for (int i = 0; i < count; i++) {
+            reference.put(ids.get(i), vectors.get(i));
+        }
+        return ids;
+    }
+
+    private void assertSearchesMatch(FlatEmbeddingStore store) {
+        for (int q = 0; q < 5; q++) {
+            float[] query = randomVector();
+            assertMatches(bruteForce(query, 12, 0), search(store, query, 12, 0));
+            assertMatches(bruteForce(query, 12, 0), store.searchBatch(List.of(Embedding.from(query)), 12, 0).get(0));
+        }
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(FlatEmbeddingStore store, float[] query, int maxResults,
+                                                            double minScore) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(query))
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .build()).matches();
+    }
+
+    /**
+     * Cosine similarity in double precision against every live row, scored like the store
+     */
+    private List<EmbeddingMatch<TextSegment>> bruteForce(float[] query, int maxResults, double minScore) {
+        return reference.entrySet().stream()
+                .map(entry -> new EmbeddingMatch<TextSegment>((cosine(query, entry.getValue()) + 1) / 2,
+                        entry.getKey(), null, null))
+                .filter(match -> match.score() >= minScore)
+                .sorted(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed())
+                .limit(maxResults)
+                .toList();
+    }
+
+    private static void assertMatches(List<EmbeddingMatch<TextSegment>> expected,
+                                      List<EmbeddingMatch<TextSegment>> actual) {
+        assertEquals(expected.stream().map(EmbeddingMatch::embeddingId).toList(),
+                actual.stream().map(EmbeddingMatch::embeddingId).toList());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).score(), actual.get(i).score(), 1e-5);
+        }
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += (double) a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = Math.sqrt(squaredNorm(vector));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static double squaredNorm(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += (double) value * value;
+        }
+        return sum;
+    }
+
+    private synchronized float[] randomVector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * Keeps the leading dimensions, but only becomes ready once a test lets its fit finish
+     */
+    private static final class BlockingPrefixProjection implements Projection {
+
+        static final int DIMENSION = 8;
+
+        final CountDownLatch fitting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean ready;
+
+        @Override
+        public int dimension() {
+            return DIMENSION;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public int fitRows() {
+            return 50;
+        }
+
+        @Override
+        public boolean fit(float[] matrix, int rows, int inputDimension) {
+            fitting.countDown();
+            try {
+                ready = release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ready;
+        }
+
+        @Override
+        public void reset() {
+            ready = false;
+        }
+
+        @Override
+        public void project(float[] source, int sourceOffset, int inputDimension, float[] target, int targetOffset) {
+            System.arraycopy(source, sourceOffset, target, targetOffset, DIMENSION);
+        }
+    }
+}
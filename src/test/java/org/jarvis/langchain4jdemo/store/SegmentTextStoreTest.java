@@ -0,0 +1,167 @@
+package org.jarvis.langchain4jdemo.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentTextStoreTest {
+
+    /** The smallest block the store allows, so a few hundred texts seal several pages */
+    private static final int BLOCK_BYTES = 1024;
+    private static final String[] WORDS = {"refund", "policy", "customer", "Grüße", "naïve", "日本語", "résumé",
+            "🙂", "shipping", "Ω", "order", "the", "of"};
+
+    private final Random random = new Random(3);
+
+    @Test
+    void textsRoundTripAcrossSealedPagesAndTheOpenBlock() {
+        SegmentTextStore store = new SegmentTextStore(BLOCK_BYTES, 512, null);
+        Map<Long, String> texts = append(store, 300);
+
+        assertTrue(page(texts.keySet().stream().mapToLong(Long::longValue).max().orElseThrow()) >= 3,
+                "expected several sealed pages");
+        texts.forEach((handle, text) -> assertEquals(text, store.text(handle)));
+        assertEquals(300, store.size());
+        // Repetitive multilingual text against a preset dictionary compresses well
+        assertTrue(store.bytes() < store.rawBytes());
+    }
+
+    @Test
+    void textLongerThanABlockGetsAPageOfItsOwn() {
+        SegmentTextStore store = new SegmentTextStore(BLOCK_BYTES, 512, null);
+        long first = store.append("short");
+        String longText = sentence(800);
+        long big = store.append(longText);
+        long after = store.append("after");
+
+        assertEquals("short", store.text(first));
+        assertEquals(longText, store.text(big));
+        assertEquals("after", store.text(after));
+        assertEquals(page(first) + 1, page(big));
+        assertEquals(page(big) + 1, page(after));
+    }
+
+    @Test
+    void removingEveryEntryOfAPageReleasesIt() {
+        SegmentTextStore store = new SegmentTextStore(BLOCK_BYTES, 512, null);
+        Map<Long, String> texts = append(store, 200);
+        long bytes = store.bytes();
+
+        List<Long> firstPage = texts.keySet().stream().filter(handle -> page(handle) == 0).toList();
+        firstPage.forEach(store::remove);
+        firstPage.forEach(texts::remove);
+
+        assertTrue(store.bytes() < bytes, "page 0 should be released");
+        assertEquals(texts.size(), store.size());
+        // Later pages still decode against the dictionary taken from the released first page
+        texts.forEach((handle, text) -> assertEquals(text, store.text(handle)));
+    }
+
+    @Test
+    void removingSomeEntriesKeepsThePage() {
+        SegmentTextStore store = new SegmentTextStore(BLOCK_BYTES, 512, null);
+        Map<Long, String> texts = append(store, 200);
+        long bytes = store.bytes();
+
+        List<Long> removed = texts.keySet().stream().filter(handle -> handle % 2 == 0).toList();
+        removed.forEach(store::remove);
+        removed.forEach(texts::remove);
+
+        assertEquals(bytes, store.bytes());
+        texts.forEach((handle, text) -> assertEquals(text, store.text(handle)));
+    }
+
+    @Test
+    void appendsAfterTheOpenBlockIsEmptiedReuseIt() {
+        SegmentTextStore store = new SegmentTextStore(BLOCK_BYTES, 512, null);
+        Map<Long, String> sealed = append(store, 100);
+        Map<Long, String> open = new LinkedHashMap<>();
+        for (long handle : List.copyOf(sealed.keySet())) {
+            if (page(handle) == page(sealed.keySet().stream().mapToLong(Long::longValue).max().orElseThrow())) {
+                open.put(handle, sealed.remove(handle));
+            }
+        }
+        open.keySet().forEach(store::remove);
+
+        Map<Long, String> reused = append(store, 100);
+        reused.forEach((handle, text) -> assertEquals(text, store.text(handle)));
+        sealed.forEach((handle, text) -> assertEquals(text, store.text(handle)));
+        assertEquals(sealed.size() + reused.size(), store.size());
+    }
+
+    @Test
+    void clearForgetsEverything() {
+        SegmentTextStore store = new SegmentTextStore(BLOCK_BYTES, 512, null);
+        append(store, 100);
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.rawBytes());
+
+        Map<Long, String> texts = append(store, 50);
+        texts.forEach((handle, text) -> assertEquals(text, store.text(handle)));
+    }
+
+    @Test
+    void flatStoreKeepsCompressedTextsThroughRemovalsAndReplacement() {
+        FlatEmbeddingStore store = new FlatEmbeddingStore(null, 1, new SegmentTextStore(BLOCK_BYTES, 512, null));
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            embeddings.add(Embedding.from(new float[] {i + 1, 1, i % 7}));
+            segments.add(TextSegment.from(i + " " + sentence(12), Metadata.from(Map.of("chunk", i))));
+        }
+        List<String> ids = store.addAll(embeddings, segments);
+
+        store.removeAll(ids.subList(0, 40));
+        store.addAll(List.of(ids.get(50)), List.of(embeddings.get(50)),
+                List.of(TextSegment.from("replaced", Metadata.from(Map.of("chunk", 50)))));
+
+        assertEquals(80, store.size());
+        assertEquals(80, store.textStats().segments());
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[] {1, 0, 0}))
+                .maxResults(200)
+                .build()).matches();
+        assertEquals(80, matches.size());
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            int chunk = ids.indexOf(match.embeddingId());
+            TextSegment expected = chunk == 50 ? TextSegment.from("replaced") : segments.get(chunk);
+            assertEquals(expected.text(), match.embedded().text());
+            assertEquals(chunk, (int) match.embedded().metadata().getInteger("chunk"));
+        }
+    }
+
+    private Map<Long, String> append(SegmentTextStore store, int count) {
+        Map<Long, String> texts = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String text = i + ": " + sentence(1 + random.nextInt(12));
+            texts.put(store.append(text), text);
+        }
+        return texts;
+    }
+
+    private String sentence(int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sentence.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+
+    private static int page(long handle) {
+        return (int) (handle >>> 32);
+    }
+}
@@ -0,0 +1,73 @@
+package org.jarvis.langchain4jdemo.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKTest {
+
+    @Test
+    void keepsBestScoresInDescendingOrder() {
+        float[] scores = new float[1000];
+        Random random = new Random(7);
+        TopK top = new TopK(5);
+        for (int row = 0; row < scores.length; row++) {
+            scores[row] = random.nextFloat();
+            if (scores[row] > top.threshold()) {
+                top.offer(scores[row], row);
+            }
+        }
+
+        float[] sortedScores = new float[top.size()];
+        int[] rows = top.sortedRows(sortedScores);
+
+        int[] expected = IntStream.range(0, scores.length).boxed()
+                .sorted((a, b) -> Float.compare(scores[b], scores[a]))
+                .limit(5)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        assertArrayEquals(expected, rows);
+        for (int i = 0; i < rows.length; i++) {
+            assertEquals(scores[rows[i]], sortedScores[i]);
+        }
+    }
+
+    @Test
+    void returnsFewerThanKWhenFewerOffered() {
+        TopK top = new TopK(10);
+        top.offer(0.5f, 1);
+        top.offer(0.9f, 2);
+
+        float[] sortedScores = new float[top.size()];
+        assertArrayEquals(new int[] {2, 1}, top.sortedRows(sortedScores));
+        assertEquals(Float.NEGATIVE_INFINITY, top.threshold());
+    }
+
+    @Test
+    void thresholdIsWorstKeptScoreOnceFull() {
+        TopK top = new TopK(2);
+        top.offer(0.3f, 0);
+        top.offer(0.7f, 1);
+        top.offer(0.5f, 2);
+
+        assertEquals(0.5f, top.threshold());
+        assertArrayEquals(new int[] {1, 2}, top.sortedRows(new float[2]));
+    }
+
+    @Test
+    void zeroOrNegativeKKeepsNothing() {
+        for (int k : new int[] {0, -1}) {
+            TopK top = new TopK(k);
+            top.offer(1.0f, 0);
+
+            assertEquals(0, top.size());
+            assertEquals(0, top.sortedRows(new float[0]).length);
+            assertTrue(1.0f <= top.threshold());
+        }
+    }
+}